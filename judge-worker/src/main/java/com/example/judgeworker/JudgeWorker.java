@@ -0,0 +1,143 @@
+package com.example.judgeworker;
+
+import com.example.users.service.JudgeJobStore;
+import com.example.users.service.JudgeQueueService;
+import com.example.users.service.SubmissionService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Цикл воркера: heartbeat, возврат заданий мертвых воркеров и забор новых заданий из judge_jobs.
+ * Заданий забирается не больше, чем свободно воркеров локальной очереди {@link JudgeQueueService},
+ * поэтому остальные задания остаются другим процессам
+ */
+@Component
+public class JudgeWorker {
+    
+    private static final Logger log = LoggerFactory.getLogger(JudgeWorker.class);
+    
+    private final JudgeJobStore judgeJobStore;
+    private final JudgeQueueService judgeQueueService;
+    private final SubmissionService submissionService;
+    private final int slots;
+    private final long pollIntervalMs;
+    private final long heartbeatIntervalMs;
+    private final long deadAfterSeconds;
+    private final int maxAttempts;
+    private final String host;
+    private final String workerId;
+    private volatile boolean running;
+    private Thread loop;
+    
+    public JudgeWorker(JudgeJobStore judgeJobStore, JudgeQueueService judgeQueueService,
+                       SubmissionService submissionService,
+                       @Value("${app.judge.workers:4}") int slots,
+                       @Value("${app.judge.worker.poll-interval-ms:500}") long pollIntervalMs,
+                       @Value("${app.judge.worker.heartbeat-interval-ms:5000}") long heartbeatIntervalMs,
+                       @Value("${app.judge.worker.dead-after-seconds:30}") long deadAfterSeconds,
+                       @Value("${app.judge.worker.max-attempts:3}") int maxAttempts) {
+        this.judgeJobStore = judgeJobStore;
+        this.judgeQueueService = judgeQueueService;
+        this.submissionService = submissionService;
+        this.slots = Math.max(slots, 1);
+        this.pollIntervalMs = pollIntervalMs;
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.deadAfterSeconds = deadAfterSeconds;
+        this.maxAttempts = maxAttempts;
+        this.host = hostName();
+        this.workerId = host + "-" + ProcessHandle.current().pid() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // Воркер отмечается до первого забора, иначе его задания сочтут брошенными
+        judgeJobStore.heartbeat(workerId, host, slots, judgeQueueService.getAverageJobMs());
+        running = true;
+        loop = Thread.ofPlatform().name("judge-worker").daemon().start(this::run);
+        log.info("Воркер {} запущен: слотов={}, опрос={} мс, heartbeat={} мс", workerId, slots,
+                pollIntervalMs, heartbeatIntervalMs);
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (loop != null) {
+            loop.interrupt();
+            loop.join(pollIntervalMs + 1000);
+        }
+        // Недоделанные задания сразу достаются другим воркерам, их результаты отсюда уже не запишутся
+        judgeJobStore.unregister(workerId);
+    }
+    
+    private void run() {
+        long nextHeartbeat = 0;
+        long nextReap = 0;
+        while (running) {
+            boolean moreWork = false;
+            try {
+                long now = System.currentTimeMillis();
+                if (now >= nextHeartbeat) {
+                    judgeJobStore.heartbeat(workerId, host, slots, judgeQueueService.getAverageJobMs());
+                    nextHeartbeat = now + heartbeatIntervalMs;
+                }
+                if (now >= nextReap) {
+                    judgeJobStore.reapDeadWorkers(deadAfterSeconds, maxAttempts);
+                    nextReap = now + deadAfterSeconds * 1000 / 2;
+                }
+                moreWork = claimJobs();
+            } catch (DataAccessException e) {
+                log.warn("Ошибка работы с judge_jobs: {}", e.getMessage());
+            }
+            if (!moreWork) {
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Забирает задания на свободные слоты
+     * @return true, если слоты заполнены целиком и в очереди, возможно, есть еще задания
+     */
+    private boolean claimJobs() {
+        int free = slots - judgeQueueService.getQueueDepth() - judgeQueueService.getActiveCount();
+        if (free <= 0) {
+            return false;
+        }
+        List<JudgeJobStore.ClaimedJob> jobs = judgeJobStore.claim(workerId, free);
+        for (JudgeJobStore.ClaimedJob job : jobs) {
+            if (job.attempt > 1) {
+                log.info("Повторная проверка решения {} после сбоя воркера, попытка {}", job.submissionId, job.attempt);
+            }
+            boolean accepted = judgeQueueService.enqueue(job.submissionId, job.userId.toString(),
+                    JudgeQueueService.Priority.SUBMISSION, () -> submissionService.judgeJob(job, workerId));
+            if (!accepted) {
+                judgeJobStore.release(job.submissionId, workerId);
+            }
+        }
+        return jobs.size() == free;
+    }
+    
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
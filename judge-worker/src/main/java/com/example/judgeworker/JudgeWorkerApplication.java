@@ -0,0 +1,26 @@
+package com.example.judgeworker;
+
+import com.example.users.config.PasswordEncoderConfig;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * Процесс проверки решений без REST API.
+ * Берет задания из judge_jobs общей с user-service БД и проверяет их тем же кодом, что и user-service;
+ * для увеличения производительности проверки достаточно запустить еще воркеры
+ */
+@SpringBootApplication(scanBasePackages = {"com.example.judgeworker", "com.example.users.service"})
+@EntityScan("com.example.users.model")
+@EnableJpaRepositories("com.example.users.repository")
+@Import(PasswordEncoderConfig.class)
+public class JudgeWorkerApplication {
+    public static void main(String[] args) {
+        // Настройки проверки и БД берутся из application.yml user-service, judge-worker.yml их дополняет
+        new SpringApplicationBuilder(JudgeWorkerApplication.class)
+                .properties("spring.config.name=application,judge-worker")
+                .run(args);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.judgeworker;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Проверка версии схемы БД при старте воркера.
+ * Схемой управляет user-service (у воркера Flyway выключен), а воркер работает тем же кодом user-service,
+ * поэтому версия в flyway_schema_history должна совпадать с последней миграцией в его classpath.
+ * Иначе воркер не запускается: со старой схемой он забирал бы задания judge_jobs и ломал их проверку
+ */
+@Component
+public class SchemaVersionCheck {
+    
+    private static final Logger log = LoggerFactory.getLogger(SchemaVersionCheck.class);
+    private static final String MIGRATIONS = "classpath*:db/migration/V*__*.sql";
+    private static final Pattern MIGRATION_VERSION = Pattern.compile("^V(\\d+)__");
+    private static final String VERSIONS_SQL = "SELECT version FROM flyway_schema_history "
+            + "WHERE success AND version IS NOT NULL";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public SchemaVersionCheck(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+    
+    @PostConstruct
+    public void verify() throws IOException {
+        int expected = expectedVersion();
+        int actual = databaseVersion();
+        if (actual != expected) {
+            throw new IllegalStateException("Database schema version " + actual + " does not match judge-worker "
+                    + "version " + expected + ": run user-service of the same version to migrate the database first");
+        }
+        log.info("Версия схемы БД {} совпадает с миграциями воркера", actual);
+    }
+    
+    /**
+     * Последняя миграция user-service в classpath воркера
+     */
+    private static int expectedVersion() throws IOException {
+        int version = 0;
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(MIGRATIONS)) {
+            Matcher matcher = MIGRATION_VERSION.matcher(String.valueOf(resource.getFilename()));
+            if (matcher.find()) {
+                version = Math.max(version, Integer.parseInt(matcher.group(1)));
+            }
+        }
+        if (version == 0) {
+            throw new IllegalStateException("No user-service migrations found in " + MIGRATIONS);
+        }
+        return version;
+    }
+    
+    /**
+     * Последняя успешно примененная миграция
+     */
+    private int databaseVersion() {
+        List<String> versions;
+        try {
+            versions = jdbcTemplate.queryForList(VERSIONS_SQL, String.class);
+        } catch (DataAccessException e) {
+            throw new IllegalStateException("Cannot read flyway_schema_history: start user-service first "
+                    + "to create the database schema", e);
+        }
+        int version = 0;
+        for (String value : versions) {
+            // Версии миграций user-service - целые числа
+            version = Math.max(version, Integer.parseInt(value.trim()));
+        }
+        return version;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.users.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Формирование JSON результатов тестов: {@link TestResultsJson#write} против прежнего StringBuilder
+ * с цепочкой String.replace. Запуск: ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TestResultsJsonBenchmark {
+    
+    @Param({"10", "100"})
+    public int tests;
+    
+    @Param({"100", "10000"})
+    public int outputChars;
+    
+    private List<CodeExecutionService.TestExecutionResult> results;
+    
+    @Setup
+    public void setUp() {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; output.length() < outputChars; i++) {
+            output.append(i).append(i % 10 == 9 ? '\n' : ' ');
+        }
+        results = new ArrayList<>();
+        for (int i = 0; i < tests; i++) {
+            boolean passed = i % 3 != 0;
+            results.add(new CodeExecutionService.TestExecutionResult(passed, "5\n1 2 3 4 5\n", output.toString(),
+                    passed ? output.toString() : output.substring(1), passed ? null : "Неверный ответ",
+                    false, false, new ResourceRunner.Usage(12, 15, 1480)));
+        }
+    }
+    
+    @Benchmark
+    public String streaming() {
+        return TestResultsJson.write(results);
+    }
+    
+    @Benchmark
+    public String legacyStringBuilder() {
+        StringBuilder json = new StringBuilder("{\"tests\":[");
+        for (int i = 0; i < results.size(); i++) {
+            CodeExecutionService.TestExecutionResult tr = results.get(i);
+            if (i > 0) json.append(",");
+            json.append("{")
+                .append("\"testNumber\":").append(i + 1).append(",")
+                .append("\"passed\":").append(tr.passed).append(",")
+                .append("\"input\":\"").append(escapeJson(tr.input)).append("\",")
+                .append("\"expected\":\"").append(escapeJson(tr.expectedOutput)).append("\",")
+                .append("\"actual\":\"").append(escapeJson(tr.actualOutput)).append("\"");
+            if (tr.errorMessage != null) {
+                json.append(",\"error\":\"").append(escapeJson(tr.errorMessage)).append("\"");
+            }
+            if (tr.usage != null) {
+                appendUsage(json, "cpuTimeMs", tr.usage.cpuTimeMs);
+                appendUsage(json, "wallTimeMs", tr.usage.wallTimeMs);
+                appendUsage(json, "memoryKb", tr.usage.memoryKb);
+            }
+            json.append("}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+    
+    private static void appendUsage(StringBuilder json, String name, long value) {
+        if (value >= 0) {
+            json.append(",\"").append(name).append("\":").append(value);
+        }
+    }
+    
+    private static String escapeJson(String str) {
+        if (str == null) return "";
+        return str.replace("\\", "\\\\")
+                  .replace("\"", "\\\"")
+                  .replace("\n", "\\n")
+                  .replace("\r", "\\r")
+                  .replace("\t", "\\t");
+    }
+}
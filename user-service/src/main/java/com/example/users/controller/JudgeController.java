@@ -0,0 +1,116 @@
+package com.example.users.controller;
+
+import com.example.users.dto.AdmissionSettingsRequest;
+import com.example.users.service.CodeBlobStore;
+import com.example.users.service.CompiledBinaryCache;
+import com.example.users.service.CompilerToolchain;
+import com.example.users.service.InFlightSubmissions;
+import com.example.users.service.JudgeAdmission;
+import com.example.users.service.JudgeCalibration;
+import com.example.users.service.JudgeExecutors;
+import com.example.users.service.JudgeJobStore;
+import com.example.users.service.JudgeMetrics;
+import com.example.users.service.JudgeQueueService;
+import com.example.users.service.TestFailureStats;
+import com.example.users.service.TestSuiteCache;
+import com.example.users.service.VerdictCache;
+import com.example.users.service.WorkspacePool;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/judge")
+@Tag(name = "Judge", description = "API для мониторинга проверки решений")
+public class JudgeController {
+    
+    private final JudgeQueueService judgeQueueService;
+    private final JudgeExecutors judgeExecutors;
+    private final CompiledBinaryCache compiledBinaryCache;
+    private final VerdictCache verdictCache;
+    private final WorkspacePool workspacePool;
+    private final TestSuiteCache testSuiteCache;
+    private final CompilerToolchain compilerToolchain;
+    private final JudgeMetrics judgeMetrics;
+    private final CodeBlobStore codeBlobStore;
+    private final JudgeAdmission judgeAdmission;
+    private final InFlightSubmissions inFlightSubmissions;
+    private final JudgeJobStore judgeJobStore;
+    private final JudgeCalibration judgeCalibration;
+    private final TestFailureStats testFailureStats;
+    
+    public JudgeController(JudgeQueueService judgeQueueService, JudgeExecutors judgeExecutors,
+                           CompiledBinaryCache compiledBinaryCache, VerdictCache verdictCache,
+                           WorkspacePool workspacePool, TestSuiteCache testSuiteCache,
+                           CompilerToolchain compilerToolchain, JudgeMetrics judgeMetrics,
+                           CodeBlobStore codeBlobStore, JudgeAdmission judgeAdmission,
+                           InFlightSubmissions inFlightSubmissions, JudgeJobStore judgeJobStore,
+                           JudgeCalibration judgeCalibration, TestFailureStats testFailureStats) {
+        this.judgeQueueService = judgeQueueService;
+        this.judgeExecutors = judgeExecutors;
+        this.compiledBinaryCache = compiledBinaryCache;
+        this.verdictCache = verdictCache;
+        this.workspacePool = workspacePool;
+        this.testSuiteCache = testSuiteCache;
+        this.compilerToolchain = compilerToolchain;
+        this.judgeMetrics = judgeMetrics;
+        this.codeBlobStore = codeBlobStore;
+        this.judgeAdmission = judgeAdmission;
+        this.inFlightSubmissions = inFlightSubmissions;
+        this.judgeJobStore = judgeJobStore;
+        this.judgeCalibration = judgeCalibration;
+        this.testFailureStats = testFailureStats;
+    }
+    
+    @GetMapping("/stats")
+    @Operation(summary = "Получить статистику очереди проверки и кэшей")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        Map<String, Object> queue = new LinkedHashMap<>();
+        queue.put("depth", judgeQueueService.getQueueDepth());
+        queue.put("active", judgeQueueService.getActiveCount());
+        queue.put("classes", judgeQueueService.getClassStats());
+        
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queue", queue);
+        stats.put("cpu", judgeExecutors.getStats());
+        stats.put("binaryCache", compiledBinaryCache.getStats());
+        stats.put("verdictCache", verdictCache.getStats());
+        stats.put("workspaces", workspacePool.getStats());
+        stats.put("testSuites", testSuiteCache.getStats());
+        stats.put("toolchain", compilerToolchain.getStats());
+        stats.put("phases", judgeMetrics.getStats());
+        stats.put("codeBlobs", codeBlobStore.getStats());
+        stats.put("admission", judgeAdmission.getSettings());
+        stats.put("deduplication", inFlightSubmissions.getStats());
+        stats.put("jobs", judgeJobStore.getStats());
+        stats.put("calibration", judgeCalibration.getStats());
+        stats.put("failureOrder", testFailureStats.getStats());
+        return ResponseEntity.ok(stats);
+    }
+    
+    @GetMapping("/admission")
+    @Operation(summary = "Получить пороги допуска решений в проверку и текущую оценку ожидания")
+    public ResponseEntity<Map<String, Object>> getAdmission() {
+        return ResponseEntity.ok(judgeAdmission.getSettings());
+    }
+    
+    @PutMapping("/admission")
+    @Operation(summary = "Изменить пороги допуска решений в проверку",
+            description = "Изменения применяются сразу, без перезапуска; незаданные поля не меняются")
+    public ResponseEntity<Map<String, Object>> updateAdmission(
+            @Valid @RequestBody AdmissionSettingsRequest request,
+            @RequestParam UUID currentUserId) {
+        return ResponseEntity.ok(judgeAdmission.updateSettings(request, currentUserId));
+    }
+}
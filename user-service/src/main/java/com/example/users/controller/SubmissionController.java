@@ -26,13 +26,19 @@ public class SubmissionController {
     }
     
     @PostMapping
-    @Operation(summary = "Отправить решение задачи")
+    @Operation(summary = "Отправить решение задачи",
+            description = "Решение сохраняется со статусом PENDING и проверяется в очереди. " +
+                    "Результат проверки доступен через GET /api/submissions/{id}. " +
+                    "Повторная отправка того же кода, пока решение проверяется, возвращает это решение, " +
+                    "а пока оно еще сохраняется - 409")
     public ResponseEntity<SubmissionResponse> submitSolution(
             @Valid @RequestBody SubmissionRequest request,
             @Parameter(description = "ID пользователя", required = true)
-            @RequestParam UUID userId) {
-        SubmissionResponse response = submissionService.submitSolution(request, userId);
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+            @RequestParam UUID userId,
+            @Parameter(description = "Ключ идемпотентности: повтор запроса с тем же ключом вернет то же решение")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        SubmissionResponse response = submissionService.submitSolution(request, userId, idempotencyKey);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
     }
     
     @GetMapping("/{id}")
@@ -1,7 +1,9 @@
 package com.example.users.controller;
 
+import com.example.users.dto.RejudgeResponse;
 import com.example.users.dto.TaskRequest;
 import com.example.users.dto.TaskResponse;
+import com.example.users.service.RejudgeService;
 import com.example.users.service.TaskService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -19,9 +21,11 @@ import java.util.UUID;
 public class TaskController {
     
     private final TaskService taskService;
+    private final RejudgeService rejudgeService;
     
-    public TaskController(TaskService taskService) {
+    public TaskController(TaskService taskService, RejudgeService rejudgeService) {
         this.taskService = taskService;
+        this.rejudgeService = rejudgeService;
     }
     
     @PostMapping
@@ -77,5 +81,20 @@ public class TaskController {
         taskService.deleteTask(id, currentUserId);
         return ResponseEntity.noContent().build();
     }
+    
+    @PostMapping("/{id}/rejudge")
+    @Operation(summary = "Перепроверить все решения задачи",
+            description = "Перепроверка выполняется в фоне, прогресс доступен через GET /api/tasks/{id}/rejudge")
+    public ResponseEntity<RejudgeResponse> rejudgeTask(@PathVariable UUID id, @RequestParam UUID currentUserId) {
+        RejudgeResponse response = rejudgeService.startRejudge(id, currentUserId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+    
+    @GetMapping("/{id}/rejudge")
+    @Operation(summary = "Получить прогресс перепроверки решений задачи")
+    public ResponseEntity<RejudgeResponse> getRejudgeStatus(@PathVariable UUID id) {
+        RejudgeResponse response = rejudgeService.getRejudgeStatus(id);
+        return ResponseEntity.ok(response);
+    }
 }
 
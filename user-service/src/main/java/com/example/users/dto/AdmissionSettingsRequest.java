@@ -0,0 +1,48 @@
+package com.example.users.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.PositiveOrZero;
+
+@Schema(description = "Запрос на изменение порогов допуска решений в проверку; незаданные поля не меняются")
+public class AdmissionSettingsRequest {
+    
+    @Schema(description = "Включен ли допуск по оценке ожидания", example = "true")
+    private Boolean enabled;
+    
+    @Schema(description = "Ожидание в очереди, после которого решения проверяются до первого непройденного теста, мс",
+            example = "30000")
+    @PositiveOrZero(message = "Degrade threshold must not be negative")
+    private Long degradeWaitMs;
+    
+    @Schema(description = "Ожидание в очереди, после которого решения отклоняются с кодом 429, мс", example = "120000")
+    @PositiveOrZero(message = "Reject threshold must not be negative")
+    private Long rejectWaitMs;
+    
+    public AdmissionSettingsRequest() {
+    }
+    
+    // Getters and Setters
+    public Boolean getEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public Long getDegradeWaitMs() {
+        return degradeWaitMs;
+    }
+    
+    public void setDegradeWaitMs(Long degradeWaitMs) {
+        this.degradeWaitMs = degradeWaitMs;
+    }
+    
+    public Long getRejectWaitMs() {
+        return rejectWaitMs;
+    }
+    
+    public void setRejectWaitMs(Long rejectWaitMs) {
+        this.rejectWaitMs = rejectWaitMs;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.users.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Schema(description = "Прогресс перепроверки решений задачи")
+public class RejudgeResponse {
+    
+    private UUID id;
+    private UUID taskId;
+    private String status;
+    private Integer totalSubmissions;
+    private Integer distinctSources;
+    private Integer judgedSources;
+    private Integer updatedSubmissions;
+    private String errorMessage;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    
+    public RejudgeResponse() {
+    }
+    
+    // Getters and Setters
+    public UUID getId() {
+        return id;
+    }
+    
+    public void setId(UUID id) {
+        this.id = id;
+    }
+    
+    public UUID getTaskId() {
+        return taskId;
+    }
+    
+    public void setTaskId(UUID taskId) {
+        this.taskId = taskId;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public Integer getTotalSubmissions() {
+        return totalSubmissions;
+    }
+    
+    public void setTotalSubmissions(Integer totalSubmissions) {
+        this.totalSubmissions = totalSubmissions;
+    }
+    
+    public Integer getDistinctSources() {
+        return distinctSources;
+    }
+    
+    public void setDistinctSources(Integer distinctSources) {
+        this.distinctSources = distinctSources;
+    }
+    
+    public Integer getJudgedSources() {
+        return judgedSources;
+    }
+    
+    public void setJudgedSources(Integer judgedSources) {
+        this.judgedSources = judgedSources;
+    }
+    
+    public Integer getUpdatedSubmissions() {
+        return updatedSubmissions;
+    }
+    
+    public void setUpdatedSubmissions(Integer updatedSubmissions) {
+        this.updatedSubmissions = updatedSubmissions;
+    }
+    
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+    
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+    
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+    
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
@@ -16,10 +16,14 @@ public class SubmissionResponse {
     private String taskTitle;
     private String code;
     private Submission.Status status;
+    private Submission.Status provisionalStatus; // Вердикт по тестам-примерам, пока status = PENDING
     private String testResults;
     private String errorMessage;
     private Integer testsPassed;
     private Integer testsTotal;
+    private Long maxCpuTimeMs;
+    private Long maxWallTimeMs;
+    private Long maxMemoryKb;
     private Boolean xpAwarded;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
@@ -84,6 +88,14 @@ public class SubmissionResponse {
         this.status = status;
     }
     
+    public Submission.Status getProvisionalStatus() {
+        return provisionalStatus;
+    }
+    
+    public void setProvisionalStatus(Submission.Status provisionalStatus) {
+        this.provisionalStatus = provisionalStatus;
+    }
+    
     public String getTestResults() {
         return testResults;
     }
@@ -116,6 +128,30 @@ public class SubmissionResponse {
         this.testsTotal = testsTotal;
     }
     
+    public Long getMaxCpuTimeMs() {
+        return maxCpuTimeMs;
+    }
+    
+    public void setMaxCpuTimeMs(Long maxCpuTimeMs) {
+        this.maxCpuTimeMs = maxCpuTimeMs;
+    }
+    
+    public Long getMaxWallTimeMs() {
+        return maxWallTimeMs;
+    }
+    
+    public void setMaxWallTimeMs(Long maxWallTimeMs) {
+        this.maxWallTimeMs = maxWallTimeMs;
+    }
+    
+    public Long getMaxMemoryKb() {
+        return maxMemoryKb;
+    }
+    
+    public void setMaxMemoryKb(Long maxMemoryKb) {
+        this.maxMemoryKb = maxMemoryKb;
+    }
+    
     public Boolean getXpAwarded() {
         return xpAwarded;
     }
@@ -4,6 +4,7 @@ import com.example.users.model.Task;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.Size;
 
 import java.util.UUID;
@@ -23,12 +24,30 @@ public class TaskRequest {
     @Schema(description = "Шаблон кода для начала")
     private String codeTemplate;
     
-    @Schema(description = "Тесты в формате JSON")
+    @Schema(description = "Тесты в формате JSON: {\"tests\":[{\"input\":...,\"output\":...,\"sample\":true}]}, "
+            + "примеры (sample) проверяются первыми и дают предварительный вердикт")
     private String testCases;
     
     @Schema(description = "Опыт за решение", example = "10")
     private Integer xpReward = 10;
     
+    @Schema(description = "Ограничение процессорного времени на тест, мс", example = "1000")
+    @Positive(message = "Time limit must be positive")
+    private Integer timeLimitMs;
+    
+    @Schema(description = "Эталонное решение на C: без ограничения времени лимит выводится из его времени на тестах")
+    private String referenceSolution;
+    
+    @Schema(description = "Ограничение памяти на тест, КБ", example = "65536")
+    @Positive(message = "Memory limit must be positive")
+    private Integer memoryLimitKb;
+    
+    @Schema(description = "Проверять только оптимизированной сборкой (для задач, где важно время)", example = "false")
+    private Boolean optimizedOnly;
+    
+    @Schema(description = "Проверка вывода: exact, tokens или float[:точность]", example = "exact")
+    private String checker;
+    
     @Schema(description = "Сложность задачи", example = "EASY")
     @NotNull(message = "Difficulty is required")
     private Task.Difficulty difficulty = Task.Difficulty.EASY;
@@ -86,6 +105,46 @@ public class TaskRequest {
         this.xpReward = xpReward;
     }
     
+    public Integer getTimeLimitMs() {
+        return timeLimitMs;
+    }
+    
+    public void setTimeLimitMs(Integer timeLimitMs) {
+        this.timeLimitMs = timeLimitMs;
+    }
+    
+    public String getReferenceSolution() {
+        return referenceSolution;
+    }
+    
+    public void setReferenceSolution(String referenceSolution) {
+        this.referenceSolution = referenceSolution;
+    }
+    
+    public Integer getMemoryLimitKb() {
+        return memoryLimitKb;
+    }
+    
+    public void setMemoryLimitKb(Integer memoryLimitKb) {
+        this.memoryLimitKb = memoryLimitKb;
+    }
+    
+    public Boolean getOptimizedOnly() {
+        return optimizedOnly;
+    }
+    
+    public void setOptimizedOnly(Boolean optimizedOnly) {
+        this.optimizedOnly = optimizedOnly;
+    }
+    
+    public String getChecker() {
+        return checker;
+    }
+    
+    public void setChecker(String checker) {
+        this.checker = checker;
+    }
+    
     public Task.Difficulty getDifficulty() {
         return difficulty;
     }
@@ -14,6 +14,11 @@ public class TaskResponse {
     private String description;
     private String codeTemplate;
     private Integer xpReward;
+    private Integer timeLimitMs; // Лимит на этой машине
+    private Integer referenceTimeMs;
+    private Integer memoryLimitKb;
+    private Boolean optimizedOnly;
+    private String checker;
     private Task.Difficulty difficulty;
     private UUID lessonId;
     private String lessonTitle;
@@ -69,6 +74,46 @@ public class TaskResponse {
         this.xpReward = xpReward;
     }
     
+    public Integer getTimeLimitMs() {
+        return timeLimitMs;
+    }
+    
+    public void setTimeLimitMs(Integer timeLimitMs) {
+        this.timeLimitMs = timeLimitMs;
+    }
+    
+    public Integer getReferenceTimeMs() {
+        return referenceTimeMs;
+    }
+    
+    public void setReferenceTimeMs(Integer referenceTimeMs) {
+        this.referenceTimeMs = referenceTimeMs;
+    }
+    
+    public Integer getMemoryLimitKb() {
+        return memoryLimitKb;
+    }
+    
+    public void setMemoryLimitKb(Integer memoryLimitKb) {
+        this.memoryLimitKb = memoryLimitKb;
+    }
+    
+    public Boolean getOptimizedOnly() {
+        return optimizedOnly;
+    }
+    
+    public void setOptimizedOnly(Boolean optimizedOnly) {
+        this.optimizedOnly = optimizedOnly;
+    }
+    
+    public String getChecker() {
+        return checker;
+    }
+    
+    public void setChecker(String checker) {
+        this.checker = checker;
+    }
+    
     public Task.Difficulty getDifficulty() {
         return difficulty;
     }
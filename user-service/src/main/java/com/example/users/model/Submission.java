@@ -18,6 +18,8 @@ public class Submission {
         PENDING("На проверке"),
         PASSED("Пройдено"),
         FAILED("Не пройдено"),
+        TIME_LIMIT("Превышено ограничение времени"),
+        MEMORY_LIMIT("Превышено ограничение памяти"),
         ERROR("Ошибка компиляции");
         
         private final String description;
@@ -43,13 +45,14 @@ public class Submission {
     @JoinColumn(name = "task_id", nullable = false)
     private Task task;
     
-    @Column(columnDefinition = "TEXT", nullable = false)
-    private String code; // Код решения
-    
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private Status status = Status.PENDING;
     
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private Status provisionalStatus; // Вердикт по тестам-примерам, пока идет полная проверка; иначе null
+    
     @Column(columnDefinition = "TEXT")
     private String testResults; // JSON с результатами тестов
     
@@ -65,6 +68,27 @@ public class Submission {
     @Column
     private Boolean xpAwarded = false; // Начислен ли опыт
     
+    @Column(length = 64)
+    private String codeHash; // SHA-256 кода решения
+    
+    @Column(length = 64)
+    private String testCasesHash; // SHA-256 тестов, на которых проверялось решение
+    
+    @Column
+    private Boolean reusableVerdict = false; // Можно ли выдать этот вердикт такому же коду на тех же тестах
+    
+    @Column
+    private Long maxCpuTimeMs; // Наибольшее процессорное время на одном тесте, мс
+    
+    @Column
+    private Long maxWallTimeMs; // Наибольшее реальное время на одном тесте, мс
+    
+    @Column
+    private Long maxMemoryKb; // Наибольший пиковый объем памяти на одном тесте, КБ
+    
+    @Column(updatable = false)
+    private String idempotencyKey; // Ключ идемпотентности из заголовка Idempotency-Key, уникален для пользователя
+    
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -76,10 +100,9 @@ public class Submission {
     public Submission() {
     }
     
-    public Submission(User user, Task task, String code) {
+    public Submission(User user, Task task) {
         this.user = user;
         this.task = task;
-        this.code = code;
     }
     
     /**
@@ -114,14 +137,6 @@ public class Submission {
         this.task = task;
     }
     
-    public String getCode() {
-        return code;
-    }
-    
-    public void setCode(String code) {
-        this.code = code;
-    }
-    
     public Status getStatus() {
         return status;
     }
@@ -130,6 +145,14 @@ public class Submission {
         this.status = status;
     }
     
+    public Status getProvisionalStatus() {
+        return provisionalStatus;
+    }
+    
+    public void setProvisionalStatus(Status provisionalStatus) {
+        this.provisionalStatus = provisionalStatus;
+    }
+    
     public String getTestResults() {
         return testResults;
     }
@@ -170,6 +193,62 @@ public class Submission {
         this.xpAwarded = xpAwarded;
     }
     
+    public String getCodeHash() {
+        return codeHash;
+    }
+    
+    public void setCodeHash(String codeHash) {
+        this.codeHash = codeHash;
+    }
+    
+    public String getTestCasesHash() {
+        return testCasesHash;
+    }
+    
+    public void setTestCasesHash(String testCasesHash) {
+        this.testCasesHash = testCasesHash;
+    }
+    
+    public Boolean getReusableVerdict() {
+        return reusableVerdict;
+    }
+    
+    public void setReusableVerdict(Boolean reusableVerdict) {
+        this.reusableVerdict = reusableVerdict;
+    }
+    
+    public Long getMaxCpuTimeMs() {
+        return maxCpuTimeMs;
+    }
+    
+    public void setMaxCpuTimeMs(Long maxCpuTimeMs) {
+        this.maxCpuTimeMs = maxCpuTimeMs;
+    }
+    
+    public Long getMaxWallTimeMs() {
+        return maxWallTimeMs;
+    }
+    
+    public void setMaxWallTimeMs(Long maxWallTimeMs) {
+        this.maxWallTimeMs = maxWallTimeMs;
+    }
+    
+    public Long getMaxMemoryKb() {
+        return maxMemoryKb;
+    }
+    
+    public void setMaxMemoryKb(Long maxMemoryKb) {
+        this.maxMemoryKb = maxMemoryKb;
+    }
+    
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+    
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+    
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -50,6 +50,27 @@ public class Task {
     @Column
     private Integer xpReward = 10; // Опыт за решение
     
+    @Column
+    private Integer timeLimitMs; // Ограничение процессорного времени на тест, мс
+    
+    @Column(columnDefinition = "TEXT")
+    private String referenceSolution; // Эталонное решение, по которому выводится лимит времени
+    
+    @Column
+    private Integer referenceTimeMs; // Время эталона на самом долгом тесте, мс
+    
+    @Column
+    private Integer calibrationMs; // Оценка машины, на которой выведен лимит; null - лимит задан вручную
+    
+    @Column
+    private Integer memoryLimitKb; // Ограничение памяти на тест, КБ
+    
+    @Column(nullable = false)
+    private Boolean optimizedOnly = false; // Проверять только оптимизированной сборкой, без быстрой -O0
+    
+    @Column(length = 32)
+    private String checker; // Проверка вывода: exact, tokens, float[:точность]; null - exact
+    
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private Difficulty difficulty = Difficulty.EASY;
@@ -135,6 +156,62 @@ public class Task {
         this.xpReward = xpReward;
     }
     
+    public Integer getTimeLimitMs() {
+        return timeLimitMs;
+    }
+    
+    public void setTimeLimitMs(Integer timeLimitMs) {
+        this.timeLimitMs = timeLimitMs;
+    }
+    
+    public String getReferenceSolution() {
+        return referenceSolution;
+    }
+    
+    public void setReferenceSolution(String referenceSolution) {
+        this.referenceSolution = referenceSolution;
+    }
+    
+    public Integer getReferenceTimeMs() {
+        return referenceTimeMs;
+    }
+    
+    public void setReferenceTimeMs(Integer referenceTimeMs) {
+        this.referenceTimeMs = referenceTimeMs;
+    }
+    
+    public Integer getCalibrationMs() {
+        return calibrationMs;
+    }
+    
+    public void setCalibrationMs(Integer calibrationMs) {
+        this.calibrationMs = calibrationMs;
+    }
+    
+    public Integer getMemoryLimitKb() {
+        return memoryLimitKb;
+    }
+    
+    public void setMemoryLimitKb(Integer memoryLimitKb) {
+        this.memoryLimitKb = memoryLimitKb;
+    }
+    
+    public Boolean getOptimizedOnly() {
+        return optimizedOnly;
+    }
+    
+    public void setOptimizedOnly(Boolean optimizedOnly) {
+        this.optimizedOnly = optimizedOnly;
+    }
+    
+    public String getChecker() {
+        return checker;
+    }
+    
+    public void setChecker(String checker) {
+        this.checker = checker;
+    }
+    
     public Difficulty getDifficulty() {
         return difficulty;
     }
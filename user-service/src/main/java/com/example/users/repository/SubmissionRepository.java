@@ -3,6 +3,8 @@ package com.example.users.repository;
 import com.example.users.model.Submission;
 import com.example.users.model.Task;
 import com.example.users.model.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -14,8 +16,15 @@ import java.util.UUID;
 public interface SubmissionRepository extends JpaRepository<Submission, UUID> {
     List<Submission> findByUser(User user);
     List<Submission> findByTask(Task task);
+    Slice<Submission> findByTask(Task task, Pageable pageable);
     List<Submission> findByUserAndTask(User user, Task task);
     Optional<Submission> findFirstByUserAndTaskOrderByCreatedAtDesc(User user, Task task);
     long countByUserAndStatus(User user, Submission.Status status);
+    List<Submission> findByStatus(Submission.Status status);
+    Optional<Submission> findByUserAndIdempotencyKey(User user, String idempotencyKey);
+    Optional<Submission> findFirstByUserAndTaskAndCodeHashAndStatus(User user, Task task, String codeHash,
+                                                                    Submission.Status status);
+    Optional<Submission> findFirstByCodeHashAndTestCasesHashAndReusableVerdictTrueOrderByCreatedAtDesc(
+            String codeHash, String testCasesHash);
 }
 
@@ -0,0 +1,210 @@
+package com.example.users.service;
+
+import com.example.users.model.Submission;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.DatabaseMetaData;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Хранилище исходного кода решений в таблице code_blobs.
+ * Код хранится один раз на каждый уникальный текст под его SHA-256, тем же хэшем, что submissions.code_hash,
+ * и сжимается deflate. Последние прочитанные и сохраненные исходники держатся в памяти
+ */
+@Component
+public class CodeBlobStore {
+    
+    private static final Logger log = LoggerFactory.getLogger(CodeBlobStore.class);
+    private static final String COLUMNS = "INSERT INTO code_blobs (hash, content, compression, original_size) ";
+    // Без ошибки при повторе, в том числе при одновременной вставке: ошибка прервала бы транзакцию отправки
+    private static final String UPSERT_SQL = COLUMNS + "VALUES (?, ?, ?, ?) ON CONFLICT (hash) DO NOTHING";
+    // H2 ON CONFLICT не понимает: пропускаем уже сохраненный код, одновременную вставку ловим по ключу
+    private static final String INSERT_SQL = COLUMNS + "SELECT ?, ?, ?, ? WHERE NOT EXISTS "
+            + "(SELECT 1 FROM code_blobs WHERE hash = ?)";
+    private static final String SELECT_SQL = "SELECT content, compression, original_size FROM code_blobs WHERE hash = ?";
+    private static final String DEFLATE = "DEFLATE";
+    private static final String NONE = "NONE";
+    private static final int MIN_COMPRESSED_SIZE = 128; // Более короткий код не сжимаем
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, String> cache;
+    private volatile Boolean postgres;
+    private long hits;
+    private long misses;
+    private long stored;
+    private long deduplicated;
+    
+    public CodeBlobStore(JdbcTemplate jdbcTemplate,
+                         @Value("${app.code-blobs.cache-entries:1000}") int cacheEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheEntries;
+            }
+        };
+    }
+    
+    /**
+     * Сохраняет код, если такого текста еще нет, в текущей транзакции
+     * @return SHA-256 кода для submissions.code_hash
+     */
+    public String save(String code) {
+        String text = code != null ? code : "";
+        return save(text, VerdictCache.hashOf(text));
+    }
+    
+    /**
+     * Сохраняет код с уже посчитанным хэшем
+     * @param hash {@link VerdictCache#hashOf} от code
+     */
+    public String save(String code, String hash) {
+        String text = code != null ? code : "";
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = raw.length >= MIN_COMPRESSED_SIZE ? deflate(raw) : null;
+        boolean useCompressed = compressed != null && compressed.length < raw.length;
+        byte[] content = useCompressed ? compressed : raw;
+        String compression = useCompressed ? DEFLATE : NONE;
+        int inserted;
+        if (isPostgres()) {
+            inserted = jdbcTemplate.update(UPSERT_SQL, hash, content, compression, raw.length);
+        } else {
+            try {
+                inserted = jdbcTemplate.update(INSERT_SQL, hash, content, compression, raw.length, hash);
+            } catch (DuplicateKeyException e) {
+                inserted = 0;
+            }
+        }
+        synchronized (this) {
+            if (inserted > 0) {
+                stored++;
+            } else {
+                deduplicated++;
+            }
+            cache.put(hash, text);
+        }
+        return hash;
+    }
+    
+    /**
+     * Код по хэшу
+     * @return null, если такого кода нет
+     */
+    public String load(String hash) {
+        synchronized (this) {
+            String code = cache.get(hash);
+            if (code != null) {
+                hits++;
+                return code;
+            }
+            misses++;
+        }
+        List<String> rows = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> decode(hash, rs.getBytes("content"),
+                rs.getString("compression"), rs.getInt("original_size")), hash);
+        if (rows.isEmpty()) {
+            log.warn("Код {} не найден в code_blobs", hash);
+            return null;
+        }
+        String code = rows.get(0);
+        synchronized (this) {
+            cache.put(hash, code);
+        }
+        return code;
+    }
+    
+    /**
+     * Код решения из code_blobs
+     */
+    public String codeOf(Submission submission) {
+        return submission.getCodeHash() != null ? load(submission.getCodeHash()) : null;
+    }
+    
+    /**
+     * Статистика хранилища
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cached", cache.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("stored", stored);
+        stats.put("deduplicated", deduplicated);
+        return stats;
+    }
+    
+    /**
+     * PostgreSQL или другая БД (H2 в профиле dev), определяется при первой записи
+     */
+    private boolean isPostgres() {
+        Boolean result = postgres;
+        if (result == null) {
+            try {
+                String product = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(),
+                        DatabaseMetaData::getDatabaseProductName);
+                result = "PostgreSQL".equals(product);
+            } catch (MetaDataAccessException e) {
+                log.warn("Не удалось определить БД для code_blobs: {}", e.getMessage());
+                result = false;
+            }
+            postgres = result;
+        }
+        return result;
+    }
+    
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    private static String decode(String hash, byte[] content, String compression, int originalSize) {
+        if (!DEFLATE.equals(compression)) {
+            return new String(content, StandardCharsets.UTF_8);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(content);
+            byte[] raw = new byte[originalSize];
+            int length = 0;
+            while (length < originalSize && !inflater.finished()) {
+                int read = inflater.inflate(raw, length, originalSize - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != originalSize) {
+                throw new IllegalStateException("Поврежден сжатый код " + hash);
+            }
+            return new String(raw, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Поврежден сжатый код " + hash, e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
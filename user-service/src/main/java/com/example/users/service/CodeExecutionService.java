@@ -1,19 +1,33 @@
 package com.example.users.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.users.service.TestSuiteCache.TestCase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 /**
  * Сервис для компиляции и выполнения C кода
@@ -22,11 +36,51 @@ import java.util.concurrent.TimeUnit;
 public class CodeExecutionService {
     
     private static final Logger log = LoggerFactory.getLogger(CodeExecutionService.class);
-    private static final ObjectMapper objectMapper = new ObjectMapper();
     
-    private static final String TEMP_DIR = System.getProperty("java.io.tmpdir");
-    private static final int TIMEOUT_SECONDS = 5; // Таймаут выполнения программы
-    private static final int MAX_OUTPUT_SIZE = 10000; // Максимальный размер вывода
+    private static final int TIMEOUT_SECONDS = 5; // Таймаут выполнения программы, если у задачи нет лимита времени
+    private static final int MAX_OUTPUT_SIZE = 10000; // Максимальный размер вывода в байтах
+    private static final long OUTPUT_DRAIN_TIMEOUT_MS = 1000; // Дочитывание вывода после завершения процесса
+    private static final String LINK_FAILURE = "ld returned"; // Сообщение gcc (collect2) о неудачной линковке
+    
+    private final CompiledBinaryCache binaryCache;
+    private final WorkspacePool workspacePool;
+    private final JudgeExecutors executors;
+    private final ResourceRunner resourceRunner;
+    private final TestSuiteCache testSuiteCache;
+    private final ForkServer forkServer;
+    private final CompilerToolchain toolchain;
+    private final JudgeMetrics metrics;
+    private final TestFailureStats failureStats;
+    private final boolean parallelTests;
+    private final boolean failFastByDefault;
+    private final boolean tieredCompilation;
+    private final int sampleTests;
+    private final AtomicLong runCounter = new AtomicLong();
+    
+    public CodeExecutionService(CompiledBinaryCache binaryCache, WorkspacePool workspacePool,
+                                JudgeExecutors executors, ResourceRunner resourceRunner,
+                                TestSuiteCache testSuiteCache, ForkServer forkServer,
+                                CompilerToolchain toolchain, JudgeMetrics metrics, TestFailureStats failureStats,
+                                @Value("${app.judge.parallel-tests:true}") boolean parallelTests,
+                                @Value("${app.judge.fail-fast:false}") boolean failFast,
+                                @Value("${app.judge.tiered.enabled:true}") boolean tieredCompilation,
+                                @Value("${app.judge.tiered.sample-tests:2}") int sampleTests) {
+        this.binaryCache = binaryCache;
+        this.workspacePool = workspacePool;
+        this.executors = executors;
+        this.resourceRunner = resourceRunner;
+        this.testSuiteCache = testSuiteCache;
+        this.forkServer = forkServer;
+        this.toolchain = toolchain;
+        this.metrics = metrics;
+        this.failureStats = failureStats;
+        this.parallelTests = parallelTests;
+        this.failFastByDefault = failFast;
+        this.tieredCompilation = tieredCompilation;
+        this.sampleTests = Math.max(sampleTests, 1);
+        log.info("Запуск тестов: параллельно={}, fail-fast={}, быстрая сборка={}", parallelTests, failFast,
+            tieredCompilation);
+    }
     
     /**
      * Результат выполнения теста
@@ -37,14 +91,69 @@ public class CodeExecutionService {
         public final String expectedOutput;
         public final String actualOutput;
         public final String errorMessage;
+        public final boolean timedOut; // Превышено ограничение времени, результат зависит от загрузки машины
+        public final boolean memoryLimitExceeded;
+        public final ResourceRunner.Usage usage; // null, если программа не запускалась
+        public final String wrongAnswerDetail; // Для неверного ответа - пояснение после ожидаемого и полученного, иначе null
         
         public TestExecutionResult(boolean passed, String input, String expectedOutput, 
                                   String actualOutput, String errorMessage) {
+            this(passed, input, expectedOutput, actualOutput, errorMessage, false);
+        }
+        
+        public TestExecutionResult(boolean passed, String input, String expectedOutput, 
+                                  String actualOutput, String errorMessage, boolean timedOut) {
+            this(passed, input, expectedOutput, actualOutput, errorMessage, timedOut, false, null);
+        }
+        
+        public TestExecutionResult(boolean passed, String input, String expectedOutput, 
+                                  String actualOutput, String errorMessage, boolean timedOut,
+                                  boolean memoryLimitExceeded, ResourceRunner.Usage usage) {
+            this(passed, input, expectedOutput, actualOutput, errorMessage, timedOut, memoryLimitExceeded, usage, null);
+        }
+        
+        public TestExecutionResult(boolean passed, String input, String expectedOutput,
+                                  String actualOutput, String errorMessage, boolean timedOut,
+                                  boolean memoryLimitExceeded, ResourceRunner.Usage usage, String wrongAnswerDetail) {
             this.passed = passed;
             this.input = input;
             this.expectedOutput = expectedOutput;
             this.actualOutput = actualOutput;
             this.errorMessage = errorMessage;
+            this.timedOut = timedOut;
+            this.memoryLimitExceeded = memoryLimitExceeded;
+            this.usage = usage;
+            this.wrongAnswerDetail = wrongAnswerDetail;
+        }
+    }
+    
+    /**
+     * Ограничения задачи на один тест, null - без ограничения
+     */
+    public static class Limits {
+        public static final Limits NONE = new Limits(null, null);
+        
+        public final Integer timeLimitMs;
+        public final Integer memoryLimitKb;
+        public final boolean optimizedOnly; // Не использовать быструю сборку -O0
+        public final String checker; // Проверка вывода, см. OutputChecker.of
+        
+        public Limits(Integer timeLimitMs, Integer memoryLimitKb) {
+            this(timeLimitMs, memoryLimitKb, false, null);
+        }
+        
+        public Limits(Integer timeLimitMs, Integer memoryLimitKb, boolean optimizedOnly, String checker) {
+            this.timeLimitMs = timeLimitMs;
+            this.memoryLimitKb = memoryLimitKb;
+            this.optimizedOnly = optimizedOnly;
+            this.checker = checker;
+        }
+        
+        /**
+         * Таймаут по реальному времени: с запасом на ожидание ввода-вывода
+         */
+        long wallTimeoutMs() {
+            return timeLimitMs != null ? timeLimitMs * 2L + 1000 : TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
         }
     }
     
@@ -57,40 +166,79 @@ public class CodeExecutionService {
         public final List<TestExecutionResult> testResults;
         public final int testsPassed;
         public final int testsTotal;
+        public final String testSuiteHash; // Версия тестов, по порядку которых идут testResults; null, если тесты не запускались
         
         public CodeCheckResult(boolean compilationSuccess, String compilationError,
                               List<TestExecutionResult> testResults) {
+            this(compilationSuccess, compilationError, testResults, null);
+        }
+        
+        public CodeCheckResult(boolean compilationSuccess, String compilationError,
+                              List<TestExecutionResult> testResults, String testSuiteHash) {
             this.compilationSuccess = compilationSuccess;
             this.compilationError = compilationError;
             this.testResults = testResults;
             this.testsTotal = testResults.size();
             this.testsPassed = (int) testResults.stream().filter(t -> t.passed).count();
+            this.testSuiteHash = testSuiteHash;
         }
     }
     
+    /**
+     * Установлен ли компилятор C
+     */
+    public boolean isCompilerAvailable() {
+        return toolchain.isAvailable();
+    }
+    
     /**
      * Компилирует и проверяет C код на тестовых данных
      */
     public CodeCheckResult checkCode(String code, String testCasesJson) {
-        String uniqueId = UUID.randomUUID().toString();
-        Path workDir = Paths.get(TEMP_DIR, "code_exec_" + uniqueId);
+        return checkCode(code, testCasesJson, Limits.NONE, failFastByDefault);
+    }
+    
+    /**
+     * Компилирует и проверяет C код на тестовых данных с ограничениями задачи
+     */
+    public CodeCheckResult checkCode(String code, String testCasesJson, Limits limits) {
+        return checkCode(code, testCasesJson, limits, failFastByDefault);
+    }
+    
+    /**
+     * Компилирует и проверяет C код с ограничениями задачи, сначала на тестах-примерах
+     * @param onSamples получатель результата примеров, см. {@link #checkCode(String, String, Limits, boolean, Consumer)}
+     */
+    public CodeCheckResult checkCode(String code, String testCasesJson, Limits limits,
+                                     Consumer<CodeCheckResult> onSamples) {
+        return checkCode(code, testCasesJson, limits, failFastByDefault, onSamples);
+    }
+    
+    /**
+     * Компилирует и проверяет C код на тестовых данных
+     * @param failFast остановить проверку после первого непройденного теста,
+     *                 если вызывающему нужен только итоговый вердикт
+     */
+    public CodeCheckResult checkCode(String code, String testCasesJson, Limits limits, boolean failFast) {
+        return checkCode(code, testCasesJson, limits, failFast, null);
+    }
+    
+    /**
+     * Компилирует и проверяет C код на тестовых данных, сначала на тестах-примерах.
+     * Результат примеров передается onSamples сразу, до запуска остальных тестов,
+     * чтобы студент увидел предварительный вердикт, пока идет полная проверка
+     * @param onSamples получатель результата примеров или null; не вызывается, если примеров нет
+     *                  или решение не скомпилировалось
+     */
+    public CodeCheckResult checkCode(String code, String testCasesJson, Limits limits, boolean failFast,
+                                     Consumer<CodeCheckResult> onSamples) {
+        Path workDir = null;
+        TestSuiteCache.TestSuite suite = null;
         
         try {
-            // Создаем рабочую директорию
-            Files.createDirectories(workDir);
-            
-            // Сохраняем код в файл
-            Path sourceFile = workDir.resolve("solution.c");
-            Files.write(sourceFile, code.getBytes());
-            
-            // Компилируем код
-            CompilationResult compilation = compileCode(sourceFile, workDir);
-            if (!compilation.success) {
-                return new CodeCheckResult(false, compilation.error, new ArrayList<>());
-            }
-            
-            // Парсим тестовые случаи
-            List<TestCase> testCases = parseTestCases(testCasesJson);
+            // Берем разобранные тесты из кэша
+            suite = testSuiteCache.acquire(testCasesJson);
+            List<TestCase> testCases = suite.testCases;
             
             if (testCases.isEmpty()) {
                 log.warn("Тестовые случаи не найдены или пусты");
@@ -99,84 +247,401 @@ public class CodeExecutionService {
             
             log.info("Найдено {} тестовых случаев", testCases.size());
             
-            // Запускаем тесты
-            List<TestExecutionResult> testResults = new ArrayList<>();
-            for (int i = 0; i < testCases.size(); i++) {
-                TestCase testCase = testCases.get(i);
-                log.debug("Запуск теста {} из {}", i + 1, testCases.size());
-                TestExecutionResult result = runTest(workDir.resolve("solution"), testCase);
-                testResults.add(result);
+            // Берем рабочую директорию из пула
+            workDir = workspacePool.lease();
+            Path executable = workDir.resolve("solution");
+            
+            List<Integer> samples = onSamples != null && suite.sampleIndexes.size() < testCases.size()
+                ? suite.sampleIndexes : List.of();
+            
+            // Сначала быстрая сборка на примерах или первых тестах: ошибку компиляции или неверный ответ видно раньше
+            if (tieredCompilation && !limits.optimizedOnly && testCases.size() > sampleTests) {
+                QuickCheck quick = quickCheck(code, workDir, suite, limits, samples, onSamples);
+                if (quick.verdict != null) {
+                    failureStats.record(suite.hash, quick.verdict.testResults);
+                    return quick.verdict;
+                }
+                if (quick.samplesPublished) {
+                    // Предварительный вердикт уже передан, оптимизированная сборка проверяется на всех тестах подряд
+                    samples = List.of();
+                }
             }
             
+            // Большие наборы тестов запускаем через сервер, слинкованный с решением.
+            // Ошибка компиляции решения возвращается сразу; обычная сборка нужна, только если не удалась линковка с сервером
+            boolean forked = false;
+            if (forkServer.shouldUse(testCases.size())) {
+                CompilationResult compilation = prepareExecutable(code, workDir, forkServer.compilerFlags(toolchain.flags()));
+                if (!compilation.success && !compilation.linkFailed) {
+                    return new CodeCheckResult(false, compilation.error, new ArrayList<>());
+                }
+                forked = compilation.success;
+            }
+            if (!forked) {
+                CompilationResult compilation = prepareExecutable(code, workDir, toolchain.flags());
+                if (!compilation.success) {
+                    return new CodeCheckResult(false, compilation.error, new ArrayList<>());
+                }
+            }
+            
+            // Запускаем тесты
+            long testsStarted = System.nanoTime();
+            List<TestExecutionResult> testResults = samples.isEmpty()
+                    ? runOrdered(executable, suite, IntStream.range(0, testCases.size()).boxed().toList(),
+                        limits, failFast, forked)
+                    : runSamplesFirst(executable, suite, samples, limits, failFast, forked, onSamples);
+            metrics.record("tests", System.nanoTime() - testsStarted);
+            failureStats.record(suite.hash, testResults);
+            
             int passed = (int) testResults.stream().filter(t -> t.passed).count();
             log.info("Пройдено тестов: {} из {}", passed, testResults.size());
             
-            return new CodeCheckResult(true, null, testResults);
-            
+            return new CodeCheckResult(true, null, testResults, suite.hash);
+        
         } catch (Exception e) {
             log.error("Ошибка при проверке кода", e);
             return new CodeCheckResult(false, "Ошибка системы: " + e.getMessage(), new ArrayList<>());
         } finally {
-            // Удаляем временные файлы
-            cleanup(workDir);
+            // Очищаем директорию и возвращаем ее в пул
+            if (workDir != null) {
+                workspacePool.release(workDir);
+            }
+            if (suite != null) {
+                testSuiteCache.release(suite);
+            }
         }
     }
     
     /**
-     * Компилирует C код
+     * Замер времени эталонного решения: оптимизированная сборка и тесты строго по одному на одном слоте процессора,
+     * занятом на весь замер. Параллельные тесты делят кэши и шину памяти, и время эталона зависело бы от соседей.
+     * Проверка останавливается на первом непройденном тесте, результаты не попадают в {@link TestFailureStats}:
+     * эталон - не решение студента
      */
-    private CompilationResult compileCode(Path sourceFile, Path workDir) {
+    public CodeCheckResult measureReference(String code, String testCasesJson, Limits limits) {
+        Path workDir = null;
+        TestSuiteCache.TestSuite suite = null;
         try {
-            log.debug("Компиляция файла: {}", sourceFile);
-            ProcessBuilder pb = new ProcessBuilder("gcc", "-o", "solution", "solution.c", 
-                                                   "-std=c11", "-Wall", "-Wextra", "-O2");
-            pb.directory(workDir.toFile());
-            pb.redirectErrorStream(false);
-            
-            Process process = pb.start();
-            
-            // Читаем ошибки компиляции из stderr
-            StringBuilder errorOutput = new StringBuilder();
-            try (BufferedReader errorReader = new BufferedReader(
-                    new InputStreamReader(process.getErrorStream()))) {
-                String line;
-                while ((line = errorReader.readLine()) != null) {
-                    if (errorOutput.length() > 0) {
-                        errorOutput.append("\n");
+            suite = testSuiteCache.acquire(testCasesJson);
+            List<TestCase> testCases = suite.testCases;
+            if (testCases.isEmpty()) {
+                return new CodeCheckResult(false, "Тестовые случаи не найдены", new ArrayList<>());
+            }
+            workDir = workspacePool.lease();
+            Path executable = workDir.resolve("solution");
+            // Компилятор сам занимает слот, поэтому слот замера берется после сборки
+            CompilationResult compilation = prepareExecutable(code, workDir, toolchain.flags());
+            if (!compilation.success) {
+                return new CodeCheckResult(false, compilation.error, new ArrayList<>());
+            }
+            int cpuSlot = executors.acquireCpuSlot();
+            try {
+                RunControl control = new RunControl();
+                List<TestExecutionResult> results = new ArrayList<>();
+                for (TestCase testCase : testCases) {
+                    if (control.cancelled.get()) {
+                        results.add(skippedResult(testCase));
+                        continue;
+                    }
+                    TestExecutionResult result = runTest(executable, testCase, limits, control, cpuSlot);
+                    results.add(result);
+                    if (!result.passed) {
+                        control.cancelled.set(true);
                     }
-                    errorOutput.append(line);
                 }
+                return new CodeCheckResult(true, null, results, suite.hash);
+            } finally {
+                executors.releaseCpuSlot(cpuSlot);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new CodeCheckResult(false, "Замер прерван", new ArrayList<>());
+        } catch (Exception e) {
+            log.error("Ошибка при замере эталона", e);
+            return new CodeCheckResult(false, "Ошибка системы: " + e.getMessage(), new ArrayList<>());
+        } finally {
+            if (workDir != null) {
+                workspacePool.release(workDir);
+            }
+            if (suite != null) {
+                testSuiteCache.release(suite);
+            }
+        }
+    }
+    
+    /**
+     * Итог быстрой проверки
+     */
+    private static class QuickCheck {
+        static final QuickCheck NOT_DECIDED = new QuickCheck(null, false);
+        
+        final CodeCheckResult verdict; // Окончательный результат или null, если нужна полная проверка
+        final boolean samplesPublished; // Результат примеров уже передан onSamples
+        
+        QuickCheck(CodeCheckResult verdict, boolean samplesPublished) {
+            this.verdict = verdict;
+            this.samplesPublished = samplesPublished;
+        }
+    }
+    
+    /**
+     * Быстрая проверка: сборка без оптимизаций и первые тесты.
+     * Время и память неоптимизированной сборки не показательны, поэтому решающими считаются
+     * только ошибка компиляции, неверный ответ и ошибка выполнения.
+     * Если все примеры пройдены, их результат сразу передается onSamples: предварительный вердикт
+     * не ждет оптимизированной сборки
+     * @param samples тесты-примеры, которые запускаются вместо первых тестов, если они есть
+     */
+    private QuickCheck quickCheck(String code, Path workDir, TestSuiteCache.TestSuite suite,
+                                  Limits limits, List<Integer> samples,
+                                  Consumer<CodeCheckResult> onSamples) throws IOException {
+        List<TestCase> testCases = suite.testCases;
+        List<Integer> indexes = new ArrayList<>(samples);
+        for (int i = 0; indexes.isEmpty() && i < sampleTests; i++) {
+            indexes.add(i);
+        }
+        long started = System.nanoTime();
+        try {
+            CompilationResult compilation = prepareExecutable(code, workDir, toolchain.quickFlags());
+            if (!compilation.success) {
+                return new QuickCheck(new CodeCheckResult(false, compilation.error, new ArrayList<>()), false);
             }
             
-            // Также читаем stdout на случай если там есть предупреждения
-            try (BufferedReader stdoutReader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = stdoutReader.readLine()) != null) {
-                    if (errorOutput.length() > 0) {
-                        errorOutput.append("\n");
-                    }
-                    errorOutput.append(line);
+            List<TestExecutionResult> quick = runTests(workDir.resolve("solution"),
+                indexes.stream().map(testCases::get).toList(), limits, false);
+            boolean failed = quick.stream()
+                .anyMatch(result -> !result.passed && !result.timedOut && !result.memoryLimitExceeded);
+            if (!failed) {
+                // Превышение времени или памяти неоптимизированной сборкой не показательно, такие примеры
+                // предварительно оценит оптимизированная сборка
+                if (samples.isEmpty() || !quick.stream().allMatch(result -> result.passed)) {
+                    return QuickCheck.NOT_DECIDED;
                 }
+                publishSamples(onSamples, quick);
+                return new QuickCheck(null, true);
             }
-            
-            boolean finished = process.waitFor(10, TimeUnit.SECONDS);
-            if (!finished) {
-                process.destroyForcibly();
-                log.warn("Таймаут компиляции");
-                return new CompilationResult(false, "Таймаут компиляции (превышено 10 секунд)");
+            log.debug("Решение не прошло первые тесты быстрой сборки, полная проверка не нужна");
+            List<TestExecutionResult> results = new ArrayList<>(testCases.size());
+            for (TestCase testCase : testCases) {
+                results.add(skippedResult(testCase));
             }
-            
-            int exitCode = process.exitValue();
-            if (exitCode != 0) {
-                String error = errorOutput.toString();
-                log.warn("Ошибка компиляции (код {}): {}", exitCode, error);
-                return new CompilationResult(false, error.isEmpty() ? "Ошибка компиляции (код " + exitCode + ")" : error);
+            for (int i = 0; i < indexes.size(); i++) {
+                results.set(indexes.get(i), quick.get(i));
             }
-            
-            log.debug("Компиляция успешна");
+            return new QuickCheck(new CodeCheckResult(true, null, results, suite.hash), false);
+        } finally {
+            metrics.record("quick", System.nanoTime() - started);
+        }
+    }
+    
+    /**
+     * Запускает тесты-примеры, передает их результат onSamples и запускает остальные тесты.
+     * При fail-fast остальные тесты после непройденного примера не запускаются
+     * @return результаты всех тестов в исходном порядке
+     */
+    private List<TestExecutionResult> runSamplesFirst(Path executable, TestSuiteCache.TestSuite suite,
+                                                      List<Integer> samples, Limits limits, boolean failFast,
+                                                      boolean forked, Consumer<CodeCheckResult> onSamples) {
+        List<TestCase> testCases = suite.testCases;
+        List<TestExecutionResult> sampleResults = runOrdered(executable, suite, samples, limits, failFast, forked);
+        publishSamples(onSamples, sampleResults);
+        
+        boolean samplesFailed = sampleResults.stream().anyMatch(result -> !result.passed);
+        Set<Integer> sampleSet = Set.copyOf(samples);
+        List<Integer> rest = new ArrayList<>();
+        for (int i = 0; i < testCases.size(); i++) {
+            if (!sampleSet.contains(i)) {
+                rest.add(i);
+            }
+        }
+        List<TestExecutionResult> restResults = failFast && samplesFailed
+            ? rest.stream().map(i -> skippedResult(testCases.get(i))).toList()
+            : runOrdered(executable, suite, rest, limits, failFast, forked);
+        
+        List<TestExecutionResult> results = new ArrayList<>(Collections.nCopies(testCases.size(), null));
+        for (int i = 0; i < samples.size(); i++) {
+            results.set(samples.get(i), sampleResults.get(i));
+        }
+        for (int i = 0; i < rest.size(); i++) {
+            results.set(rest.get(i), restResults.get(i));
+        }
+        return results;
+    }
+    
+    private void publishSamples(Consumer<CodeCheckResult> onSamples, List<TestExecutionResult> sampleResults) {
+        try {
+            onSamples.accept(new CodeCheckResult(true, null, sampleResults));
+        } catch (RuntimeException e) {
+            log.warn("Не удалось передать результат примеров: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Запускает тесты с номерами indexes. Если нужен только вердикт (fail-fast), тесты идут
+     * в порядке убывания частоты падений, см. {@link TestFailureStats}
+     * @return результаты в порядке indexes
+     */
+    private List<TestExecutionResult> runOrdered(Path executable, TestSuiteCache.TestSuite suite,
+                                                 List<Integer> indexes, Limits limits, boolean failFast,
+                                                 boolean forked) {
+        List<TestCase> testCases = suite.testCases;
+        List<Integer> order = failFast ? failureStats.order(suite.hash, indexes, testCases.size()) : indexes;
+        List<TestExecutionResult> results = runSuite(executable, order.stream().map(testCases::get).toList(),
+            limits, failFast, forked);
+        if (order == indexes) {
+            return results;
+        }
+        Map<Integer, TestExecutionResult> byIndex = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            byIndex.put(order.get(i), results.get(i));
+        }
+        return indexes.stream().map(byIndex::get).toList();
+    }
+    
+    private List<TestExecutionResult> runSuite(Path executable, List<TestCase> testCases, Limits limits,
+                                               boolean failFast, boolean forked) {
+        return forked
+            ? runForkedTests(executable, testCases, limits, failFast)
+            : runTests(executable, testCases, limits, failFast);
+    }
+    
+    /**
+     * Собирает программу в workDir/solution или берет ее из кэша.
+     * Повторно отправленный код не компилируется
+     */
+    private CompilationResult prepareExecutable(String code, Path workDir, List<String> flags) throws IOException {
+        Path executable = workDir.resolve("solution");
+        // Прошлая сборка может быть жесткой ссылкой на файл кэша - не пишем поверх нее
+        Files.deleteIfExists(executable);
+        String cacheKey = binaryCache.keyOf(code, flags);
+        if (binaryCache.copyTo(cacheKey, executable)) {
+            log.debug("Программа взята из кэша");
             return new CompilationResult(true, null);
+        }
+        
+        // Сохраняем код в файл
+        Files.write(workDir.resolve("solution.c"), code.getBytes());
+        
+        // Компилируем код
+        CompilationResult compilation = compileCode(code, workDir, flags);
+        if (compilation.success) {
+            binaryCache.put(cacheKey, executable);
+        }
+        return compilation;
+    }
+    
+    /**
+     * Запускает все тесты и возвращает результаты в исходном порядке
+     */
+    private List<TestExecutionResult> runTests(Path executable, List<TestCase> testCases, Limits limits,
+                                               boolean failFast) {
+        RunControl control = new RunControl();
+        
+        if (!parallelTests || testCases.size() == 1) {
+            List<TestExecutionResult> results = new ArrayList<>();
+            for (int i = 0; i < testCases.size(); i++) {
+                TestCase testCase = testCases.get(i);
+                if (control.cancelled.get()) {
+                    results.add(skippedResult(testCase));
+                    continue;
+                }
+                log.debug("Запуск теста {} из {}", i + 1, testCases.size());
+                TestExecutionResult result = runTest(executable, testCase, limits, control);
+                results.add(result);
+                if (failFast && !result.passed) {
+                    control.cancelled.set(true);
+                }
+            }
+            return results;
+        }
+        
+        CompletionService<TestExecutionResult> completionService = new ExecutorCompletionService<>(executors.judgeExecutor());
+        List<Future<TestExecutionResult>> futures = new ArrayList<>();
+        for (TestCase testCase : testCases) {
+            futures.add(completionService.submit(() -> {
+                if (!control.enter()) {
+                    return skippedResult(testCase);
+                }
+                try {
+                    return runTest(executable, testCase, limits, control);
+                } finally {
+                    control.exit();
+                }
+            }));
+        }
+        
+        try {
+            // Ждем завершения всех тестов; при fail-fast останавливаемся на первом падении
+            for (int i = 0; i < futures.size(); i++) {
+                TestExecutionResult result = completionService.take().get();
+                if (failFast && !result.passed && !control.cancelled.get()) {
+                    log.debug("Тест не пройден, оставшиеся тесты отменены");
+                    control.cancel();
+                    futures.forEach(future -> future.cancel(false));
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            control.cancel();
+            futures.forEach(future -> future.cancel(false));
+        } catch (ExecutionException e) {
+            log.error("Ошибка при запуске теста", e);
+        }
+        // Отмененные, но уже начатые тесты еще могут писать в рабочую директорию и читать исполняемый файл:
+        // директорию можно вернуть в пул только после их завершения
+        control.awaitIdle();
+        
+        List<TestExecutionResult> results = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            results.add(resultOf(futures.get(i), testCases.get(i)));
+        }
+        return results;
+    }
+    
+    private TestExecutionResult resultOf(Future<TestExecutionResult> future, TestCase testCase) {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            return skippedResult(testCase);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return skippedResult(testCase);
+        } catch (ExecutionException e) {
+            return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput,
+                "", "Ошибка выполнения: " + e.getCause().getMessage());
+        }
+    }
+    
+    private TestExecutionResult skippedResult(TestCase testCase) {
+        return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput,
+            "", "Тест не запускался: решение не прошло предыдущий тест");
+    }
+    
+    /**
+     * Компилирует C код
+     */
+    private CompilationResult compileCode(String code, Path workDir, List<String> flags) {
+        try {
+            log.debug("Компиляция в {}", workDir);
             
+            // Компилятор нагружает процессор - ждем свободный слот
+            long queued = System.nanoTime();
+            int cpuSlot = executors.acquireCpuSlot();
+            try {
+                metrics.record("compile.queue", System.nanoTime() - queued);
+                ProcessBuilder pb = new ProcessBuilder(toolchain.command(code, flags));
+                pb.directory(workDir.toFile());
+                pb.redirectErrorStream(false);
+                
+                long started = System.nanoTime();
+                CompilationResult result = runCompiler(pb);
+                metrics.record("compile.gcc", System.nanoTime() - started);
+                return result;
+            } finally {
+                executors.releaseCpuSlot(cpuSlot);
+            }
+        
         } catch (IOException e) {
             log.error("IO ошибка при компиляции", e);
             return new CompilationResult(false, "Ошибка компиляции: " + e.getMessage());
@@ -187,181 +652,503 @@ public class CodeExecutionService {
         }
     }
     
+    private CompilationResult runCompiler(ProcessBuilder pb) throws IOException, InterruptedException {
+        Process process = pb.start();
+        
+        // Читаем ошибки компиляции из stderr
+        StringBuilder errorOutput = new StringBuilder();
+        try (BufferedReader errorReader = new BufferedReader(
+                new InputStreamReader(process.getErrorStream()))) {
+            String line;
+            while ((line = errorReader.readLine()) != null) {
+                if (errorOutput.length() > 0) {
+                    errorOutput.append("\n");
+                }
+                errorOutput.append(line);
+            }
+        }
+        
+        // Также читаем stdout на случай если там есть предупреждения
+        try (BufferedReader stdoutReader = new BufferedReader(
+                new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = stdoutReader.readLine()) != null) {
+                if (errorOutput.length() > 0) {
+                    errorOutput.append("\n");
+                }
+                errorOutput.append(line);
+            }
+        }
+        
+        boolean finished = process.waitFor(10, TimeUnit.SECONDS);
+        if (!finished) {
+            process.destroyForcibly();
+            log.warn("Таймаут компиляции");
+            return new CompilationResult(false, "Таймаут компиляции (превышено 10 секунд)");
+        }
+        
+        int exitCode = process.exitValue();
+        if (exitCode != 0) {
+            String error = errorOutput.toString();
+            log.warn("Ошибка компиляции (код {}): {}", exitCode, error);
+            return new CompilationResult(false, error.isEmpty() ? "Ошибка компиляции (код " + exitCode + ")" : error,
+                error.contains(LINK_FAILURE));
+        }
+        
+        log.debug("Компиляция успешна");
+        return new CompilationResult(true, null);
+    }
+    
     /**
-     * Запускает программу с тестовыми данными
+     * Запускает программу с тестовыми данными.
+     * stdin, stdout и stderr обслуживаются параллельно, поэтому программа, заполнившая один из каналов
+     * или не закрывшая вывод, не блокирует проверку, а таймаут отсчитывается от запуска процесса.
+     * Программа запускается через {@link ResourceRunner}, который сообщает затраченные время и память
      */
-    private TestExecutionResult runTest(Path executable, TestCase testCase) {
-        StringBuilder errorOutput = new StringBuilder();
+    private TestExecutionResult runTest(Path executable, TestCase testCase, Limits limits, RunControl control) {
+        return runTest(executable, testCase, limits, control, -1);
+    }
+    
+    /**
+     * @param pinnedSlot слот процессора, уже занятый вызывающим, или -1, чтобы занять свободный слот на время теста
+     */
+    private TestExecutionResult runTest(Path executable, TestCase testCase, Limits limits, RunControl control,
+                                        int pinnedSlot) {
+        Process process = null;
+        int cpuSlot = -1; // Слот, занятый этим тестом
         
         try {
+            if (control.cancelled.get()) {
+                return skippedResult(testCase);
+            }
+            
             if (!Files.exists(executable)) {
                 log.error("Исполняемый файл не найден: {}", executable);
-                return new TestExecutionResult(false, testCase.input, testCase.expectedOutput,
+                return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput,
                     "", "Исполняемый файл не найден после компиляции");
             }
             
-            log.debug("Запуск теста: input='{}', expected='{}'", testCase.input, testCase.expectedOutput);
-            ProcessBuilder pb = new ProcessBuilder(executable.toString());
-            pb.redirectErrorStream(false);
-            
-            Process process = pb.start();
+            log.debug("Запуск теста: входные данные {} байт, expected='{}'", testCase.inputSize, testCase.expectedOutput);
+            Path metricsFile = executable.resolveSibling("metrics_" + runCounter.incrementAndGet());
             
-            // Записываем входные данные
-            try (BufferedWriter writer = new BufferedWriter(
-                    new OutputStreamWriter(process.getOutputStream()))) {
-                writer.write(testCase.input);
-                writer.flush();
-                writer.close();
+            // Таймаут отсчитывается с момента, когда программе достался слот процессора
+            if (pinnedSlot < 0) {
+                cpuSlot = executors.acquireCpuSlot();
             }
-            
-            // Читаем стандартный вывод
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                int linesRead = 0;
-                while ((line = reader.readLine()) != null && linesRead < 100) {
-                    if (linesRead > 0) {
-                        output.append("\n");
-                    }
-                    output.append(line);
-                    linesRead++;
-                }
+            if (control.cancelled.get()) {
+                return skippedResult(testCase);
             }
+            // Программа работает в песочнице своего слота: на его ядре и в его cgroup
+            ProcessBuilder pb = new ProcessBuilder(resourceRunner.command(executable, metricsFile,
+                limits.timeLimitMs, limits.memoryLimitKb, pinnedSlot >= 0 ? pinnedSlot : cpuSlot));
+            pb.redirectErrorStream(false);
             
-            // Читаем ошибки
-            try (BufferedReader errorReader = new BufferedReader(
-                    new InputStreamReader(process.getErrorStream()))) {
-                String line;
-                while ((line = errorReader.readLine()) != null) {
-                    if (errorOutput.length() > 0) {
-                        errorOutput.append("\n");
-                    }
-                    errorOutput.append(line);
-                }
+            long started = System.nanoTime();
+            long deadline = started + TimeUnit.MILLISECONDS.toNanos(limits.wallTimeoutMs());
+            process = pb.start();
+            control.processes.add(process);
+            if (control.cancelled.get()) {
+                process.destroyForcibly();
             }
             
-            // Ограничиваем размер вывода
-            String actualOutput = output.toString();
-            if (actualOutput.length() > MAX_OUTPUT_SIZE) {
-                actualOutput = actualOutput.substring(0, MAX_OUTPUT_SIZE) + "... (обрезано)";
-            }
+            // Записываем входные данные и читаем оба канала вывода одновременно.
+            // Вывод сверяется с ожидаемым по мере поступления, при расхождении программа останавливается
+            Process running = process;
+            BoundedOutput stdout = new BoundedOutput();
+            BoundedOutput stderr = new BoundedOutput();
+            OutputChecker.Comparison comparison = OutputChecker.of(limits.checker).start(testCase.expectedOutput);
+            AtomicBoolean stoppedOnMismatch = new AtomicBoolean();
+            Future<?> stdinWriter = executors.ioExecutor().submit(() -> writeInput(running, testCase));
+            Future<?> stdoutReader = executors.ioExecutor().submit(() -> drain(running.getInputStream(), stdout,
+                comparison, () -> {
+                    if (running.isAlive()) {
+                        stoppedOnMismatch.set(true);
+                        running.destroyForcibly();
+                    }
+                }));
+            Future<?> stderrReader = executors.ioExecutor().submit(
+                () -> drain(running.getErrorStream(), stderr, null, null));
             
-            boolean finished = process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            boolean finished = process.waitFor(remainingNanos(deadline), TimeUnit.NANOSECONDS);
             if (!finished) {
                 process.destroyForcibly();
-                return new TestExecutionResult(false, testCase.input, testCase.expectedOutput,
-                    actualOutput, "Таймаут выполнения (превышено " + TIMEOUT_SECONDS + " секунд)");
-            }
-            
-            if (process.exitValue() != 0) {
-                String errorMsg = "Программа завершилась с кодом " + process.exitValue();
-                if (errorOutput.length() > 0) {
-                    errorMsg += "\nОшибка: " + errorOutput.toString();
-                }
-                return new TestExecutionResult(false, testCase.input, testCase.expectedOutput,
-                    actualOutput, errorMsg);
+                process.waitFor(1, TimeUnit.SECONDS);
             }
+            stdinWriter.cancel(true);
             
-            // Нормализуем вывод (убираем лишние пробелы в конце и начале)
-            String normalizedActual = actualOutput.trim().replaceAll("\\r\\n", "\n").replaceAll("\\r", "\n");
-            String normalizedExpected = testCase.expectedOutput.trim().replaceAll("\\r\\n", "\n").replaceAll("\\r", "\n");
-            
-            boolean passed = normalizedActual.equals(normalizedExpected);
+            // Процесс завершен, каналы закрыты - дочитываем остаток вывода
+            long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(OUTPUT_DRAIN_TIMEOUT_MS);
+            awaitOutput(stdoutReader, process.getInputStream(), drainDeadline);
+            awaitOutput(stderrReader, process.getErrorStream(), drainDeadline);
+            String actualOutput = stdout.toText();
+            String errorOutput = stderr.toText();
             
-            String errorMsg = null;
-            if (!passed) {
-                errorMsg = String.format("Ожидалось: '%s', получено: '%s'", 
-                    normalizedExpected.isEmpty() ? "(пусто)" : normalizedExpected,
-                    normalizedActual.isEmpty() ? "(пусто)" : normalizedActual);
+            // Без обертки известно только реальное время
+            ResourceRunner.Usage usage = resourceRunner.readUsage(metricsFile);
+            if (usage == null) {
+                usage = new ResourceRunner.Usage(-1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), -1);
             }
             
-            return new TestExecutionResult(passed, testCase.input, normalizedExpected,
-                normalizedActual, errorMsg);
-            
+            if (control.cancelled.get() && (!finished || process.exitValue() != 0)) {
+                // Процесс был остановлен из-за падения другого теста
+                return skippedResult(testCase);
+            }
+            if (stoppedOnMismatch.get()) {
+                return wrongAnswer(testCase, actualOutput, comparison, true, usage);
+            }
+            return evaluate(testCase, limits, finished, finished ? process.exitValue() : -1, actualOutput, errorOutput,
+                comparison, usage);
+        
         } catch (IOException e) {
-            return new TestExecutionResult(false, testCase.input, testCase.expectedOutput,
+            if (control.cancelled.get()) {
+                return skippedResult(testCase);
+            }
+            return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput,
                 "", "Ошибка выполнения: " + e.getMessage());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            return new TestExecutionResult(false, testCase.input, testCase.expectedOutput,
+            return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput,
                 "", "Выполнение прервано");
+        } finally {
+            if (process != null) {
+                control.processes.remove(process);
+                if (process.isAlive()) {
+                    process.destroyForcibly();
+                }
+            }
+            if (cpuSlot >= 0) {
+                executors.releaseCpuSlot(cpuSlot);
+            }
         }
     }
     
     /**
-     * Парсит тестовые случаи из JSON
+     * Вердикт теста по итогам запуска программы
+     * @param finished программа завершилась до таймаута
      */
-    private List<TestCase> parseTestCases(String testCasesJson) {
-        List<TestCase> testCases = new ArrayList<>();
+    private TestExecutionResult evaluate(TestCase testCase, Limits limits, boolean finished, int exitCode,
+                                         String actualOutput, String errorOutput,
+                                         OutputChecker.Comparison comparison, ResourceRunner.Usage usage) {
+        if (!finished) {
+            return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput,
+                actualOutput, "Таймаут выполнения (превышено " + limits.wallTimeoutMs() + " мс)", true, false, usage);
+        }
+        if (limits.timeLimitMs != null && usage.cpuTimeMs > limits.timeLimitMs) {
+            return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput, actualOutput,
+                String.format("Превышено ограничение времени: %d мс при лимите %d мс", usage.cpuTimeMs, limits.timeLimitMs),
+                true, false, usage);
+        }
+        if (limits.memoryLimitKb != null && usage.memoryKb > limits.memoryLimitKb) {
+            return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput, actualOutput,
+                String.format("Превышено ограничение памяти: %d КБ при лимите %d КБ", usage.memoryKb, limits.memoryLimitKb),
+                false, true, usage);
+        }
         
-        if (testCasesJson == null || testCasesJson.trim().isEmpty()) {
-            log.warn("JSON с тестовыми случаями пуст");
-            return testCases;
+        if (exitCode != 0) {
+            String errorMsg = "Программа завершилась с кодом " + exitCode;
+            if (!errorOutput.isEmpty()) {
+                errorMsg += "\nОшибка: " + errorOutput;
+            }
+            return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput,
+                actualOutput, errorMsg, false, false, usage);
         }
         
+        boolean passed;
+        synchronized (comparison) {
+            passed = comparison.finish();
+        }
+        if (!passed) {
+            return wrongAnswer(testCase, actualOutput, comparison, false, usage);
+        }
+        return new TestExecutionResult(true, testCase.inputPreview(), ExactOutputChecker.normalize(testCase.expectedOutput),
+            ExactOutputChecker.normalize(actualOutput), null, false, false, usage);
+    }
+    
+    /**
+     * Результат с неверным ответом. Ожидаемый вывод в сообщении обрезается, как и полученный
+     * @param stopped программа остановлена на первом расхождении, не дописав вывод
+     */
+    private TestExecutionResult wrongAnswer(TestCase testCase, String actualOutput, OutputChecker.Comparison comparison,
+                                            boolean stopped, ResourceRunner.Usage usage) {
+        String normalizedActual = ExactOutputChecker.normalize(actualOutput);
+        String normalizedExpected = ExactOutputChecker.normalize(testCase.expectedOutput);
+        String mismatch;
+        synchronized (comparison) {
+            mismatch = comparison.mismatch();
+        }
+        String detail = "";
+        if (mismatch != null) {
+            detail += "\n" + mismatch;
+        }
+        if (stopped) {
+            detail += "\nПрограмма остановлена на первом расхождении с ожидаемым выводом";
+        }
+        return new TestExecutionResult(false, testCase.inputPreview(), normalizedExpected, normalizedActual,
+            wrongAnswerMessage(normalizedExpected, normalizedActual, detail), false, false, usage, detail);
+    }
+    
+    /**
+     * Сообщение о неверном ответе по приведенным ожидаемому и полученному выводу
+     */
+    static String wrongAnswerMessage(String normalizedExpected, String normalizedActual, String detail) {
+        String shownExpected = normalizedExpected.length() > MAX_OUTPUT_SIZE
+            ? normalizedExpected.substring(0, MAX_OUTPUT_SIZE) + "... (обрезано)"
+            : normalizedExpected;
+        return String.format("Ожидалось: '%s', получено: '%s'",
+            shownExpected.isEmpty() ? "(пусто)" : shownExpected,
+            normalizedActual.isEmpty() ? "(пусто)" : normalizedActual) + detail;
+    }
+    
+    /**
+     * Запускает тесты через сервер, слинкованный с решением.
+     * Тесты одного решения выполняются по очереди, таймаут и коды возврата те же, что при обычном запуске
+     */
+    private List<TestExecutionResult> runForkedTests(Path executable, List<TestCase> testCases, Limits limits,
+                                                     boolean failFast) {
+        List<TestExecutionResult> results = new ArrayList<>();
+        ForkServer.Session session = null;
+        boolean cancelled = false;
+        // Тесты сервера идут по одному, поэтому он занимает один слот процессора на все время работы
+        int cpuSlot;
         try {
-            JsonNode root = objectMapper.readTree(testCasesJson);
-            JsonNode tests = root.get("tests");
-            
-            if (tests != null && tests.isArray()) {
-                for (JsonNode test : tests) {
-                    String input = test.has("input") ? test.get("input").asText() : "";
-                    String output = test.has("output") ? test.get("output").asText() : "";
-                    testCases.add(new TestCase(input, output));
+            cpuSlot = executors.acquireCpuSlot();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return testCases.stream().map(this::skippedResult).toList();
+        }
+        Path workDir = executable.getParent();
+        List<String> command = resourceRunner.command(executable, workDir.resolve("server_metrics"), null,
+            limits.memoryLimitKb, cpuSlot);
+        try {
+            for (TestCase testCase : testCases) {
+                if (cancelled) {
+                    results.add(skippedResult(testCase));
+                    continue;
                 }
-                log.debug("Распарсено {} тестовых случаев", testCases.size());
-            } else {
-                log.warn("Тестовые случаи не найдены в JSON или не являются массивом");
+                // Упавший или зависший сервер перезапускаем для следующего теста
+                if (session == null || !session.isAlive()) {
+                    if (session != null) {
+                        session.close();
+                    }
+                    session = forkServer.start(command, workDir, executors.ioExecutor());
+                }
+                TestExecutionResult result = runForkedTest(session, workDir, testCase, limits);
+                results.add(result);
+                cancelled = failFast && !result.passed;
             }
-        } catch (Exception e) {
-            log.error("Ошибка парсинга тестовых случаев: " + e.getMessage(), e);
-            log.error("JSON содержимое: " + testCasesJson);
-            // Возвращаем пустой список, если не удалось распарсить
+        } catch (IOException e) {
+            log.error("Не удалось запустить сервер тестов", e);
+            for (int i = results.size(); i < testCases.size(); i++) {
+                TestCase testCase = testCases.get(i);
+                results.add(new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput,
+                    "", "Ошибка выполнения: " + e.getMessage()));
+            }
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+            executors.releaseCpuSlot(cpuSlot);
+        }
+        return results;
+    }
+    
+    private TestExecutionResult runForkedTest(ForkServer.Session session, Path workDir, TestCase testCase,
+                                              Limits limits) {
+        Path stdoutFile = workDir.resolve("stdout");
+        Path stderrFile = workDir.resolve("stderr");
+        ForkServer.Outcome outcome;
+        try {
+            Path input = testCase.inputFile(workDir.resolve("stdin"));
+            outcome = session.run(input, stdoutFile, stderrFile, limits.wallTimeoutMs(),
+                limits.timeLimitMs, limits.memoryLimitKb);
+        } catch (IOException e) {
+            // Сервер упал - следующий тест запустит новый
+            session.close();
+            return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput,
+                "", "Ошибка выполнения: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput,
+                "", "Выполнение прервано");
+        }
+        if (outcome == null) {
+            return new TestExecutionResult(false, testCase.inputPreview(), testCase.expectedOutput,
+                "", "Таймаут выполнения (превышено " + limits.wallTimeoutMs() + " мс)", true);
+        }
+        OutputChecker.Comparison comparison = OutputChecker.of(limits.checker).start(testCase.expectedOutput);
+        String actualOutput = readOutput(stdoutFile, comparison);
+        if (outcome.timedOut && !comparison.accept(new byte[0], 0)) {
+            // При обычном запуске программа была бы остановлена на расхождении до таймаута
+            return wrongAnswer(testCase, actualOutput, comparison, true, outcome.usage);
+        }
+        return evaluate(testCase, limits, !outcome.timedOut, outcome.exitCode,
+            actualOutput, readOutput(stderrFile, null), comparison, outcome.usage);
+    }
+    
+    /**
+     * Читает файл вывода теста, сохраняя не больше MAX_OUTPUT_SIZE байт
+     * @param comparison сравнение с ожидаемым выводом или null
+     */
+    private static String readOutput(Path file, OutputChecker.Comparison comparison) {
+        BoundedOutput output = new BoundedOutput();
+        try (InputStream stream = Files.newInputStream(file)) {
+            drain(stream, output, comparison, null);
+        } catch (IOException e) {
+            log.debug("Не удалось прочитать вывод программы: {}", e.getMessage());
+        }
+        return output.toText();
+    }
+    
+    /**
+     * Передает входные данные программе.
+     * Программа может завершиться, не дочитав ввод, - это не ошибка
+     */
+    private void writeInput(Process process, TestCase testCase) {
+        try (OutputStream stdin = process.getOutputStream();
+             InputStream input = testCase.openInput()) {
+            input.transferTo(stdin);
+        } catch (IOException e) {
+            log.debug("Программа не дочитала входные данные: {}", e.getMessage());
         }
-        
-        return testCases;
     }
     
     /**
-     * Удаляет временные файлы
+     * Читает поток до конца, сохраняя не больше MAX_OUTPUT_SIZE байт.
+     * Остаток вычитывается и отбрасывается, чтобы программа не блокировалась на записи
+     * @param comparison сравнение с ожидаемым выводом или null
+     * @param onMismatch вызывается один раз при первом точном расхождении, может быть null
      */
-    private void cleanup(Path workDir) {
+    private static Void drain(InputStream stream, BoundedOutput output, OutputChecker.Comparison comparison,
+                              Runnable onMismatch) throws IOException {
+        byte[] buffer = new byte[8192];
+        boolean matching = comparison != null;
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            output.append(buffer, read);
+            if (matching) {
+                synchronized (comparison) {
+                    matching = comparison.accept(buffer, read);
+                }
+                if (!matching && onMismatch != null) {
+                    onMismatch.run();
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Ждет окончания чтения вывода завершенного процесса.
+     * Если канал держит открытым порожденный программой процесс, закрываем его принудительно,
+     * уже прочитанный вывод при этом сохраняется
+     */
+    private void awaitOutput(Future<?> reader, InputStream stream, long deadline) throws InterruptedException {
         try {
-            if (Files.exists(workDir)) {
-                Files.walk(workDir)
-                    .sorted((a, b) -> -a.compareTo(b))
-                    .forEach(path -> {
-                        try {
-                            Files.delete(path);
-                        } catch (IOException e) {
-                            log.warn("Не удалось удалить файл: " + path, e);
-                        }
-                    });
+            reader.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            reader.cancel(true);
+            try {
+                stream.close();
+            } catch (IOException closeError) {
+                log.debug("Не удалось закрыть поток вывода: {}", closeError.getMessage());
             }
-        } catch (IOException e) {
-            log.warn("Ошибка при очистке временных файлов", e);
+        } catch (ExecutionException e) {
+            log.debug("Ошибка чтения вывода программы: {}", e.getCause().getMessage());
         }
     }
     
+    private static long remainingNanos(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+    
     // Вспомогательные классы
     private static class CompilationResult {
         final boolean success;
         final String error;
+        final boolean linkFailed; // Исходник скомпилирован, ошибка на этапе линковки
         
         CompilationResult(boolean success, String error) {
+            this(success, error, false);
+        }
+        
+        CompilationResult(boolean success, String error, boolean linkFailed) {
             this.success = success;
             this.error = error;
+            this.linkFailed = linkFailed;
         }
     }
     
-    private static class TestCase {
-        final String input;
-        final String expectedOutput;
+    /**
+     * Вывод программы, ограниченный MAX_OUTPUT_SIZE байтами
+     */
+    private static class BoundedOutput {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private boolean truncated;
         
-        TestCase(String input, String expectedOutput) {
-            this.input = input;
-            this.expectedOutput = expectedOutput;
+        synchronized void append(byte[] buffer, int length) {
+            int room = MAX_OUTPUT_SIZE - bytes.size();
+            if (room < length) {
+                truncated = true;
+            }
+            if (room > 0) {
+                bytes.write(buffer, 0, Math.min(room, length));
+            }
+        }
+        
+        synchronized String toText() {
+            String text = bytes.toString(StandardCharsets.UTF_8);
+            return truncated ? text + "... (обрезано)" : text;
+        }
+    }
+    
+    /**
+     * Общее состояние запуска тестов одного решения, позволяет остановить оставшиеся тесты
+     */
+    private static class RunControl {
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final Set<Process> processes = ConcurrentHashMap.newKeySet();
+        private int active; // Начатые и еще не завершенные тесты
+        private boolean closed;
+        
+        void cancel() {
+            cancelled.set(true);
+            processes.forEach(Process::destroyForcibly);
+        }
+        
+        /**
+         * Отмечает начало теста
+         * @return false, если запуск уже завершен и тест начинать нельзя
+         */
+        synchronized boolean enter() {
+            if (closed) {
+                return false;
+            }
+            active++;
+            return true;
+        }
+        
+        synchronized void exit() {
+            active--;
+            notifyAll();
+        }
+        
+        /**
+         * Ждет завершения начатых тестов; новые после этого не начинаются.
+         * Процессы отмененных тестов уже остановлены, поэтому ожидание короткое и не прерывается
+         */
+        synchronized void awaitIdle() {
+            closed = true;
+            boolean interrupted = false;
+            while (active > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 }
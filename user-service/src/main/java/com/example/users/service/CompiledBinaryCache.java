@@ -0,0 +1,192 @@
+package com.example.users.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Кэш скомпилированных программ.
+ * Ключ - SHA-256 исходного кода и флагов компилятора, вытеснение LRU по суммарному размеру файлов
+ */
+@Component
+public class CompiledBinaryCache {
+    
+    private static final Logger log = LoggerFactory.getLogger(CompiledBinaryCache.class);
+    
+    private final boolean enabled;
+    private final long maxBytes;
+    private Path cacheDir;
+    
+    // Порядок доступа: первый элемент - давно не использованный
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    public CompiledBinaryCache(@Value("${app.judge.binary-cache.enabled:true}") boolean enabled,
+                               @Value("${app.judge.binary-cache.max-bytes:268435456}") long maxBytes,
+                               @Value("${app.judge.binary-cache.dir:}") String dir) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.cacheDir = dir.isBlank()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "code_exec_cache")
+                : Paths.get(dir);
+        if (enabled) {
+            prepareCacheDir();
+        }
+    }
+    
+    /**
+     * Вычисляет ключ кэша для исходного кода и флагов компиляции
+     */
+    public String keyOf(String code, List<String> compilerFlags) {
+        return Sha256.hex(String.join(" ", compilerFlags), code);
+    }
+    
+    /**
+     * Копирует закэшированную программу в рабочую директорию
+     * @return false, если программы нет в кэше
+     */
+    public synchronized boolean copyTo(String key, Path target) {
+        if (!enabled) {
+            return false;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return false;
+        }
+        try {
+            linkOrCopy(entry.path, target);
+            hits++;
+            return true;
+        } catch (NoSuchFileException e) {
+            // Файл удалили снаружи - забываем запись
+            forget(key);
+            misses++;
+            return false;
+        } catch (IOException e) {
+            log.warn("Не удалось взять программу из кэша: {}", e.getMessage());
+            misses++;
+            return false;
+        }
+    }
+    
+    /**
+     * Сохраняет скомпилированную программу в кэш
+     */
+    public void put(String key, Path binary) {
+        if (!enabled) {
+            return;
+        }
+        Path cached = cacheDir.resolve(key);
+        try {
+            // Копируем во временный файл вне блокировки, затем атомарно переносим
+            Path temp = Files.createTempFile(cacheDir, key, ".tmp");
+            Files.copy(binary, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            long size = Files.size(temp);
+            if (size > maxBytes) {
+                Files.deleteIfExists(temp);
+                return;
+            }
+            synchronized (this) {
+                if (entries.containsKey(key)) {
+                    Files.deleteIfExists(temp);
+                    return;
+                }
+                Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                entries.put(key, new Entry(cached, size));
+                totalBytes += size;
+                evictIfNeeded();
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить программу в кэш: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Статистика кэша
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        long lookups = hits + misses;
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        return stats;
+    }
+    
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            totalBytes -= eldest.size;
+            evictions++;
+            try {
+                Files.deleteIfExists(eldest.path);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить файл кэша: {}", eldest.path, e);
+            }
+        }
+    }
+    
+    private void forget(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            totalBytes -= entry.size;
+        }
+    }
+    
+    private void linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            // Жесткая ссылка: вытеснение из кэша не затронет уже выданную программу
+            Files.createLink(target, source);
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+    
+    /**
+     * Кэш пишется в пустую поддиректорию этого процесса: размеры файлов прошлого запуска неизвестны,
+     * а кэш другого работающего процесса трогать нельзя
+     */
+    private void prepareCacheDir() {
+        try {
+            cacheDir = ProcessDirectories.of(cacheDir);
+            log.info("Кэш скомпилированных программ: {}, лимит {} байт", cacheDir, maxBytes);
+        } catch (IOException e) {
+            log.warn("Не удалось подготовить директорию кэша {}", cacheDir, e);
+        }
+    }
+    
+    private static class Entry {
+        final Path path;
+        final long size;
+        
+        Entry(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+}
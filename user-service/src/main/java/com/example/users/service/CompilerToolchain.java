@@ -0,0 +1,291 @@
+package com.example.users.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Компилятор C для проверки решений.
+ * Наличие и версия gcc проверяются один раз при старте, а не на каждое решение.
+ * Для стандартных заголовков, которые решение подключает в начале файла, собираются
+ * предкомпилированные заголовки (.gch) и подключаются через -include: набор заголовков тот же,
+ * поэтому результат компиляции не меняется, а разбор stdio.h и остальных пропускается.
+ * Неподходящий .gch gcc молча игнорирует и разбирает заголовки как обычно
+ */
+@Component
+public class CompilerToolchain {
+    
+    private static final Logger log = LoggerFactory.getLogger(CompilerToolchain.class);
+    private static final String COMPILER = "gcc";
+    private static final List<String> COMPILER_FLAGS = List.of("-std=c11", "-Wall", "-Wextra", "-O2");
+    private static final List<String> QUICK_FLAGS = List.of("-std=c11", "-Wall", "-Wextra", "-O0");
+    private static final long REPROBE_INTERVAL_MS = 60_000; // Повторная проверка, если gcc не найден
+    private static final Pattern INCLUDE = Pattern.compile("#\\s*include\\s*<([a-z0-9_]+\\.h)>\\s*(//.*)?");
+    
+    // Заголовки стандартной библиотеки C11, которые можно предкомпилировать
+    private static final Set<String> STANDARD_HEADERS = Set.of(
+        "assert.h", "complex.h", "ctype.h", "errno.h", "fenv.h", "float.h", "inttypes.h", "iso646.h",
+        "limits.h", "locale.h", "math.h", "setjmp.h", "signal.h", "stdalign.h", "stdarg.h", "stdbool.h",
+        "stddef.h", "stdint.h", "stdio.h", "stdlib.h", "stdnoreturn.h", "string.h", "tgmath.h",
+        "time.h", "uchar.h", "wchar.h", "wctype.h");
+    
+    private final JudgeMetrics metrics;
+    private final boolean pchEnabled;
+    private final int maxPchVariants;
+    private Path pchDir;
+    
+    // Ключ - набор заголовков и флаги; null в результате - собрать не удалось
+    private final Map<String, FutureTask<Path>> pchVariants = new ConcurrentHashMap<>();
+    private volatile String version;
+    private volatile long lastProbe;
+    
+    public CompilerToolchain(JudgeMetrics metrics,
+                             @Value("${app.judge.toolchain.pch.enabled:true}") boolean pchEnabled,
+                             @Value("${app.judge.toolchain.pch.max-variants:32}") int maxPchVariants,
+                             @Value("${app.judge.toolchain.pch.warm:stdio.h,stdlib.h,string.h,math.h}") String warmHeaders,
+                             @Value("${app.judge.toolchain.pch.dir:}") String dir) {
+        this.metrics = metrics;
+        this.pchEnabled = pchEnabled;
+        this.maxPchVariants = maxPchVariants;
+        this.pchDir = dir.isBlank()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "code_exec_pch")
+                : Paths.get(dir);
+        probe();
+        // Версию только что записал probe(); переопределяемый isAvailable() из конструктора не вызываем
+        if (version != null && pchEnabled) {
+            prepareDir();
+            warm(warmHeaders);
+        }
+    }
+    
+    /**
+     * Установлен ли компилятор. Если при старте gcc не нашелся, проверка повторяется не чаще раза в минуту
+     */
+    public boolean isAvailable() {
+        if (version == null && System.currentTimeMillis() - lastProbe > REPROBE_INTERVAL_MS) {
+            probe();
+        }
+        return version != null;
+    }
+    
+    /**
+     * Флаги компиляции решений
+     */
+    public List<String> flags() {
+        return COMPILER_FLAGS;
+    }
+    
+    /**
+     * Флаги быстрой сборки без оптимизаций для первых тестов
+     */
+    public List<String> quickFlags() {
+        return QUICK_FLAGS;
+    }
+    
+    /**
+     * Команда компиляции solution.c в solution в рабочей директории.
+     * Подключает предкомпилированные заголовки, собирая их при первом использовании
+     */
+    public List<String> command(String code, List<String> flags) {
+        List<String> command = new ArrayList<>(List.of(COMPILER, "-o", "solution", "solution.c"));
+        command.addAll(flags);
+        Path header = precompiledHeader(leadingHeaders(code), flags);
+        if (header != null) {
+            command.add("-include");
+            command.add(header.toString());
+        }
+        return command;
+    }
+    
+    /**
+     * Версия компилятора и статистика предкомпилированных заголовков
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("compiler", COMPILER);
+        stats.put("version", version);
+        stats.put("pchEnabled", pchEnabled);
+        stats.put("pchVariants", pchVariants.size());
+        return stats;
+    }
+    
+    /**
+     * Стандартные заголовки, подключенные в начале файла до любого другого кода.
+     * Если до них стоит #define или нестандартный #include, предкомпиляция не используется -
+     * такие строки могут менять содержимое заголовков
+     */
+    static Set<String> leadingHeaders(String code) {
+        Set<String> headers = new TreeSet<>();
+        boolean inComment = false;
+        for (String rawLine : code.split("\n")) {
+            String line = rawLine.trim();
+            if (inComment) {
+                int end = line.indexOf("*/");
+                if (end < 0) {
+                    continue;
+                }
+                inComment = false;
+                line = line.substring(end + 2).trim();
+            }
+            if (line.isEmpty() || line.startsWith("//")) {
+                continue;
+            }
+            if (line.startsWith("/*")) {
+                int end = line.indexOf("*/", 2);
+                if (end < 0) {
+                    inComment = true;
+                    continue;
+                }
+                if (line.substring(end + 2).isBlank()) {
+                    continue;
+                }
+                break;
+            }
+            Matcher matcher = INCLUDE.matcher(line);
+            if (!matcher.matches() || !STANDARD_HEADERS.contains(matcher.group(1))) {
+                break;
+            }
+            headers.add(matcher.group(1));
+        }
+        return headers;
+    }
+    
+    private Path precompiledHeader(Set<String> headers, List<String> flags) {
+        if (!pchEnabled || headers.isEmpty()) {
+            return null;
+        }
+        // Заголовки собираются с теми же флагами, включая -D; объектные файлы для линковки пропускаем
+        List<String> pchFlags = flags.stream()
+                .filter(flag -> flag.startsWith("-"))
+                .collect(Collectors.toList());
+        String key = Sha256.hex(String.join(",", headers), String.join(" ", pchFlags));
+        
+        FutureTask<Path> task = pchVariants.get(key);
+        if (task == null) {
+            if (pchVariants.size() >= maxPchVariants) {
+                return null;
+            }
+            FutureTask<Path> created = new FutureTask<>(() -> buildPch(key, headers, pchFlags));
+            task = pchVariants.putIfAbsent(key, created);
+            if (task == null) {
+                task = created;
+                task.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+    
+    private Path buildPch(String key, Set<String> headers, List<String> flags) {
+        long started = System.nanoTime();
+        try {
+            Path dir = pchDir.resolve(key.substring(0, 16));
+            Files.createDirectories(dir);
+            Path header = dir.resolve("judge_pch.h");
+            String content = headers.stream()
+                    .map(name -> "#include <" + name + ">\n")
+                    .collect(Collectors.joining());
+            Files.writeString(header, content, StandardCharsets.UTF_8);
+            
+            List<String> command = new ArrayList<>(List.of(COMPILER, "-x", "c-header"));
+            command.addAll(flags);
+            command.addAll(List.of("-o", header + ".gch", header.toString()));
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (!process.waitFor(30, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                process.destroyForcibly();
+                log.warn("Не удалось собрать предкомпилированные заголовки {}: {}", headers, output);
+                return null;
+            }
+            log.info("Предкомпилированные заголовки {} с флагами {}: {}", headers, flags, header);
+            return header;
+        } catch (IOException e) {
+            log.warn("Не удалось собрать предкомпилированные заголовки {}: {}", headers, e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            metrics.record("compile.pch", System.nanoTime() - started);
+        }
+    }
+    
+    /**
+     * Собирает заголовки самого частого набора заранее, чтобы первые решения не ждали
+     */
+    private void warm(String warmHeaders) {
+        Set<String> headers = Arrays.stream(warmHeaders.split(","))
+                .map(String::trim)
+                .filter(STANDARD_HEADERS::contains)
+                .collect(Collectors.toCollection(TreeSet::new));
+        precompiledHeader(headers, COMPILER_FLAGS);
+        precompiledHeader(headers, QUICK_FLAGS);
+    }
+    
+    private void probe() {
+        lastProbe = System.currentTimeMillis();
+        try {
+            Process process = new ProcessBuilder(COMPILER, "--version").redirectErrorStream(true).start();
+            String firstLine;
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                firstLine = reader.readLine();
+                while (reader.readLine() != null) {
+                    // Дочитываем вывод, чтобы процесс завершился
+                }
+            }
+            if (process.waitFor(2, TimeUnit.SECONDS) && process.exitValue() == 0) {
+                version = firstLine;
+                log.info("Компилятор: {}", version);
+                return;
+            }
+            process.destroyForcibly();
+        } catch (IOException e) {
+            // GCC не найден
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.error("GCC не найден! Установите GCC для проверки кода.");
+    }
+    
+    /**
+     * Заголовки собираются заново в поддиректории этого процесса: заголовки прошлого запуска могли быть собраны
+     * другой версией компилятора
+     */
+    private void prepareDir() {
+        try {
+            pchDir = ProcessDirectories.of(pchDir);
+        } catch (IOException e) {
+            log.warn("Не удалось подготовить директорию заголовков {}", pchDir, e);
+        }
+    }
+}
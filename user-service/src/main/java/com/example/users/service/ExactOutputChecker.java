@@ -0,0 +1,76 @@
+package com.example.users.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Точное сравнение вывода.
+ * Как и раньше, пробельные символы в начале и конце не учитываются, а \r\n и \r считаются переводом строки
+ */
+class ExactOutputChecker implements OutputChecker {
+    
+    static final ExactOutputChecker INSTANCE = new ExactOutputChecker();
+    
+    @Override
+    public Comparison start(String expectedOutput) {
+        return new ExactComparison(normalize(expectedOutput).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Приводит вывод к виду для сравнения и показа студенту
+     */
+    static String normalize(String output) {
+        return output.trim().replace("\r\n", "\n").replace('\r', '\n');
+    }
+    
+    static boolean isWhitespace(int c) {
+        return c <= ' ';
+    }
+    
+    private static class ExactComparison implements Comparison {
+        private final byte[] expected;
+        private int position;
+        private boolean started; // Пропущены пробельные символы в начале
+        private boolean afterCarriageReturn;
+        private boolean failed;
+        
+        ExactComparison(byte[] expected) {
+            this.expected = expected;
+        }
+        
+        @Override
+        public boolean accept(byte[] buffer, int length) {
+            for (int i = 0; i < length && !failed; i++) {
+                int c = buffer[i] & 0xFF;
+                if (c == '\n' && afterCarriageReturn) {
+                    afterCarriageReturn = false;
+                    continue;
+                }
+                afterCarriageReturn = c == '\r';
+                if (afterCarriageReturn) {
+                    c = '\n';
+                }
+                if (!started && isWhitespace(c)) {
+                    continue;
+                }
+                started = true;
+                if (position < expected.length && (expected[position] & 0xFF) == c) {
+                    position++;
+                } else if (!(position == expected.length && isWhitespace(c))) {
+                    // Пробельные символы после ожидаемого вывода допустимы, все остальное - расхождение
+                    failed = true;
+                }
+            }
+            return !failed;
+        }
+        
+        @Override
+        public boolean finish() {
+            return !failed && position == expected.length;
+        }
+        
+        @Override
+        public String mismatch() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.users.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Запуск тестов через сервер, слинкованный с решением.
+ * При старте компилирует judge/forkserver.c в объектный файл. Решение собирается с -Dmain=judge_solution_main
+ * и этим файлом; полученная программа запускается один раз на решение и порождает fork() на каждый тест,
+ * что убирает затраты на execve и динамическую линковку при сотнях тестов.
+ * Сам сервер запускается через обертку {@link ResourceRunner}, поэтому тесты работают в той же песочнице
+ * (пространства имен, cgroup слота и ядро), что и при обычном запуске
+ */
+@Component
+public class ForkServer {
+    
+    private static final Logger log = LoggerFactory.getLogger(ForkServer.class);
+    private static final String SERVER_SOURCE = "/judge/forkserver.c";
+    private static final long RESPONSE_GRACE_MS = 2000; // Запас на ответ сервера сверх таймаута теста
+    
+    private final Path serverObject;
+    private final int minTests;
+    
+    public ForkServer(@Value("${app.judge.fork-server.enabled:false}") boolean enabled,
+                      @Value("${app.judge.fork-server.min-tests:20}") int minTests) {
+        this.minTests = minTests;
+        this.serverObject = enabled ? build() : null;
+    }
+    
+    /**
+     * Итог запуска теста на сервере
+     */
+    public static class Outcome {
+        public final int exitCode; // При завершении сигналом - 128 + номер сигнала
+        public final boolean timedOut;
+        public final ResourceRunner.Usage usage;
+        
+        Outcome(int exitCode, boolean timedOut, ResourceRunner.Usage usage) {
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.usage = usage;
+        }
+    }
+    
+    /**
+     * Использовать ли сервер для набора тестов: запуск сервера окупается на больших наборах
+     */
+    public boolean shouldUse(int testCount) {
+        return serverObject != null && testCount >= minTests;
+    }
+    
+    /**
+     * Флаги компиляции решения вместе с сервером
+     */
+    public List<String> compilerFlags(List<String> baseFlags) {
+        List<String> flags = new ArrayList<>(baseFlags);
+        flags.add("-Dmain=judge_solution_main");
+        flags.add(serverObject.toString());
+        return flags;
+    }
+    
+    /**
+     * Запускает сервер для собранного решения
+     * @param command команда запуска программы через обертку, см. {@link ResourceRunner#command}
+     */
+    public Session start(List<String> command, Path workDir, ExecutorService ioExecutor) throws IOException {
+        Process process = new ProcessBuilder(command)
+                .directory(workDir.toFile())
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        return new Session(process, ioExecutor);
+    }
+    
+    /**
+     * Запущенный сервер одного решения. Тесты выполняются по одному
+     */
+    public static class Session implements AutoCloseable {
+        private final Process process;
+        private final OutputStream requests;
+        private final BufferedReader responses;
+        private final ExecutorService ioExecutor;
+        private boolean broken;
+        
+        private Session(Process process, ExecutorService ioExecutor) {
+            this.process = process;
+            this.requests = process.getOutputStream();
+            this.responses = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            this.ioExecutor = ioExecutor;
+        }
+        
+        public boolean isAlive() {
+            return !broken && process.isAlive();
+        }
+        
+        /**
+         * Выполняет тест: stdin из файла input, вывод в файлы stdout и stderr
+         * @return null, если сервер не ответил вовремя; сервер при этом останавливается
+         */
+        public Outcome run(Path input, Path stdout, Path stderr, long timeoutMs,
+                           Integer timeLimitMs, Integer memoryLimitKb) throws IOException, InterruptedException {
+            String request = String.join("\t", input.toString(), stdout.toString(), stderr.toString(),
+                    String.valueOf(timeoutMs),
+                    String.valueOf(timeLimitMs != null ? timeLimitMs : 0),
+                    String.valueOf(memoryLimitKb != null ? memoryLimitKb : 0)) + "\n";
+            requests.write(request.getBytes(StandardCharsets.UTF_8));
+            requests.flush();
+            
+            // Таймаут теста соблюдает сервер, здесь ждем с запасом на случай его зависания
+            Future<String> response = ioExecutor.submit(responses::readLine);
+            try {
+                String line = response.get(timeoutMs + RESPONSE_GRACE_MS, TimeUnit.MILLISECONDS);
+                if (line == null) {
+                    broken = true;
+                    return null;
+                }
+                String[] values = line.trim().split("\t");
+                return new Outcome(Integer.parseInt(values[0]), "1".equals(values[1]),
+                        new ResourceRunner.Usage(Long.parseLong(values[2]), Long.parseLong(values[3]),
+                                Long.parseLong(values[4])));
+            } catch (TimeoutException e) {
+                log.warn("Сервер запуска тестов не ответил за {} мс", timeoutMs + RESPONSE_GRACE_MS);
+                response.cancel(true);
+                close();
+                return null;
+            } catch (ExecutionException | RuntimeException e) {
+                log.warn("Некорректный ответ сервера запуска тестов: {}", e.getMessage());
+                close();
+                return null;
+            }
+        }
+        
+        @Override
+        public void close() {
+            broken = true;
+            try {
+                requests.close();
+            } catch (IOException e) {
+                log.debug("Не удалось закрыть канал сервера: {}", e.getMessage());
+            }
+            try {
+                if (!process.waitFor(100, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+        }
+    }
+    
+    private Path build() {
+        try (InputStream source = ForkServer.class.getResourceAsStream(SERVER_SOURCE)) {
+            if (source == null) {
+                log.warn("Исходник сервера {} не найден, тесты запускаются отдельными процессами", SERVER_SOURCE);
+                return null;
+            }
+            Path dir = ProcessDirectories.inTempDir("code_exec_runner");
+            Path sourceFile = dir.resolve("forkserver.c");
+            Files.copy(source, sourceFile, StandardCopyOption.REPLACE_EXISTING);
+            
+            Path object = dir.resolve("forkserver.o");
+            Process process = new ProcessBuilder("gcc", "-O2", "-c", "-o", object.toString(), sourceFile.toString())
+                    .redirectErrorStream(true)
+                    .start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (!process.waitFor(30, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                process.destroyForcibly();
+                log.warn("Не удалось собрать сервер запуска тестов: {}", output);
+                return null;
+            }
+            log.info("Сервер запуска тестов: {}, от {} тестов", object, minTests);
+            return object;
+        } catch (IOException e) {
+            log.warn("Не удалось собрать сервер запуска тестов: {}", e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
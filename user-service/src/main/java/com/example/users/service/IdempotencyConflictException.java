@@ -0,0 +1,15 @@
+package com.example.users.service;
+
+/**
+ * Запрос с тем же ключом идемпотентности или с тем же кодом выполняется одновременно,
+ * и его решение еще не сохранено.
+ * Отдается как 409: клиент может повторить запрос с тем же ключом
+ */
+public class IdempotencyConflictException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
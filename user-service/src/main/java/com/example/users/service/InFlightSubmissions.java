@@ -0,0 +1,126 @@
+package com.example.users.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Решения, которые сейчас создаются или проверяются, по пользователю, задаче и хэшу кода.
+ * Повторная отправка того же кода (двойной клик, повтор запроса клиентом), пока первое решение
+ * не проверено, не создает второе решение и не запускает вторую компиляцию, а получает первое.
+ * Пока первое решение еще не сохранено, повторная отправка получает 409 и повторяет запрос позже
+ */
+@Component
+public class InFlightSubmissions {
+    
+    private static final Logger log = LoggerFactory.getLogger(InFlightSubmissions.class);
+    
+    private final Map<String, CompletableFuture<UUID>> flights = new ConcurrentHashMap<>();
+    private final Map<UUID, String> keysBySubmission = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong attached = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    
+    /**
+     * Участие запроса в отправке решения
+     */
+    public static final class Flight {
+        private final String key;
+        private final CompletableFuture<UUID> future; // null, если запрос не создает решение
+        public final UUID attachedTo; // Решение, созданное таким же запросом, или null
+        
+        private Flight(String key, CompletableFuture<UUID> future, UUID attachedTo) {
+            this.key = key;
+            this.future = future;
+            this.attachedTo = attachedTo;
+        }
+        
+        public boolean isAttached() {
+            return attachedTo != null;
+        }
+    }
+    
+    public static String keyOf(UUID userId, UUID taskId, String codeHash) {
+        return userId + ":" + taskId + ":" + codeHash;
+    }
+    
+    /**
+     * Занимает ключ или присоединяется к решению, уже созданному с этим ключом.
+     * Не ждет: вызывается внутри транзакции отправки, и ожидание держало бы поток запроса и соединение с БД
+     * @throws IdempotencyConflictException если такое же решение еще сохраняется другим запросом
+     */
+    public Flight claim(String key) {
+        while (true) {
+            CompletableFuture<UUID> future = new CompletableFuture<>();
+            CompletableFuture<UUID> existing = flights.putIfAbsent(key, future);
+            if (existing == null) {
+                return new Flight(key, future, null);
+            }
+            if (!existing.isDone()) {
+                conflicts.incrementAndGet();
+                throw new IdempotencyConflictException("The same solution is being submitted, retry later");
+            }
+            if (!existing.isCompletedExceptionally()) {
+                UUID submissionId = existing.join();
+                attached.incrementAndGet();
+                log.debug("Повторная отправка присоединена к решению {}", submissionId);
+                return new Flight(key, null, submissionId);
+            }
+            // Первое решение не сохранилось, занимаем ключ заново
+            flights.remove(key, existing);
+        }
+    }
+    
+    /**
+     * Решение сохранено: повторные запросы получат его, пока оно не проверено
+     */
+    public void started(Flight flight, UUID submissionId) {
+        if (flight.future == null) {
+            return;
+        }
+        keysBySubmission.put(submissionId, flight.key);
+        started.incrementAndGet();
+        flight.future.complete(submissionId);
+    }
+    
+    /**
+     * Решение не сохранено (ошибка или откат транзакции): ждущие запросы займут ключ сами
+     */
+    public void abandon(Flight flight) {
+        if (flight.future == null) {
+            return;
+        }
+        if (flight.future.completeExceptionally(new IllegalStateException("Submission was not saved"))) {
+            flights.remove(flight.key, flight.future);
+        }
+    }
+    
+    /**
+     * Решение проверено: следующая отправка того же кода создаст новое решение
+     */
+    public void finished(UUID submissionId) {
+        String key = keysBySubmission.remove(submissionId);
+        if (key != null) {
+            flights.computeIfPresent(key, (k, future) -> submissionId.equals(future.getNow(null)) ? null : future);
+        }
+    }
+    
+    /**
+     * Статистика дедупликации
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", flights.size());
+        stats.put("started", started.get());
+        stats.put("attached", attached.get());
+        stats.put("conflicts", conflicts.get());
+        return stats;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.users.service;
+
+import com.example.users.dto.AdmissionSettingsRequest;
+import com.example.users.model.User;
+import com.example.users.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Допуск решений в очередь проверки.
+ * По оценке ожидания в очереди решение принимается как обычно, принимается с упрощенной проверкой
+ * (до первого непройденного теста) или отклоняется с кодом 429 и временем, через которое стоит повторить.
+ * При проверке отдельными воркерами ожидание оценивается по таблицам judge_jobs и judge_workers.
+ * Пороги меняются на лету через API без перезапуска
+ */
+@Component
+public class JudgeAdmission {
+    
+    private static final Logger log = LoggerFactory.getLogger(JudgeAdmission.class);
+    
+    /**
+     * Решение о допуске
+     */
+    public enum Decision {
+        ACCEPT,
+        DEGRADE // Проверка до первого непройденного теста
+    }
+    
+    private final JudgeQueueService judgeQueueService;
+    private final JudgeJobStore judgeJobStore;
+    private final UserRepository userRepository;
+    private final boolean distributed;
+    private final long deadAfterSeconds;
+    private volatile boolean enabled;
+    private volatile long degradeWaitMs;
+    private volatile long rejectWaitMs;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong degraded = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    
+    public JudgeAdmission(JudgeQueueService judgeQueueService, JudgeJobStore judgeJobStore,
+                          UserRepository userRepository,
+                          @Value("${app.judge.admission.enabled:true}") boolean enabled,
+                          @Value("${app.judge.admission.degrade-wait-ms:30000}") long degradeWaitMs,
+                          @Value("${app.judge.admission.reject-wait-ms:120000}") long rejectWaitMs,
+                          @Value("${app.judge.distributed:false}") boolean distributed,
+                          @Value("${app.judge.worker.dead-after-seconds:30}") long deadAfterSeconds) {
+        this.judgeQueueService = judgeQueueService;
+        this.judgeJobStore = judgeJobStore;
+        this.userRepository = userRepository;
+        this.distributed = distributed;
+        this.deadAfterSeconds = deadAfterSeconds;
+        this.enabled = enabled;
+        this.degradeWaitMs = degradeWaitMs;
+        this.rejectWaitMs = rejectWaitMs;
+    }
+    
+    /**
+     * Решает, принять ли решение пользователя
+     * @throws JudgeOverloadedException если ожидание превышает порог отклонения
+     */
+    public Decision admit(UUID userId) {
+        if (!enabled) {
+            accepted.incrementAndGet();
+            return Decision.ACCEPT;
+        }
+        long waitMs = estimateWaitMs(userId.toString());
+        if (waitMs > rejectWaitMs) {
+            rejected.incrementAndGet();
+            // Очередь разбирается со скоростью реального времени: повторить стоит, когда ожидание опустится до порога
+            long retryAfterSeconds = Math.max(1, (waitMs - rejectWaitMs + 999) / 1000);
+            log.warn("Решение пользователя {} отклонено: ожидание {} мс, повтор через {} с",
+                    userId, waitMs, retryAfterSeconds);
+            throw new JudgeOverloadedException(
+                    "Проверка перегружена, отправьте решение через " + retryAfterSeconds + " с", retryAfterSeconds);
+        }
+        if (waitMs > degradeWaitMs) {
+            degraded.incrementAndGet();
+            log.debug("Решение пользователя {} принято с упрощенной проверкой: ожидание {} мс", userId, waitMs);
+            return Decision.DEGRADE;
+        }
+        accepted.incrementAndGet();
+        return Decision.ACCEPT;
+    }
+    
+    /**
+     * Меняет пороги; незаданные поля не меняются
+     */
+    public Map<String, Object> updateSettings(AdmissionSettingsRequest request, UUID currentUserId) {
+        User currentUser = userRepository.findById(currentUserId)
+                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+        if (!currentUser.canWriteUsers()) {
+            throw new SecurityException("You don't have permission to change judge admission settings");
+        }
+        long degrade = request.getDegradeWaitMs() != null ? request.getDegradeWaitMs() : degradeWaitMs;
+        long reject = request.getRejectWaitMs() != null ? request.getRejectWaitMs() : rejectWaitMs;
+        if (degrade < 0 || reject < 0) {
+            throw new IllegalArgumentException("Admission thresholds must not be negative");
+        }
+        synchronized (this) {
+            if (request.getEnabled() != null) {
+                enabled = request.getEnabled();
+            }
+            degradeWaitMs = degrade;
+            rejectWaitMs = reject;
+        }
+        log.info("Пороги допуска изменены: включен={}, упрощение={} мс, отклонение={} мс",
+                enabled, degradeWaitMs, rejectWaitMs);
+        return getSettings();
+    }
+    
+    /**
+     * Текущие пороги, оценка ожидания и счетчики решений
+     */
+    public Map<String, Object> getSettings() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("enabled", enabled);
+        settings.put("degradeWaitMs", degradeWaitMs);
+        settings.put("rejectWaitMs", rejectWaitMs);
+        settings.put("distributed", distributed);
+        settings.put("averageJobMs", judgeQueueService.getAverageJobMs());
+        settings.put("estimatedWaitMs", estimateWaitMs(""));
+        settings.put("accepted", accepted.get());
+        settings.put("degraded", degraded.get());
+        settings.put("rejected", rejected.get());
+        return settings;
+    }
+    
+    /**
+     * Оценка ожидания нового решения владельца owner.
+     * Воркеры забирают задания judge_jobs по порядку постановки, поэтому в распределенном режиме впереди стоят
+     * все ожидающие задания, а разбирают их слоты живых воркеров со средним временем проверки, которое
+     * воркеры сообщают в heartbeat
+     */
+    private long estimateWaitMs(String owner) {
+        if (!distributed) {
+            return judgeQueueService.estimateWaitMs(owner, JudgeQueueService.Priority.SUBMISSION);
+        }
+        JudgeJobStore.Backlog backlog;
+        try {
+            backlog = judgeJobStore.backlog(deadAfterSeconds);
+        } catch (DataAccessException e) {
+            // Без оценки решение принимается: очередь в БД все равно его сохранит
+            log.warn("Не удалось оценить очередь judge_jobs: {}", e.getMessage());
+            return 0;
+        }
+        // Пока живых воркеров нет, очередь не разбирается; оцениваем как для одного слота
+        int slots = Math.max(backlog.slots, 1);
+        long averageJobMs = backlog.averageJobMs != null ? backlog.averageJobMs : judgeQueueService.getAverageJobMs();
+        // Воркеры освобождаются не сразу: если все заняты, ждем еще одну проверку
+        long rounds = (backlog.queued + (backlog.running >= slots ? slots : 0)) / slots;
+        return rounds * averageJobMs;
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.users.service;
+
+import com.example.users.model.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Калибровка скорости проверяющей машины и лимиты времени по эталонному решению.
+ * При старте несколько раз запускает judge/calibrate.c через обертку и запоминает медиану
+ * процессорного времени - оценку машины (чем больше, тем машина медленнее).
+ * Лимит времени задачи выводится из времени эталонного решения и хранится вместе с оценкой машины,
+ * на которой эталон измерен; при проверке лимит пересчитывается под оценку текущей машины.
+ * Лимиты, заданные вручную, не пересчитываются
+ */
+@Component
+public class JudgeCalibration {
+    
+    private static final Logger log = LoggerFactory.getLogger(JudgeCalibration.class);
+    private static final String BENCHMARK_SOURCE = "/judge/calibrate.c";
+    private static final int TIME_LIMIT_STEP_MS = 10; // Лимиты округляются вверх до шага
+    
+    private final ResourceRunner resourceRunner;
+    private final JudgeExecutors executors;
+    private final double multiplier;
+    private final int minTimeLimitMs;
+    private final Integer calibrationMs; // null, если калибровка не удалась
+    
+    public JudgeCalibration(ResourceRunner resourceRunner, JudgeExecutors executors,
+                            @Value("${app.judge.calibration.enabled:true}") boolean enabled,
+                            @Value("${app.judge.calibration.runs:3}") int runs,
+                            @Value("${app.judge.reference.multiplier:3.0}") double multiplier,
+                            @Value("${app.judge.reference.min-time-limit-ms:200}") int minTimeLimitMs) {
+        this.resourceRunner = resourceRunner;
+        this.executors = executors;
+        this.multiplier = multiplier;
+        this.minTimeLimitMs = minTimeLimitMs;
+        this.calibrationMs = enabled ? calibrate(Math.max(runs, 1)) : null;
+    }
+    
+    /**
+     * Оценка машины, мс процессорного времени калибровочной программы, или null
+     */
+    public Integer getCalibrationMs() {
+        return calibrationMs;
+    }
+    
+    /**
+     * Лимит времени с запасом multiplier над временем эталонного решения на этой машине
+     */
+    public int deriveTimeLimitMs(long referenceTimeMs) {
+        return roundUp(Math.max(referenceTimeMs * multiplier, minTimeLimitMs));
+    }
+    
+    /**
+     * Лимит времени задачи для текущей машины.
+     * Выведенный из эталона лимит масштабируется отношением оценок текущей машины и машины,
+     * на которой измерен эталон; ручной лимит возвращается как есть
+     */
+    public Integer timeLimitOf(Task task) {
+        Integer timeLimitMs = task.getTimeLimitMs();
+        Integer recordedMs = task.getCalibrationMs();
+        if (timeLimitMs == null || recordedMs == null || recordedMs <= 0 || calibrationMs == null) {
+            return timeLimitMs;
+        }
+        return roundUp(Math.max(timeLimitMs * (double) calibrationMs / recordedMs, minTimeLimitMs));
+    }
+    
+    /**
+     * Оценка машины и параметры вывода лимитов
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("calibrationMs", calibrationMs);
+        stats.put("referenceMultiplier", multiplier);
+        stats.put("minTimeLimitMs", minTimeLimitMs);
+        return stats;
+    }
+    
+    private static int roundUp(double timeLimitMs) {
+        return (int) Math.ceil(timeLimitMs / TIME_LIMIT_STEP_MS) * TIME_LIMIT_STEP_MS;
+    }
+    
+    private Integer calibrate(int runs) {
+        Path benchmark = build();
+        if (benchmark == null) {
+            return null;
+        }
+        List<Long> times = new ArrayList<>();
+        try {
+            for (int run = 0; run < runs; run++) {
+                long timeMs = runOnce(benchmark);
+                if (timeMs < 0) {
+                    return null;
+                }
+                times.add(timeMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        // Медиана отбрасывает запуск, которому помешала посторонняя нагрузка
+        Collections.sort(times);
+        int result = (int) Math.max(times.get(times.size() / 2), 1);
+        log.info("Калибровка проверяющей машины: {} мс (запуски {})", result, times);
+        return result;
+    }
+    
+    /**
+     * Процессорное время одного запуска в слоте процессора или -1 при ошибке
+     */
+    private long runOnce(Path benchmark) throws InterruptedException {
+        Path metricsFile = benchmark.resolveSibling("calibrate_metrics");
+        int cpuSlot = executors.acquireCpuSlot();
+        try {
+            long started = System.nanoTime();
+            Process process = new ProcessBuilder(resourceRunner.command(benchmark, metricsFile, null, null, cpuSlot))
+                    .redirectErrorStream(true)
+                    .start();
+            process.getInputStream().readAllBytes();
+            if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                process.destroyForcibly();
+                log.warn("Калибровочная программа завершилась с ошибкой, лимиты времени не масштабируются");
+                return -1;
+            }
+            ResourceRunner.Usage usage = resourceRunner.readUsage(metricsFile);
+            // Без обертки процессорное время неизвестно, берется реальное
+            return usage != null ? usage.cpuTimeMs : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        } catch (IOException e) {
+            log.warn("Не удалось запустить калибровочную программу: {}", e.getMessage());
+            return -1;
+        } finally {
+            executors.releaseCpuSlot(cpuSlot);
+            try {
+                Files.deleteIfExists(metricsFile);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+    
+    private Path build() {
+        try (InputStream source = JudgeCalibration.class.getResourceAsStream(BENCHMARK_SOURCE)) {
+            if (source == null) {
+                log.warn("Исходник калибровки {} не найден, лимиты времени не масштабируются", BENCHMARK_SOURCE);
+                return null;
+            }
+            Path dir = ProcessDirectories.inTempDir("code_exec_calibrate");
+            Path sourceFile = dir.resolve("calibrate.c");
+            Files.copy(source, sourceFile, StandardCopyOption.REPLACE_EXISTING);
+            
+            Path binary = dir.resolve("calibrate");
+            Process process = new ProcessBuilder("gcc", "-O2", "-o", binary.toString(), sourceFile.toString())
+                    .redirectErrorStream(true)
+                    .start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (!process.waitFor(30, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                process.destroyForcibly();
+                log.warn("Не удалось собрать калибровочную программу, лимиты времени не масштабируются: {}", output);
+                return null;
+            }
+            return binary;
+        } catch (IOException e) {
+            log.warn("Не удалось собрать калибровочную программу, лимиты времени не масштабируются: {}", e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
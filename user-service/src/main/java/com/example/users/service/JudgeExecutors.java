@@ -0,0 +1,106 @@
+package com.example.users.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Потоки для проверки решений.
+ * Проверка в основном ждет дочерние процессы и каналы, поэтому каждое решение, каждый тест
+ * и каждый канал ввода-вывода обслуживается своим виртуальным потоком.
+ * Реальная нагрузка на процессор ограничивается отдельно - числом слотов по количеству ядер.
+ * Слоты пронумерованы, чтобы программу в слоте можно было закрепить за своим ядром и cgroup
+ */
+@Component
+public class JudgeExecutors {
+    
+    private static final Logger log = LoggerFactory.getLogger(JudgeExecutors.class);
+    
+    private final ExecutorService judgeExecutor;
+    private final ExecutorService ioExecutor;
+    private final Semaphore cpuSlots;
+    private final ConcurrentLinkedDeque<Integer> freeSlots = new ConcurrentLinkedDeque<>();
+    private final int cpuSlotCount;
+    
+    public JudgeExecutors(@Value("${app.judge.cpu-slots:0}") int cpuSlots) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.cpuSlotCount = cpuSlots > 0 ? cpuSlots : cores;
+        this.cpuSlots = new Semaphore(cpuSlotCount, true);
+        for (int slot = 0; slot < cpuSlotCount; slot++) {
+            freeSlots.addLast(slot);
+        }
+        this.judgeExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("judge-", 0).factory());
+        this.ioExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("judge-io-", 0).factory());
+        log.info("Проверка решений на виртуальных потоках, слотов процессора: {}", cpuSlotCount);
+    }
+    
+    /**
+     * Исполнитель для проверки решений и запуска отдельных тестов
+     */
+    public ExecutorService judgeExecutor() {
+        return judgeExecutor;
+    }
+    
+    /**
+     * Исполнитель для записи ввода и чтения вывода дочерних процессов
+     */
+    public ExecutorService ioExecutor() {
+        return ioExecutor;
+    }
+    
+    /**
+     * Занимает слот процессора на время работы компилятора или программы
+     * @return номер слота от 0 до {@link #getCpuSlotCount()} - 1
+     */
+    public int acquireCpuSlot() throws InterruptedException {
+        cpuSlots.acquire();
+        // Разрешений семафора столько же, сколько номеров, поэтому номер всегда есть
+        return freeSlots.pollFirst();
+    }
+    
+    public void releaseCpuSlot(int slot) {
+        // Последний освободившийся слот выдается первым: его ядро еще держит кэши
+        freeSlots.addFirst(slot);
+        cpuSlots.release();
+    }
+    
+    /**
+     * Число слотов процессора
+     */
+    public int getCpuSlotCount() {
+        return cpuSlotCount;
+    }
+    
+    /**
+     * Число занятых слотов процессора
+     */
+    public int getBusyCpuSlots() {
+        return cpuSlotCount - cpuSlots.availablePermits();
+    }
+    
+    /**
+     * Статистика слотов процессора
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cpuSlots", cpuSlotCount);
+        stats.put("busy", getBusyCpuSlots());
+        stats.put("waiting", cpuSlots.getQueueLength());
+        return stats;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        judgeExecutor.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.users.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Очередь проверки в таблице judge_jobs для отдельных процессов judge-worker.
+ * Воркеры забирают задания через FOR UPDATE SKIP LOCKED и не мешают друг другу, поэтому
+ * производительность проверки растет запуском новых воркеров на той же БД.
+ * Все сроки считаются по часам БД, чтобы расхождение часов машин не влияло на возврат заданий
+ */
+@Component
+public class JudgeJobStore {
+    
+    private static final Logger log = LoggerFactory.getLogger(JudgeJobStore.class);
+    private static final String QUEUED = "QUEUED";
+    private static final String RUNNING = "RUNNING";
+    private static final String ENQUEUE_SQL = "INSERT INTO judge_jobs (submission_id, degraded, status) "
+            + "VALUES (?, ?, '" + QUEUED + "') ON CONFLICT (submission_id) DO NOTHING";
+    private static final String CLAIM_SQL = "UPDATE judge_jobs j SET status = '" + RUNNING + "', worker_id = ?, "
+            + "attempts = j.attempts + 1, claimed_at = now() FROM submissions s "
+            + "WHERE s.id = j.submission_id AND j.submission_id IN ("
+            + "SELECT submission_id FROM judge_jobs WHERE status = '" + QUEUED + "' "
+            + "ORDER BY created_at LIMIT ? FOR UPDATE SKIP LOCKED) "
+            + "RETURNING j.submission_id, j.degraded, j.attempts, s.user_id";
+    private static final String COMPLETE_SQL = "DELETE FROM judge_jobs WHERE submission_id = ? AND worker_id = ? "
+            + "AND status = '" + RUNNING + "'";
+    private static final String HEARTBEAT_SQL = "INSERT INTO judge_workers (worker_id, host, slots, average_job_ms) "
+            + "VALUES (?, ?, ?, ?) ON CONFLICT (worker_id) DO UPDATE SET heartbeat_at = now(), slots = EXCLUDED.slots, "
+            + "average_job_ms = EXCLUDED.average_job_ms";
+    private static final String RELEASE_SQL = "UPDATE judge_jobs SET status = '" + QUEUED + "', worker_id = NULL "
+            + "WHERE worker_id = ? AND status = '" + RUNNING + "'";
+    private static final String RELEASE_JOB_SQL = RELEASE_SQL + " AND submission_id = ?";
+    private static final String UNREGISTER_SQL = "DELETE FROM judge_workers WHERE worker_id = ?";
+    // Воркер мертв, если его строки нет или heartbeat старше срока
+    private static final String DEAD_WORKER = "NOT EXISTS (SELECT 1 FROM judge_workers w "
+            + "WHERE w.worker_id = j.worker_id AND w.heartbeat_at > now() - ? * INTERVAL '1 second')";
+    private static final String FAIL_EXHAUSTED_SQL = "WITH dead AS (DELETE FROM judge_jobs j "
+            + "WHERE j.status = '" + RUNNING + "' AND j.attempts >= ? AND " + DEAD_WORKER + " "
+            + "RETURNING j.submission_id) "
+            + "UPDATE submissions SET status = 'ERROR', error_message = ?, updated_at = now() "
+            + "WHERE id IN (SELECT submission_id FROM dead) AND status = 'PENDING'";
+    private static final String REQUEUE_DEAD_SQL = "UPDATE judge_jobs j SET status = '" + QUEUED + "', worker_id = NULL "
+            + "WHERE j.status = '" + RUNNING + "' AND " + DEAD_WORKER;
+    private static final String FORGET_DEAD_WORKERS_SQL = "DELETE FROM judge_workers "
+            + "WHERE heartbeat_at <= now() - ? * INTERVAL '1 second'";
+    private static final String COUNT_SQL = "SELECT status, COUNT(*) AS jobs FROM judge_jobs GROUP BY status";
+    private static final String WORKERS_SQL = "SELECT worker_id, host, slots, average_job_ms, "
+            + "EXTRACT(EPOCH FROM now() - heartbeat_at) AS heartbeat_age FROM judge_workers ORDER BY started_at";
+    // Среднее время проверки по живым воркерам взвешивается числом их слотов
+    private static final String BACKLOG_SQL = "SELECT "
+            + "(SELECT COUNT(*) FROM judge_jobs WHERE status = '" + QUEUED + "') AS queued, "
+            + "(SELECT COUNT(*) FROM judge_jobs WHERE status = '" + RUNNING + "') AS running, "
+            + "COALESCE(SUM(slots), 0) AS slots, "
+            + "SUM(slots * average_job_ms) / NULLIF(SUM(CASE WHEN average_job_ms IS NOT NULL THEN slots END), 0) "
+            + "AS average_job_ms "
+            + "FROM judge_workers WHERE heartbeat_at > now() - ? * INTERVAL '1 second'";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public JudgeJobStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+    
+    /**
+     * Задание, взятое воркером
+     */
+    public static class ClaimedJob {
+        public final UUID submissionId;
+        public final UUID userId;
+        public final boolean degraded;
+        public final int attempt;
+        
+        public ClaimedJob(UUID submissionId, UUID userId, boolean degraded, int attempt) {
+            this.submissionId = submissionId;
+            this.userId = userId;
+            this.degraded = degraded;
+            this.attempt = attempt;
+        }
+    }
+    
+    /**
+     * Ставит решение в очередь в текущей транзакции; повторная постановка ничего не меняет
+     * @param degraded проверить до первого непройденного теста
+     */
+    public void enqueue(UUID submissionId, boolean degraded) {
+        jdbcTemplate.update(ENQUEUE_SQL, submissionId, degraded);
+    }
+    
+    /**
+     * Забирает до limit самых старых заданий, не занятых другими воркерами
+     */
+    public List<ClaimedJob> claim(String workerId, int limit) {
+        return jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> new ClaimedJob(
+                rs.getObject("submission_id", UUID.class), rs.getObject("user_id", UUID.class),
+                rs.getBoolean("degraded"), rs.getInt("attempts")),
+                workerId, limit);
+    }
+    
+    /**
+     * Возвращает в очередь задание, которое воркер не смог начать
+     */
+    public void release(UUID submissionId, String workerId) {
+        jdbcTemplate.update(RELEASE_JOB_SQL, workerId, submissionId);
+    }
+    
+    /**
+     * Удаляет выполненное задание в текущей транзакции
+     * @return false, если задание уже вернули в очередь или отдали другому воркеру
+     */
+    public boolean complete(UUID submissionId, String workerId) {
+        return jdbcTemplate.update(COMPLETE_SQL, submissionId, workerId) > 0;
+    }
+    
+    /**
+     * Очередь и мощность живых воркеров для оценки ожидания
+     */
+    public static class Backlog {
+        public final long queued;
+        public final long running;
+        public final int slots;
+        public final Long averageJobMs; // null, если воркеры еще не сообщили время проверки
+        
+        public Backlog(long queued, long running, int slots, Long averageJobMs) {
+            this.queued = queued;
+            this.running = running;
+            this.slots = slots;
+            this.averageJobMs = averageJobMs;
+        }
+    }
+    
+    /**
+     * Отмечает, что воркер жив, и сообщает его среднее время проверки решения
+     */
+    public void heartbeat(String workerId, String host, int slots, long averageJobMs) {
+        jdbcTemplate.update(HEARTBEAT_SQL, workerId, host, slots, averageJobMs);
+    }
+    
+    /**
+     * Ожидающие и выполняемые задания и слоты воркеров, отмечавшихся за последние liveAfterSeconds
+     */
+    public Backlog backlog(long liveAfterSeconds) {
+        return jdbcTemplate.queryForObject(BACKLOG_SQL, (rs, rowNum) -> {
+            long averageJobMs = rs.getLong("average_job_ms");
+            return new Backlog(rs.getLong("queued"), rs.getLong("running"), rs.getInt("slots"),
+                    rs.wasNull() ? null : averageJobMs);
+        }, liveAfterSeconds);
+    }
+    
+    /**
+     * Возвращает задания остановленного воркера в очередь и удаляет его из списка живых
+     */
+    public void unregister(String workerId) {
+        int released = jdbcTemplate.update(RELEASE_SQL, workerId);
+        jdbcTemplate.update(UNREGISTER_SQL, workerId);
+        log.info("Воркер {} остановлен, возвращено в очередь заданий: {}", workerId, released);
+    }
+    
+    /**
+     * Возвращает в очередь задания воркеров без heartbeat дольше deadAfterSeconds.
+     * Решения, на которых воркеры падали maxAttempts раз, получают статус ERROR: скорее всего
+     * проверка такого решения и убивает воркер
+     */
+    public void reapDeadWorkers(long deadAfterSeconds, int maxAttempts) {
+        int failed = jdbcTemplate.update(FAIL_EXHAUSTED_SQL, maxAttempts, deadAfterSeconds,
+                "Проверка прервалась " + maxAttempts + " раз, обратитесь к преподавателю");
+        int requeued = jdbcTemplate.update(REQUEUE_DEAD_SQL, deadAfterSeconds);
+        int forgotten = jdbcTemplate.update(FORGET_DEAD_WORKERS_SQL, deadAfterSeconds);
+        if (failed > 0 || requeued > 0 || forgotten > 0) {
+            log.warn("Воркеры без heartbeat: {}, возвращено в очередь заданий: {}, решений с ошибкой: {}",
+                    forgotten, requeued, failed);
+        }
+    }
+    
+    /**
+     * Задания по статусам и живые воркеры
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", 0L);
+        stats.put("running", 0L);
+        jdbcTemplate.query(COUNT_SQL, rs -> {
+            stats.put(rs.getString("status").toLowerCase(), rs.getLong("jobs"));
+        });
+        stats.put("workers", jdbcTemplate.query(WORKERS_SQL, (rs, rowNum) -> {
+            Map<String, Object> worker = new LinkedHashMap<>();
+            worker.put("id", rs.getString("worker_id"));
+            worker.put("host", rs.getString("host"));
+            worker.put("slots", rs.getInt("slots"));
+            long averageJobMs = rs.getLong("average_job_ms");
+            worker.put("averageJobMs", rs.wasNull() ? null : averageJobMs);
+            worker.put("heartbeatAgeSeconds", rs.getLong("heartbeat_age"));
+            return worker;
+        }));
+        return stats;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.users.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Время этапов проверки решений: ожидание слота, сборка заголовков, компиляция, тесты
+ */
+@Component
+public class JudgeMetrics {
+    
+    private final Map<String, Phase> phases = new ConcurrentHashMap<>();
+    
+    /**
+     * Учитывает длительность этапа
+     */
+    public void record(String phase, long nanos) {
+        phases.computeIfAbsent(phase, name -> new Phase()).add(nanos);
+    }
+    
+    /**
+     * Количество, суммарное, среднее и максимальное время по каждому этапу
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        phases.forEach((name, phase) -> stats.put(name, phase.toStats()));
+        return stats;
+    }
+    
+    private static class Phase {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        
+        void add(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+        
+        Map<String, Object> toStats() {
+            long calls = count.sum();
+            long total = totalNanos.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", calls);
+            stats.put("totalMs", TimeUnit.NANOSECONDS.toMillis(total));
+            stats.put("avgMs", calls > 0 ? total / calls / 1_000_000.0 : 0.0);
+            stats.put("maxMs", TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.users.service;
+
+/**
+ * Проверка перегружена, решение не принято.
+ * Отдается как 429 с заголовком Retry-After
+ */
+public class JudgeOverloadedException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final long retryAfterSeconds;
+    
+    public JudgeOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
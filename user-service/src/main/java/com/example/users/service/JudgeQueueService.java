@@ -0,0 +1,270 @@
+package com.example.users.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Очередь проверки решений с честным разделением воркеров.
+ * Решения ждут в очередях по владельцам (пользователям) внутри классов приоритета и выдаются
+ * воркерам по кругу: пользователь, отправивший сотню решений, получает воркер не чаще остальных.
+ * Классы (решения студентов и перепроверки преподавателей) делят воркеры по весам.
+ * Одновременно проверяется не больше workers решений, каждое - в своем виртуальном потоке,
+ * а нагрузку на процессор отдельно ограничивают слоты {@link JudgeExecutors}
+ */
+@Service
+public class JudgeQueueService {
+    
+    private static final Logger log = LoggerFactory.getLogger(JudgeQueueService.class);
+    private static final long STRIDE = 1L << 20;
+    private static final double INITIAL_JOB_MS = 1000; // Оценка до первых проверок
+    private static final double JOB_TIME_SMOOTHING = 0.2; // Вес последней проверки в скользящем среднем
+    
+    /**
+     * Класс приоритета проверки
+     */
+    public enum Priority {
+        SUBMISSION, // Решения студентов
+        REJUDGE     // Перепроверка задачи преподавателем
+    }
+    
+    private final JudgeExecutors executors;
+    private final int workers;
+    private final int queueCapacity;
+    private final Map<Priority, ClassQueue> queues = new EnumMap<>(Priority.class);
+    private int queued;
+    private int active;
+    private long virtualTime; // Проход последнего выбранного класса
+    private double averageJobMs = INITIAL_JOB_MS; // Экспоненциальное среднее времени проверки решения
+    
+    public JudgeQueueService(JudgeExecutors executors,
+                             @Value("${app.judge.workers:4}") int workers,
+                             @Value("${app.judge.queue-capacity:5000}") int queueCapacity,
+                             @Value("${app.judge.scheduler.submission-weight:3}") int submissionWeight,
+                             @Value("${app.judge.scheduler.rejudge-weight:1}") int rejudgeWeight) {
+        this.executors = executors;
+        this.workers = Math.max(workers, 1);
+        this.queueCapacity = queueCapacity;
+        queues.put(Priority.SUBMISSION, new ClassQueue(Math.max(submissionWeight, 1)));
+        queues.put(Priority.REJUDGE, new ClassQueue(Math.max(rejudgeWeight, 1)));
+        log.info("Очередь проверки: воркеров={}, емкость={}, веса решений/перепроверок={}/{}",
+                workers, queueCapacity, submissionWeight, rejudgeWeight);
+    }
+    
+    /**
+     * Ставит проверку в очередь владельца
+     * @param owner пользователь или перепроверка, между которыми воркеры делятся по кругу
+     * @return false, если очередь переполнена
+     */
+    public boolean enqueue(UUID id, String owner, Priority priority, Runnable job) {
+        synchronized (this) {
+            if (queued + active >= queueCapacity) {
+                log.warn("Очередь проверки переполнена, проверка {} отклонена", id);
+                return false;
+            }
+            ClassQueue queue = queues.get(priority);
+            if (queue.size == 0) {
+                // Класс, долго не имевший работы, не получает накопленного преимущества
+                queue.pass = Math.max(queue.pass, virtualTime);
+            }
+            queue.add(owner, new Job(id, priority, job));
+            queued++;
+        }
+        log.debug("Проверка {} ({}, {}) поставлена в очередь, в очереди: {}", id, priority, owner, getQueueDepth());
+        dispatch();
+        return true;
+    }
+    
+    /**
+     * Запускает ожидающие проверки на свободных воркерах
+     */
+    private void dispatch() {
+        List<Job> started = new ArrayList<>();
+        synchronized (this) {
+            while (active < workers) {
+                ClassQueue queue = nextClass();
+                if (queue == null) {
+                    break;
+                }
+                started.add(queue.poll());
+                queued--;
+                active++;
+            }
+        }
+        for (Job job : started) {
+            try {
+                executors.judgeExecutor().execute(() -> run(job));
+            } catch (RejectedExecutionException e) {
+                // Приложение останавливается
+                synchronized (this) {
+                    active--;
+                }
+                log.warn("Проверка остановлена, {} не проверено", job.id);
+            }
+        }
+    }
+    
+    /**
+     * Непустой класс с наименьшим проходом: за каждую выдачу проход растет обратно весу класса
+     */
+    private ClassQueue nextClass() {
+        ClassQueue next = null;
+        for (ClassQueue queue : queues.values()) {
+            if (queue.size > 0 && (next == null || queue.pass < next.pass)) {
+                next = queue;
+            }
+        }
+        if (next != null) {
+            virtualTime = next.pass;
+            next.pass += STRIDE / next.weight;
+        }
+        return next;
+    }
+    
+    private void run(Job job) {
+        long started = System.nanoTime();
+        try {
+            job.task.run();
+        } catch (Exception e) {
+            log.error("Ошибка при проверке {}", job.id, e);
+        } finally {
+            double elapsedMs = (System.nanoTime() - started) / 1_000_000.0;
+            synchronized (this) {
+                active--;
+                if (job.priority == Priority.SUBMISSION) {
+                    averageJobMs += JOB_TIME_SMOOTHING * (elapsedMs - averageJobMs);
+                }
+            }
+            dispatch();
+        }
+    }
+    
+    /**
+     * Оценка ожидания новой проверки владельца до начала проверки.
+     * При обходе по кругу раньше нее выдадут проверки других владельцев, но от каждого
+     * не больше, чем у этого владельца уже стоит в очереди, плюс одну.
+     * Время одной проверки - скользящее среднее по последним решениям (компиляция и тесты)
+     */
+    public synchronized long estimateWaitMs(String owner, Priority priority) {
+        ClassQueue queue = queues.get(priority);
+        ArrayDeque<Job> own = queue.byOwner.get(owner);
+        int ownQueued = own != null ? own.size() : 0;
+        long ahead = ownQueued;
+        for (Map.Entry<String, ArrayDeque<Job>> entry : queue.byOwner.entrySet()) {
+            if (!entry.getKey().equals(owner)) {
+                ahead += Math.min(entry.getValue().size(), ownQueued + 1);
+            }
+        }
+        // Воркеры освобождаются не сразу: если все заняты, ждем еще одну проверку
+        long rounds = (ahead + (active >= workers ? workers : 0)) / workers;
+        double share = 1.0;
+        for (ClassQueue other : queues.values()) {
+            if (other != queue && other.size > 0) {
+                share += (double) other.weight / queue.weight;
+            }
+        }
+        return Math.round(rounds * averageJobMs * share);
+    }
+    
+    /**
+     * Скользящее среднее времени проверки решения, мс
+     */
+    public synchronized long getAverageJobMs() {
+        return Math.round(averageJobMs);
+    }
+    
+    /**
+     * Количество проверок, ожидающих воркера
+     */
+    public synchronized int getQueueDepth() {
+        return queued;
+    }
+    
+    /**
+     * Количество решений, проверяемых прямо сейчас
+     */
+    public synchronized int getActiveCount() {
+        return active;
+    }
+    
+    /**
+     * Очереди по классам приоритета: ожидающие проверки, владельцы в очереди и выданные воркерам проверки
+     */
+    public synchronized Map<String, Object> getClassStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Map.Entry<Priority, ClassQueue> entry : queues.entrySet()) {
+            ClassQueue queue = entry.getValue();
+            Map<String, Object> classStats = new LinkedHashMap<>();
+            classStats.put("depth", queue.size);
+            classStats.put("owners", queue.owners.size());
+            classStats.put("weight", queue.weight);
+            classStats.put("dispatched", queue.dispatched);
+            stats.put(entry.getKey().name().toLowerCase(), classStats);
+        }
+        return stats;
+    }
+    
+    private static class Job {
+        final UUID id;
+        final Priority priority;
+        final Runnable task;
+        
+        Job(UUID id, Priority priority, Runnable task) {
+            this.id = id;
+            this.priority = priority;
+            this.task = task;
+        }
+    }
+    
+    /**
+     * Очереди владельцев одного класса, обходимые по кругу
+     */
+    private static class ClassQueue {
+        final int weight;
+        final Map<String, ArrayDeque<Job>> byOwner = new HashMap<>();
+        final ArrayDeque<String> owners = new ArrayDeque<>();
+        int size;
+        long pass;
+        long dispatched;
+        
+        ClassQueue(int weight) {
+            this.weight = weight;
+        }
+        
+        void add(String owner, Job job) {
+            ArrayDeque<Job> jobs = byOwner.get(owner);
+            if (jobs == null) {
+                jobs = new ArrayDeque<>();
+                byOwner.put(owner, jobs);
+                owners.addLast(owner);
+            }
+            jobs.addLast(job);
+            size++;
+        }
+        
+        Job poll() {
+            String owner = owners.pollFirst();
+            ArrayDeque<Job> jobs = byOwner.get(owner);
+            Job job = jobs.pollFirst();
+            if (jobs.isEmpty()) {
+                byOwner.remove(owner);
+            } else {
+                owners.addLast(owner);
+            }
+            size--;
+            dispatched++;
+            return job;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.users.service;
+
+/**
+ * Проверка вывода программы.
+ * Вывод сравнивается с ожидаемым по мере поступления, без сборки всего вывода в строку,
+ * поэтому программу можно остановить на первом точном расхождении
+ */
+public interface OutputChecker {
+    
+    /**
+     * Начинает сравнение вывода одного запуска
+     */
+    Comparison start(String expectedOutput);
+    
+    /**
+     * Сравнение вывода одного запуска, не потокобезопасно
+     */
+    interface Comparison {
+        
+        /**
+         * Принимает очередную порцию вывода
+         * @return false, если вывод уже точно не совпадет с ожидаемым
+         */
+        boolean accept(byte[] buffer, int length);
+        
+        /**
+         * Завершает сравнение после конца вывода
+         * @return true, если вывод совпал с ожидаемым
+         */
+        boolean finish();
+        
+        /**
+         * Описание расхождения для сообщения студенту или null
+         */
+        String mismatch();
+    }
+    
+    /**
+     * Проверка по названию: exact (по умолчанию), tokens, float или float:точность
+     * @throws IllegalArgumentException для неизвестной проверки
+     */
+    static OutputChecker of(String spec) {
+        if (spec == null || spec.isBlank() || "exact".equals(spec)) {
+            return ExactOutputChecker.INSTANCE;
+        }
+        if ("tokens".equals(spec)) {
+            return new TokenOutputChecker(0);
+        }
+        if ("float".equals(spec)) {
+            return new TokenOutputChecker(TokenOutputChecker.DEFAULT_EPSILON);
+        }
+        if (spec.startsWith("float:")) {
+            try {
+                double epsilon = Double.parseDouble(spec.substring("float:".length()));
+                if (epsilon > 0 && epsilon < 1) {
+                    return new TokenOutputChecker(epsilon);
+                }
+            } catch (NumberFormatException e) {
+                // Сообщение ниже
+            }
+        }
+        throw new IllegalArgumentException("Unknown checker: " + spec);
+    }
+}
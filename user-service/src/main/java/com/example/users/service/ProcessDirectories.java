@@ -0,0 +1,141 @@
+package com.example.users.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Директории процесса внутри общих корней (рабочие директории, кэши, собранные обертки).
+ * На одной машине может работать несколько процессов проверки - user-service и judge-worker, - поэтому каждый
+ * получает в корне свою поддиректорию pid_суффикс и до завершения держит блокировку ее файла .lock.
+ * При старте удаляются только чужие поддиректории, блокировку которых удалось взять, то есть оставшиеся
+ * от завершившихся процессов. Блокировка снимается системой и при аварийном завершении
+ */
+public final class ProcessDirectories {
+    
+    private static final Logger log = LoggerFactory.getLogger(ProcessDirectories.class);
+    private static final String LOCK_FILE = ".lock";
+    private static final Pattern PROCESS_DIR = Pattern.compile("\\d+_[0-9a-f]{8}");
+    // pid не уникален между контейнерами с общим /tmp, поэтому добавляется случайный суффикс
+    private static final String PROCESS_ID = ProcessHandle.current().pid() + "_"
+            + UUID.randomUUID().toString().substring(0, 8);
+    
+    private static final Map<Path, Path> directories = new ConcurrentHashMap<>();
+    private static final Map<Path, FileLock> locks = new ConcurrentHashMap<>(); // Держатся до завершения процесса
+    
+    private ProcessDirectories() {
+    }
+    
+    /**
+     * Поддиректория этого процесса во временной директории системы: java.io.tmpdir/name/pid_суффикс
+     */
+    public static Path inTempDir(String name) throws IOException {
+        return of(Paths.get(System.getProperty("java.io.tmpdir"), name));
+    }
+    
+    /**
+     * Поддиректория этого процесса в корне root; при первом обращении создается,
+     * а поддиректории завершившихся процессов удаляются
+     */
+    public static Path of(Path root) throws IOException {
+        Path normalized = root.toAbsolutePath().normalize();
+        Path existing = directories.get(normalized);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (ProcessDirectories.class) {
+            existing = directories.get(normalized);
+            if (existing != null) {
+                return existing;
+            }
+            Files.createDirectories(normalized);
+            removeStale(normalized);
+            Path dir = create(normalized);
+            directories.put(normalized, dir);
+            return dir;
+        }
+    }
+    
+    /**
+     * Создает поддиректорию под временным именем, берет блокировку и только затем переименовывает:
+     * под именем pid_суффикс директория всегда заблокирована и не будет удалена другим процессом
+     */
+    private static Path create(Path root) throws IOException {
+        Path pending = root.resolve(PROCESS_ID + ".new");
+        Files.createDirectories(pending);
+        FileChannel channel = FileChannel.open(pending.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = channel.tryLock();
+        if (lock == null) {
+            channel.close();
+            throw new IOException("Directory is locked by another process: " + pending);
+        }
+        Path dir = root.resolve(PROCESS_ID);
+        Files.move(pending, dir);
+        locks.put(dir, lock);
+        return dir;
+    }
+    
+    private static void removeStale(Path root) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(root)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.equals(PROCESS_ID) || !PROCESS_DIR.matcher(name).matches() || !Files.isDirectory(entry)) {
+                    continue;
+                }
+                if (isAbandoned(entry)) {
+                    log.info("Удаление директории завершившегося процесса: {}", entry);
+                    deleteRecursively(entry);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Блокировку директории никто не держит
+     */
+    private static boolean isAbandoned(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return false;
+            }
+            lock.release();
+            return true;
+        } catch (OverlappingFileLockException e) {
+            return false; // Блокировку держит этот же процесс
+        } catch (IOException e) {
+            log.debug("Не удалось проверить блокировку {}: {}", dir, e.getMessage());
+            return false;
+        }
+    }
+    
+    private static void deleteRecursively(Path path) {
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить файл: {}", file);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Ошибка при удалении директории {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.users.service;
+
+import com.example.users.dto.RejudgeResponse;
+import com.example.users.model.Submission;
+import com.example.users.model.Task;
+import com.example.users.model.User;
+import com.example.users.repository.SubmissionRepository;
+import com.example.users.repository.TaskRepository;
+import com.example.users.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Перепроверка всех решений задачи, например после исправления тестов.
+ * Решения читаются страницами, одинаковый код проверяется один раз,
+ * а результаты записываются в БД пакетами. Опыт при перепроверке не начисляется и не списывается
+ */
+@Service
+public class RejudgeService {
+    
+    private static final Logger log = LoggerFactory.getLogger(RejudgeService.class);
+    private static final int PAGE_SIZE = 500;
+    private static final String UPDATE_SQL = "UPDATE submissions SET status = ?, tests_passed = ?, tests_total = ?, "
+            + "error_message = ?, test_results = ?, code_hash = ?, test_cases_hash = ?, reusable_verdict = ?, "
+            + "max_cpu_time_ms = ?, max_wall_time_ms = ?, max_memory_kb = ?, "
+            + "updated_at = ? WHERE id = ? AND status <> 'PENDING'";
+    
+    private final SubmissionRepository submissionRepository;
+    private final TaskRepository taskRepository;
+    private final UserRepository userRepository;
+    private final SubmissionService submissionService;
+    private final CodeBlobStore codeBlobStore;
+    private final JudgeExecutors executors;
+    private final JudgeQueueService judgeQueueService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int parallelism;
+    private final int batchSize;
+    
+    // Последняя перепроверка каждой задачи
+    private final Map<UUID, RejudgeJob> jobs = new ConcurrentHashMap<>();
+    
+    public RejudgeService(SubmissionRepository submissionRepository, TaskRepository taskRepository,
+                          UserRepository userRepository, SubmissionService submissionService,
+                          CodeBlobStore codeBlobStore, JudgeExecutors executors,
+                          JudgeQueueService judgeQueueService, JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${app.judge.rejudge.parallelism:2}") int parallelism,
+                          @Value("${app.judge.rejudge.batch-size:100}") int batchSize) {
+        this.submissionRepository = submissionRepository;
+        this.taskRepository = taskRepository;
+        this.userRepository = userRepository;
+        this.submissionService = submissionService;
+        this.codeBlobStore = codeBlobStore;
+        this.executors = executors;
+        this.judgeQueueService = judgeQueueService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.parallelism = Math.max(parallelism, 1);
+        this.batchSize = Math.max(batchSize, 1);
+    }
+    
+    /**
+     * Запускает перепроверку решений задачи.
+     * Если перепроверка этой задачи уже идет, возвращает ее прогресс
+     */
+    public RejudgeResponse startRejudge(UUID taskId, UUID currentUserId) {
+        Task task = taskRepository.findById(taskId)
+                .orElseThrow(() -> new IllegalArgumentException("Task not found with id: " + taskId));
+        
+        // Проверка прав
+        if (!task.getCreatedBy().getId().equals(currentUserId)) {
+            User currentUser = userRepository.findById(currentUserId)
+                    .orElseThrow(() -> new IllegalArgumentException("User not found"));
+            if (!currentUser.canWriteUsers()) {
+                throw new SecurityException("You don't have permission to rejudge this task");
+            }
+        }
+        
+        RejudgeJob job = jobs.compute(taskId, (id, existing) ->
+                existing != null && existing.isRunning() ? existing : new RejudgeJob(taskId));
+        if (job.started.compareAndSet(false, true)) {
+            log.info("Запуск перепроверки решений задачи {}", taskId);
+            executors.judgeExecutor().execute(() -> run(job));
+        }
+        return job.toResponse();
+    }
+    
+    /**
+     * Прогресс последней перепроверки задачи
+     */
+    public RejudgeResponse getRejudgeStatus(UUID taskId) {
+        RejudgeJob job = jobs.get(taskId);
+        if (job == null) {
+            throw new IllegalArgumentException("Rejudge not found for task: " + taskId);
+        }
+        return job.toResponse();
+    }
+    
+    private void run(RejudgeJob job) {
+        try {
+            Task task = transactionTemplate.execute(status -> taskRepository.findById(job.taskId).orElse(null));
+            if (task == null || task.getTestCases() == null) {
+                job.fail("Тесты задачи не найдены");
+                return;
+            }
+            String testCases = task.getTestCases();
+            CodeExecutionService.Limits limits = submissionService.limitsOf(task);
+            String testCasesHash = VerdictCache.testsHashOf(testCases, limits);
+            
+            Map<String, SourceGroup> groups = collectSources(job);
+            job.distinctSources.set(groups.size());
+            log.info("Перепроверка задачи {}: решений {}, различных исходников {}",
+                    job.taskId, job.totalSubmissions.get(), groups.size());
+            
+            // Каждый исходник проверяется один раз, одновременно в очереди не больше parallelism исходников.
+            // Исходники идут через общую очередь классом перепроверок и не вытесняют решения студентов
+            BatchWriter writer = new BatchWriter(job);
+            Semaphore slots = new Semaphore(parallelism);
+            List<Future<?>> futures = new ArrayList<>();
+            for (Map.Entry<String, SourceGroup> entry : groups.entrySet()) {
+                slots.acquire();
+                CompletableFuture<Void> judged = new CompletableFuture<>();
+                boolean accepted = judgeQueueService.enqueue(entry.getValue().representativeId,
+                        "rejudge:" + job.taskId, JudgeQueueService.Priority.REJUDGE, () -> {
+                            try {
+                                judgeGroup(entry.getKey(), entry.getValue(), testCases, limits, testCasesHash, writer);
+                                judged.complete(null);
+                            } catch (RuntimeException e) {
+                                judged.completeExceptionally(e);
+                            } finally {
+                                slots.release();
+                            }
+                        });
+                if (!accepted) {
+                    slots.release();
+                    judged.completeExceptionally(new IllegalStateException("очередь проверки переполнена"));
+                }
+                futures.add(judged);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            writer.flush();
+            
+            job.finish();
+            log.info("Перепроверка задачи {} завершена: обновлено {} решений",
+                    job.taskId, job.updatedSubmissions.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Перепроверка прервана");
+        } catch (ExecutionException e) {
+            log.error("Ошибка при перепроверке задачи {}", job.taskId, e.getCause());
+            job.fail("Ошибка перепроверки: " + e.getCause().getMessage());
+        } catch (Exception e) {
+            log.error("Ошибка при перепроверке задачи {}", job.taskId, e);
+            job.fail("Ошибка перепроверки: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Читает решения задачи страницами и группирует их по хэшу кода.
+     * В памяти остаются только идентификаторы, код загружается заново перед проверкой
+     */
+    private Map<String, SourceGroup> collectSources(RejudgeJob job) {
+        Map<String, SourceGroup> groups = new LinkedHashMap<>();
+        int page = 0;
+        boolean hasNext;
+        do {
+            PageRequest pageRequest = PageRequest.of(page++, PAGE_SIZE, Sort.by("createdAt", "id"));
+            hasNext = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                Task task = taskRepository.getReferenceById(job.taskId);
+                Slice<Submission> slice = submissionRepository.findByTask(task, pageRequest);
+                for (Submission submission : slice) {
+                    // Ожидающие решения проверит очередь, уже на новых тестах
+                    if (submission.getStatus() == Submission.Status.PENDING) {
+                        continue;
+                    }
+                    groups.computeIfAbsent(submission.getCodeHash(), hash -> new SourceGroup(submission.getId()))
+                            .submissionIds.add(submission.getId());
+                    job.totalSubmissions.incrementAndGet();
+                }
+                return slice.hasNext();
+            }));
+        } while (hasNext);
+        return groups;
+    }
+    
+    private void judgeGroup(String codeHash, SourceGroup group, String testCases, CodeExecutionService.Limits limits,
+                            String testCasesHash, BatchWriter writer) {
+        String code = transactionTemplate.execute(status -> submissionRepository.findById(group.representativeId)
+                .map(codeBlobStore::codeOf)
+                .orElse(null));
+        if (code == null) {
+            writer.job.judgedSources.incrementAndGet();
+            return;
+        }
+        
+        SubmissionService.TestResult result =
+                submissionService.judgeSource(code, codeHash, testCases, limits, testCasesHash);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (UUID submissionId : group.submissionIds) {
+            writer.add(new Object[] {
+                    result.status.name(), result.testsPassed, result.testsTotal, result.errorMessage,
+                    result.testResultsJson, codeHash, testCasesHash, result.reusable,
+                    result.maxCpuTimeMs, result.maxWallTimeMs, result.maxMemoryKb, now, submissionId
+            });
+        }
+        writer.job.judgedSources.incrementAndGet();
+    }
+    
+    /**
+     * Накопитель обновлений: пишет результаты в БД пакетами по batchSize строк
+     */
+    private class BatchWriter {
+        final RejudgeJob job;
+        private final List<Object[]> rows = new ArrayList<>();
+        
+        BatchWriter(RejudgeJob job) {
+            this.job = job;
+        }
+        
+        void add(Object[] row) {
+            List<Object[]> batch = null;
+            synchronized (this) {
+                rows.add(row);
+                if (rows.size() >= batchSize) {
+                    batch = new ArrayList<>(rows);
+                    rows.clear();
+                }
+            }
+            if (batch != null) {
+                write(batch);
+            }
+        }
+        
+        void flush() {
+            List<Object[]> batch;
+            synchronized (this) {
+                batch = new ArrayList<>(rows);
+                rows.clear();
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        }
+        
+        private void write(List<Object[]> batch) {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPDATE_SQL, batch));
+            job.updatedSubmissions.addAndGet(batch.size());
+        }
+    }
+    
+    private static class SourceGroup {
+        final UUID representativeId;
+        final List<UUID> submissionIds = new ArrayList<>();
+        
+        SourceGroup(UUID representativeId) {
+            this.representativeId = representativeId;
+        }
+    }
+    
+    private static class RejudgeJob {
+        final UUID id = UUID.randomUUID();
+        final UUID taskId;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final AtomicBoolean started = new AtomicBoolean();
+        final AtomicInteger totalSubmissions = new AtomicInteger();
+        final AtomicInteger distinctSources = new AtomicInteger();
+        final AtomicInteger judgedSources = new AtomicInteger();
+        final AtomicInteger updatedSubmissions = new AtomicInteger();
+        volatile String status = "RUNNING";
+        volatile String errorMessage;
+        volatile LocalDateTime finishedAt;
+        
+        RejudgeJob(UUID taskId) {
+            this.taskId = taskId;
+        }
+        
+        boolean isRunning() {
+            return "RUNNING".equals(status);
+        }
+        
+        void finish() {
+            finishedAt = LocalDateTime.now();
+            status = "COMPLETED";
+        }
+        
+        void fail(String message) {
+            errorMessage = message;
+            finishedAt = LocalDateTime.now();
+            status = "FAILED";
+        }
+        
+        RejudgeResponse toResponse() {
+            RejudgeResponse response = new RejudgeResponse();
+            response.setId(id);
+            response.setTaskId(taskId);
+            response.setStatus(status);
+            response.setTotalSubmissions(totalSubmissions.get());
+            response.setDistinctSources(distinctSources.get());
+            response.setJudgedSources(judgedSources.get());
+            response.setUpdatedSubmissions(updatedSubmissions.get());
+            response.setErrorMessage(errorMessage);
+            response.setStartedAt(startedAt);
+            response.setFinishedAt(finishedAt);
+            return response;
+        }
+    }
+}
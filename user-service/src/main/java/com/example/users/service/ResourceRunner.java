@@ -0,0 +1,410 @@
+package com.example.users.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Обертка для запуска решений с учетом ресурсов.
+ * При старте компилирует judge/runner.c, который устанавливает лимиты процесса
+ * и после завершения программы записывает процессорное время, реальное время и пиковую память (wait4).
+ * Если обертку собрать не удалось, программы запускаются напрямую без учета ресурсов.
+ * <p>
+ * На Linux обертка дополнительно изолирует программу: новые пространства имен user, pid, mount и network
+ * (без прав root, если ядро разрешает непривилегированные user namespaces), отдельная cgroup v2
+ * на каждый слот процессора с лимитами CPU, памяти и числа процессов и закрепление слота за своим ядром.
+ * Каждая часть включается, только если проверка при старте прошла, иначе пишется предупреждение.
+ * Несколько процессов проверки на одной машине получают разные cgroup (в имени pid) и разные ядра
+ */
+@Component
+public class ResourceRunner {
+    
+    private static final Logger log = LoggerFactory.getLogger(ResourceRunner.class);
+    private static final String RUNNER_SOURCE = "/judge/runner.c";
+    private static final Path CGROUP_MOUNT = Paths.get("/sys/fs/cgroup");
+    private static final String SLOT_CGROUP_PREFIX = "judge-slot-";
+    private static final Pattern SLOT_CGROUP = Pattern.compile(SLOT_CGROUP_PREFIX + "(\\d+)-\\d+");
+    private static final String CPU_LOCKS_DIR = "code_exec_cpus"; // Общая для всех процессов машины
+    // Запас памяти cgroup сверх лимита задачи на загрузчик, библиотеки и кэш страниц
+    private static final long CGROUP_MEMORY_RESERVE_KB = 65536;
+    
+    private final Path runner;
+    private final boolean namespaces;
+    private final List<Path> slotCgroups; // null, если cgroup не используются
+    private final List<Integer> slotCpus; // null, если слоты не закрепляются за ядрами
+    private final long pidsMax;
+    private final long memoryMaxKb;
+    private final List<FileLock> cpuLocks = new ArrayList<>(); // Ядра, занятые этим процессом
+    
+    public ResourceRunner(JudgeExecutors executors,
+                          @Value("${app.judge.runner.enabled:true}") boolean enabled,
+                          @Value("${app.judge.sandbox.enabled:true}") boolean sandboxEnabled,
+                          @Value("${app.judge.sandbox.cgroup-root:none}") String cgroupRoot,
+                          @Value("${app.judge.sandbox.pids-max:64}") long pidsMax,
+                          @Value("${app.judge.sandbox.memory-max-kb:1048576}") long memoryMaxKb,
+                          @Value("${app.judge.sandbox.pin-cpus:true}") boolean pinCpus) {
+        this.runner = enabled ? build() : null;
+        this.pidsMax = pidsMax;
+        this.memoryMaxKb = memoryMaxKb;
+        boolean sandbox = runner != null && sandboxEnabled && isLinux();
+        this.namespaces = sandbox && probeNamespaces();
+        this.slotCgroups = sandbox ? setupCgroups(cgroupRoot, executors.getCpuSlotCount()) : null;
+        this.slotCpus = sandbox && pinCpus ? assignCpus(executors.getCpuSlotCount()) : null;
+        if (sandbox) {
+            log.info("Песочница решений: пространства имен {}, cgroup {}, закрепление за ядрами {}",
+                    namespaces ? "включены" : "выключены",
+                    slotCgroups != null ? slotCgroups.get(0).getParent() : "выключены",
+                    slotCpus != null ? slotCpus : "выключено");
+        }
+    }
+    
+    /**
+     * Затраченные программой ресурсы
+     */
+    public static class Usage {
+        public final long cpuTimeMs;
+        public final long wallTimeMs;
+        public final long memoryKb;
+        
+        public Usage(long cpuTimeMs, long wallTimeMs, long memoryKb) {
+            this.cpuTimeMs = cpuTimeMs;
+            this.wallTimeMs = wallTimeMs;
+            this.memoryKb = memoryKb;
+        }
+    }
+    
+    /**
+     * Команда запуска программы через обертку
+     * @param timeLimitMs лимит процессорного времени или null
+     * @param memoryLimitKb лимит памяти или null
+     * @param cpuSlot занятый программой слот процессора из {@link JudgeExecutors#acquireCpuSlot()}
+     */
+    public List<String> command(Path executable, Path metricsFile, Integer timeLimitMs, Integer memoryLimitKb,
+                                int cpuSlot) {
+        List<String> command = new ArrayList<>();
+        if (runner != null) {
+            command.add(runner.toString());
+            if (namespaces) {
+                command.add("-n");
+            }
+            if (slotCgroups != null && cpuSlot >= 0 && cpuSlot < slotCgroups.size()) {
+                long cgroupMemoryKb = memoryLimitKb != null && memoryLimitKb > 0
+                        ? memoryLimitKb + CGROUP_MEMORY_RESERVE_KB : memoryMaxKb;
+                command.add("-g");
+                command.add(slotCgroups.get(cpuSlot).toString());
+                command.add("-m");
+                command.add(String.valueOf(cgroupMemoryKb));
+                command.add("-p");
+                command.add(String.valueOf(pidsMax));
+            }
+            if (slotCpus != null && cpuSlot >= 0 && cpuSlot < slotCpus.size()) {
+                command.add("-a");
+                command.add(String.valueOf(slotCpus.get(cpuSlot)));
+            }
+            command.add(metricsFile.toString());
+            command.add(String.valueOf(timeLimitMs != null ? timeLimitMs : 0));
+            command.add(String.valueOf(memoryLimitKb != null ? memoryLimitKb : 0));
+        }
+        command.add(executable.toString());
+        return command;
+    }
+    
+    /**
+     * Читает ресурсы, записанные оберткой
+     * @return null, если обертка не использовалась или была остановлена раньше программы
+     */
+    public Usage readUsage(Path metricsFile) {
+        if (runner == null || !Files.exists(metricsFile)) {
+            return null;
+        }
+        try {
+            String[] values = Files.readString(metricsFile, StandardCharsets.UTF_8).trim().split("\\s+");
+            return new Usage(Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось прочитать ресурсы программы: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    private Path build() {
+        try (InputStream source = ResourceRunner.class.getResourceAsStream(RUNNER_SOURCE)) {
+            if (source == null) {
+                log.warn("Исходник обертки {} не найден, ресурсы решений не учитываются", RUNNER_SOURCE);
+                return null;
+            }
+            Path dir = ProcessDirectories.inTempDir("code_exec_runner");
+            Path sourceFile = dir.resolve("runner.c");
+            Files.copy(source, sourceFile, StandardCopyOption.REPLACE_EXISTING);
+            
+            Path binary = dir.resolve("runner");
+            Process process = new ProcessBuilder("gcc", "-O2", "-o", binary.toString(), sourceFile.toString())
+                    .redirectErrorStream(true)
+                    .start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (!process.waitFor(30, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                process.destroyForcibly();
+                log.warn("Не удалось собрать обертку для запуска решений, ресурсы не учитываются: {}", output);
+                return null;
+            }
+            log.info("Обертка для запуска решений: {}", binary);
+            return binary;
+        } catch (IOException e) {
+            log.warn("Не удалось собрать обертку для запуска решений, ресурсы не учитываются: {}", e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+    
+    private static boolean isLinux() {
+        return System.getProperty("os.name", "").toLowerCase().contains("linux");
+    }
+    
+    /**
+     * Запускает /bin/true в пространствах имен: ядро может запрещать их без root
+     * (kernel.unprivileged_userns_clone, AppArmor), тогда программы запускаются без них
+     */
+    private boolean probeNamespaces() {
+        Path metrics = runner.resolveSibling("probe_metrics");
+        try {
+            Process process = new ProcessBuilder(runner.toString(), "-n", metrics.toString(), "0", "0", "/bin/true")
+                    .redirectErrorStream(true)
+                    .start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (!process.waitFor(10, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                process.destroyForcibly();
+                log.warn("Пространства имен недоступны, решения запускаются без изоляции: {}", output.trim());
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Пространства имен недоступны, решения запускаются без изоляции: {}", e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(metrics);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+    
+    /**
+     * Удаляет cgroup слотов этого процесса
+     */
+    @PreDestroy
+    public void close() {
+        if (slotCgroups != null) {
+            for (Path cgroup : slotCgroups) {
+                try {
+                    Files.deleteIfExists(cgroup);
+                } catch (IOException e) {
+                    log.debug("Не удалось удалить cgroup {}: {}", cgroup, e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Создает по cgroup на слот процессора.
+     * Корень должен быть делегирован пользователю сервиса (например, Delegate=yes в unit systemd),
+     * в нем создаются judge-slot-PID-N; в имени pid процесса, чтобы процессы с общим корнем не делили cgroup.
+     * С auto корнем служит cgroup самого сервиса: процессы в cgroup v2 могут находиться только в листьях,
+     * поэтому сервис переносится в дочернюю cgroup service и меняет cgroup.subtree_control своей cgroup.
+     * Это допустимо, только если cgroup целиком отдана сервису, поэтому auto включается явно
+     * @param root каталог cgroup, auto - cgroup самого сервиса, пусто или none - без cgroup
+     * @return каталоги cgroup по номеру слота или null
+     */
+    private List<Path> setupCgroups(String root, int slots) {
+        if (root == null || root.isBlank() || root.equalsIgnoreCase("none")) {
+            return null;
+        }
+        try {
+            Path own = ownCgroup();
+            Path dir = root.equalsIgnoreCase("auto") ? own : Paths.get(root);
+            if (dir == null || !Files.isWritable(dir.resolve("cgroup.subtree_control"))) {
+                log.warn("cgroup {} не делегирована сервису, лимиты cgroup не используются", dir != null ? dir : root);
+                return null;
+            }
+            Set<String> available = new HashSet<>(List.of(
+                    Files.readString(dir.resolve("cgroup.controllers"), StandardCharsets.UTF_8).trim().split("\\s+")));
+            if (!available.contains("memory")) {
+                log.warn("В cgroup {} нет контроллера memory, лимиты cgroup не используются", dir);
+                return null;
+            }
+            if (dir.equals(own)) {
+                Path service = dir.resolve("service");
+                Files.createDirectories(service);
+                Files.writeString(service.resolve("cgroup.procs"), String.valueOf(ProcessHandle.current().pid()));
+            }
+            for (String controller : List.of("cpu", "memory", "pids")) {
+                if (available.contains(controller)) {
+                    Files.writeString(dir.resolve("cgroup.subtree_control"), "+" + controller);
+                }
+            }
+            removeStaleCgroups(dir);
+            long pid = ProcessHandle.current().pid();
+            List<Path> result = new ArrayList<>();
+            for (int slot = 0; slot < slots; slot++) {
+                Path cgroup = dir.resolve(SLOT_CGROUP_PREFIX + pid + "-" + slot);
+                Files.createDirectories(cgroup);
+                if (available.contains("cpu")) {
+                    // Не больше одного ядра на слот, даже если программа запустила потоки
+                    Files.writeString(cgroup.resolve("cpu.max"), "100000 100000");
+                }
+                Path swap = cgroup.resolve("memory.swap.max");
+                if (Files.exists(swap)) {
+                    Files.writeString(swap, "0");
+                }
+                result.add(cgroup);
+            }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось настроить cgroup для решений, лимиты cgroup не используются: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Удаляет cgroup слотов завершившихся процессов. Удаляются только пустые cgroup: ядро не даст удалить
+     * cgroup, в которой остались процессы
+     */
+    private static void removeStaleCgroups(Path dir) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, SLOT_CGROUP_PREFIX + "*")) {
+            for (Path cgroup : entries) {
+                Matcher matcher = SLOT_CGROUP.matcher(cgroup.getFileName().toString());
+                if (!matcher.matches() || ProcessHandle.of(Long.parseLong(matcher.group(1))).isPresent()) {
+                    continue;
+                }
+                try {
+                    Files.delete(cgroup);
+                } catch (IOException e) {
+                    log.debug("Не удалось удалить cgroup {}: {}", cgroup, e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Каталог cgroup v2 текущего процесса или null, если cgroup v2 не смонтирована
+     */
+    private static Path ownCgroup() throws IOException {
+        for (String line : Files.readAllLines(Paths.get("/proc/self/cgroup"), StandardCharsets.UTF_8)) {
+            if (line.startsWith("0::")) {
+                Path dir = CGROUP_MOUNT.resolve(line.substring(3).replaceFirst("^/", ""));
+                return Files.isDirectory(dir) ? dir : null;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Закрепляет за каждым слотом свое ядро из доступных процессу.
+     * Ядро занимается блокировкой файла java.io.tmpdir/code_exec_cpus/cpuN.lock на все время работы процесса,
+     * поэтому другой процесс проверки на этой машине возьмет следующие свободные ядра.
+     * Если свободных ядер меньше, чем слотов, два слота делили бы ядро и время тестов зависело бы от соседа,
+     * поэтому закрепление не используется
+     */
+    private List<Integer> assignCpus(int slots) {
+        try {
+            List<Integer> cpus = null;
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("Cpus_allowed_list:")) {
+                    cpus = parseCpuList(line.substring(line.indexOf(':') + 1).trim());
+                }
+            }
+            if (cpus == null || cpus.size() < slots) {
+                log.warn("Доступно ядер {}, слотов {}: слоты не закрепляются за ядрами",
+                        cpus != null ? cpus.size() : "?", slots);
+                return null;
+            }
+            List<Integer> assigned = lockCpus(cpus, slots);
+            if (assigned == null) {
+                log.warn("Свободных от других процессов проверки ядер меньше, чем слотов ({}): "
+                        + "слоты не закрепляются за ядрами", slots);
+            }
+            return assigned;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось определить доступные ядра: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Занимает первые slots ядер, не занятых другими процессами
+     * @return занятые ядра или null, если свободных не хватило
+     */
+    private List<Integer> lockCpus(List<Integer> cpus, int slots) throws IOException {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"), CPU_LOCKS_DIR);
+        Files.createDirectories(dir);
+        List<Integer> assigned = new ArrayList<>();
+        for (int i = 0; i < cpus.size() && assigned.size() < slots; i++) {
+            FileChannel channel = FileChannel.open(dir.resolve("cpu" + cpus.get(i) + ".lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                channel.close();
+                continue;
+            }
+            cpuLocks.add(lock);
+            assigned.add(cpus.get(i));
+        }
+        if (assigned.size() < slots) {
+            for (FileLock lock : cpuLocks) {
+                lock.channel().close();
+            }
+            cpuLocks.clear();
+            return null;
+        }
+        return List.copyOf(assigned);
+    }
+    
+    /**
+     * Разбирает список ядер вида "0-3,8,10-11"
+     */
+    private static List<Integer> parseCpuList(String list) {
+        List<Integer> cpus = new ArrayList<>();
+        for (String part : list.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            String[] range = part.trim().split("-");
+            int from = Integer.parseInt(range[0]);
+            int to = range.length > 1 ? Integer.parseInt(range[1]) : from;
+            for (int cpu = from; cpu <= to; cpu++) {
+                cpus.add(cpu);
+            }
+        }
+        return cpus;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.users.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 в шестнадцатеричном виде для ключей кэшей проверки
+ */
+final class Sha256 {
+    
+    private Sha256() {
+    }
+    
+    /**
+     * Хэширует части, разделяя их нулевым байтом
+     */
+    static String hex(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    digest.update((byte) 0);
+                }
+                digest.update((parts[i] == null ? "" : parts[i]).getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
@@ -8,15 +8,25 @@ import com.example.users.model.User;
 import com.example.users.repository.SubmissionRepository;
 import com.example.users.repository.TaskRepository;
 import com.example.users.repository.UserRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,33 +34,146 @@ import java.util.stream.Collectors;
 public class SubmissionService {
     
     private static final Logger log = LoggerFactory.getLogger(SubmissionService.class);
-    private static final ObjectMapper objectMapper = new ObjectMapper();
     
     private final SubmissionRepository submissionRepository;
     private final UserRepository userRepository;
     private final TaskRepository taskRepository;
     private final StudentProgressService studentProgressService;
     private final CodeExecutionService codeExecutionService;
+    private final JudgeQueueService judgeQueueService;
+    private final VerdictCache verdictCache;
+    private final TestSuiteCache testSuiteCache;
+    private final TestResultsStorage testResultsStorage;
+    private final CodeBlobStore codeBlobStore;
+    private final JudgeAdmission judgeAdmission;
+    private final InFlightSubmissions inFlightSubmissions;
+    private final JudgeJobStore judgeJobStore;
+    private final JudgeCalibration judgeCalibration;
+    private final boolean distributed; // Проверяют отдельные процессы judge-worker через таблицу judge_jobs
+    private final TransactionTemplate transactionTemplate;
     
     public SubmissionService(SubmissionRepository submissionRepository, UserRepository userRepository,
                            TaskRepository taskRepository, StudentProgressService studentProgressService,
-                           CodeExecutionService codeExecutionService) {
+                           CodeExecutionService codeExecutionService, JudgeQueueService judgeQueueService,
+                           VerdictCache verdictCache, TestSuiteCache testSuiteCache,
+                           TestResultsStorage testResultsStorage, CodeBlobStore codeBlobStore,
+                           JudgeAdmission judgeAdmission, InFlightSubmissions inFlightSubmissions,
+                           JudgeJobStore judgeJobStore, JudgeCalibration judgeCalibration,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${app.judge.distributed:false}") boolean distributed) {
         this.submissionRepository = submissionRepository;
         this.userRepository = userRepository;
         this.taskRepository = taskRepository;
         this.studentProgressService = studentProgressService;
         this.codeExecutionService = codeExecutionService;
+        this.judgeQueueService = judgeQueueService;
+        this.verdictCache = verdictCache;
+        this.testSuiteCache = testSuiteCache;
+        this.testResultsStorage = testResultsStorage;
+        this.codeBlobStore = codeBlobStore;
+        this.judgeAdmission = judgeAdmission;
+        this.inFlightSubmissions = inFlightSubmissions;
+        this.judgeJobStore = judgeJobStore;
+        this.judgeCalibration = judgeCalibration;
+        this.distributed = distributed;
+        // Фоновая проверка пишет результаты в собственных коротких транзакциях
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
     
-    public SubmissionResponse submitSolution(SubmissionRequest request, UUID userId) {
+    /**
+     * Сохраняет решение и ставит его в очередь проверки.
+     * Повтор с тем же ключом идемпотентности и повторная отправка того же кода, пока первое решение
+     * не проверено, возвращают уже созданное решение
+     * @param idempotencyKey ключ из заголовка Idempotency-Key или null
+     */
+    public SubmissionResponse submitSolution(SubmissionRequest request, UUID userId, String idempotencyKey) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found with id: " + userId));
         
         Task task = taskRepository.findById(request.getTaskId())
                 .orElseThrow(() -> new IllegalArgumentException("Task not found with id: " + request.getTaskId()));
         
-        Submission submission = new Submission(user, task, request.getCode());
+        if (idempotencyKey != null) {
+            if (idempotencyKey.isBlank() || idempotencyKey.length() > 255) {
+                throw new IllegalArgumentException("Idempotency key must be 1 to 255 characters long");
+            }
+            Submission existing = submissionRepository.findByUserAndIdempotencyKey(user, idempotencyKey).orElse(null);
+            if (existing != null) {
+                if (!existing.getTask().getId().equals(task.getId())) {
+                    throw new IllegalArgumentException("Idempotency key was already used for another task");
+                }
+                return toResponse(existing);
+            }
+        }
+        
+        String code = request.getCode() != null ? request.getCode() : "";
+        String codeHash = VerdictCache.hashOf(code);
+        InFlightSubmissions.Flight flight = inFlightSubmissions.claim(
+                InFlightSubmissions.keyOf(userId, task.getId(), codeHash));
+        if (flight.isAttached()) {
+            Submission attached = submissionRepository.findById(flight.attachedTo).orElse(null);
+            if (attached != null) {
+                return toResponse(attached);
+            }
+        }
+        if (distributed) {
+            // Решения проверяют другие процессы, поэтому проверяемые повторы ищутся в БД
+            Submission pending = submissionRepository.findFirstByUserAndTaskAndCodeHashAndStatus(
+                    user, task, codeHash, Submission.Status.PENDING).orElse(null);
+            if (pending != null) {
+                inFlightSubmissions.abandon(flight);
+                return toResponse(pending);
+            }
+        }
+        try {
+            if (idempotencyKey == null) {
+                return createSubmission(user, task, code, codeHash, null, flight);
+            }
+            // Решение с ключом сохраняется в отдельной транзакции: если одновременный запрос с тем же ключом
+            // успел раньше, уникальный индекс отклонит вставку, а текущая транзакция останется рабочей
+            return transactionTemplate.execute(status ->
+                    createSubmission(user, task, code, codeHash, idempotencyKey, flight));
+        } catch (DataIntegrityViolationException e) {
+            inFlightSubmissions.abandon(flight);
+            if (idempotencyKey == null) {
+                throw e;
+            }
+            return concurrentSubmission(user, task, idempotencyKey);
+        } catch (RuntimeException e) {
+            inFlightSubmissions.abandon(flight);
+            throw e;
+        }
+    }
+    
+    /**
+     * Решение, которое сохранил одновременный запрос с тем же ключом идемпотентности
+     * @throws IdempotencyConflictException если его транзакция еще не завершена или откатилась
+     */
+    private SubmissionResponse concurrentSubmission(User user, Task task, String idempotencyKey) {
+        Submission existing = submissionRepository.findByUserAndIdempotencyKey(user, idempotencyKey).orElse(null);
+        if (existing == null) {
+            throw new IdempotencyConflictException("Request with the same idempotency key is in progress, retry later");
+        }
+        if (!existing.getTask().getId().equals(task.getId())) {
+            throw new IllegalArgumentException("Idempotency key was already used for another task");
+        }
+        log.debug("Одновременный запрос с ключом {} уже сохранил решение {}", idempotencyKey, existing.getId());
+        return toResponse(existing);
+    }
+    
+    private SubmissionResponse createSubmission(User user, Task task, String code, String codeHash,
+                                                String idempotencyKey, InFlightSubmissions.Flight flight) {
+        UUID userId = user.getId();
+        
+        // При перегрузке решение отклоняется до записи в БД или проверяется до первого непройденного теста
+        boolean degraded = judgeAdmission.admit(userId) == JudgeAdmission.Decision.DEGRADE;
+        
+        // Код хранится в code_blobs, решение ссылается на него по хэшу
+        Submission submission = new Submission(user, task);
         submission.setStatus(Submission.Status.PENDING);
+        submission.setCodeHash(codeBlobStore.save(code, codeHash));
+        submission.setIdempotencyKey(idempotencyKey);
         
         // Проверяем, не решал ли пользователь эту задачу ранее успешно
         Submission latestSubmission = submissionRepository
@@ -62,13 +185,238 @@ public class SubmissionService {
             submission.setXpAwarded(false);
         }
         
+        submission = submissionRepository.save(submission);
+        
+        UUID submissionId = submission.getId();
+        if (distributed) {
+            // Задание пишется в одной транзакции с решением: воркер не увидит одно без другого
+            judgeJobStore.enqueue(submissionId, degraded);
+        }
+        
+        // Проверка выполняется в очереди после коммита, чтобы воркер увидел сохраненное решение
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    startJudging(flight, submissionId, userId, degraded);
+                }
+                
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                        inFlightSubmissions.abandon(flight);
+                    }
+                }
+            });
+        } else {
+            startJudging(flight, submissionId, userId, degraded);
+        }
+        
+        return toResponse(submission);
+    }
+    
+    private void startJudging(InFlightSubmissions.Flight flight, UUID submissionId, UUID userId, boolean degraded) {
+        inFlightSubmissions.started(flight, submissionId);
+        if (distributed) {
+            // Об окончании проверки воркер сообщает только через БД
+            inFlightSubmissions.finished(submissionId);
+        } else {
+            enqueueJudging(submissionId, userId, degraded);
+        }
+    }
+    
+    /**
+     * Возвращает в очередь решения, не проверенные до перезапуска сервиса.
+     * При проверке воркерами задания уже лежат в judge_jobs, досоздаются только недостающие
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingSubmissions() {
+        List<Submission> pending = submissionRepository.findByStatus(Submission.Status.PENDING);
+        if (!pending.isEmpty()) {
+            log.info("Возобновление проверки {} решений", pending.size());
+        }
+        for (Submission submission : pending) {
+            if (distributed) {
+                judgeJobStore.enqueue(submission.getId(), false);
+            } else {
+                enqueueJudging(submission.getId(), submission.getUser().getId(), false);
+            }
+        }
+    }
+    
+    private void enqueueJudging(UUID submissionId, UUID userId, boolean degraded) {
+        boolean accepted = judgeQueueService.enqueue(submissionId, userId.toString(),
+                JudgeQueueService.Priority.SUBMISSION, () -> judgeSubmission(submissionId, degraded));
+        if (!accepted) {
+            inFlightSubmissions.finished(submissionId);
+            transactionTemplate.executeWithoutResult(status ->
+                    submissionRepository.findById(submissionId).ifPresent(submission -> {
+                        submission.setStatus(Submission.Status.ERROR);
+                        submission.setErrorMessage("Очередь проверки переполнена, отправьте решение позже");
+                        submissionRepository.save(submission);
+                    }));
+        }
+    }
+    
+    /**
+     * Проверяет решение в потоке очереди.
+     * Компиляция и тесты выполняются вне транзакции, чтобы не удерживать соединение с БД
+     * @param degraded проверить до первого непройденного теста, решение принято при перегрузке
+     */
+    private void judgeSubmission(UUID submissionId, boolean degraded) {
+        try {
+            judgeAndApply(submissionId, degraded);
+        } finally {
+            inFlightSubmissions.finished(submissionId);
+        }
+    }
+    
+    private void judgeAndApply(UUID submissionId, boolean degraded) {
+        JudgeInput input = loadJudgeInput(submissionId);
+        if (input == null) {
+            return;
+        }
+        
+        TestResult testResult = judgeSource(input.code, input.codeHash, input.testCases, input.limits,
+                input.testCasesHash, degraded, samples -> applyProvisional(submissionId, samples));
+        transactionTemplate.executeWithoutResult(status -> applyTestResult(submissionId, input, testResult));
+    }
+    
+    /**
+     * Проверяет решение из judge_jobs в процессе judge-worker.
+     * Результат записывается в одной транзакции с удалением задания и только если задание
+     * все еще принадлежит воркеру: иначе его уже вернули в очередь, и результат запишет другой воркер
+     * @return false, если задание забрали у воркера
+     */
+    public boolean judgeJob(JudgeJobStore.ClaimedJob job, String workerId) {
+        UUID submissionId = job.submissionId;
+        JudgeInput input = loadJudgeInput(submissionId);
+        if (input == null) {
+            transactionTemplate.executeWithoutResult(status -> judgeJobStore.complete(submissionId, workerId));
+            return true;
+        }
+        
+        TestResult testResult = judgeSource(input.code, input.codeHash, input.testCases, input.limits,
+                input.testCasesHash, job.degraded, samples -> applyProvisional(submissionId, samples));
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (!judgeJobStore.complete(submissionId, workerId)) {
+                log.warn("Задание {} передано другому воркеру, результат не записан", submissionId);
+                return false;
+            }
+            applyTestResult(submissionId, input, testResult);
+            return true;
+        }));
+    }
+    
+    /**
+     * Код и тесты решения, ожидающего проверки, или null, если оно уже проверено или удалено
+     */
+    private JudgeInput loadJudgeInput(UUID submissionId) {
+        JudgeInput input = transactionTemplate.execute(status -> submissionRepository.findById(submissionId)
+                .filter(submission -> submission.getStatus() == Submission.Status.PENDING)
+                .map(submission -> new JudgeInput(codeBlobStore.codeOf(submission), submission.getCodeHash(),
+                        submission.getTask().getTestCases(), limitsOf(submission.getTask())))
+                .orElse(null));
+        if (input == null) {
+            log.debug("Решение {} уже проверено или удалено", submissionId);
+        }
+        return input;
+    }
+    
+    /**
+     * Ограничения проверки решений задачи на этой машине
+     */
+    CodeExecutionService.Limits limitsOf(Task task) {
+        return new CodeExecutionService.Limits(judgeCalibration.timeLimitOf(task), task.getMemoryLimitKb(),
+                Boolean.TRUE.equals(task.getOptimizedOnly()), task.getChecker());
+    }
+    
+    /**
+     * Проверяет код на тестах без записи в БД.
+     * Такой же код на тех же тестах повторно не запускается - вердикт берется из кэша
+     */
+    TestResult judgeSource(String code, String codeHash, String testCases, CodeExecutionService.Limits limits,
+                           String testCasesHash) {
+        return judgeSource(code, codeHash, testCases, limits, testCasesHash, false);
+    }
+    
+    /**
+     * Проверяет код на тестах без записи в БД
+     * @param failFast остановить проверку после первого непройденного теста
+     */
+    TestResult judgeSource(String code, String codeHash, String testCases, CodeExecutionService.Limits limits,
+                           String testCasesHash, boolean failFast) {
+        return judgeSource(code, codeHash, testCases, limits, testCasesHash, failFast, null);
+    }
+    
+    /**
+     * Проверяет код на тестах без записи в БД
+     * @param failFast остановить проверку после первого непройденного теста
+     * @param onSamples получатель результата тестов-примеров до окончания полной проверки или null
+     */
+    TestResult judgeSource(String code, String codeHash, String testCases, CodeExecutionService.Limits limits,
+                           String testCasesHash, boolean failFast,
+                           Consumer<CodeExecutionService.CodeCheckResult> onSamples) {
+        VerdictCache.Verdict verdict = verdictCache.lookup(codeHash, testCasesHash);
+        if (verdict != null) {
+            log.debug("Вердикт для кода {} взят из кэша", codeHash);
+            return new TestResult(verdict.status, verdict.testsPassed, verdict.testsTotal,
+                    verdict.errorMessage, verdict.testResultsJson, true,
+                    verdict.maxCpuTimeMs, verdict.maxWallTimeMs, verdict.maxMemoryKb);
+        }
+        
         // Проверка кода и запуск тестов
-        TestResult testResult = checkCode(request.getCode(), task.getTestCases());
+        TestResult testResult = checkCode(code, testCases, limits, failFast, onSamples);
+        if (testResult.reusable) {
+            verdictCache.put(codeHash, new VerdictCache.Verdict(testCasesHash, testResult.status,
+                    testResult.testsPassed, testResult.testsTotal, testResult.errorMessage,
+                    testResult.testResultsJson, testResult.maxCpuTimeMs, testResult.maxWallTimeMs,
+                    testResult.maxMemoryKb));
+        }
+        return testResult;
+    }
+    
+    /**
+     * Записывает предварительный вердикт по тестам-примерам, пока решение проверяется на остальных тестах.
+     * Статус решения остается PENDING, результаты полной проверки заменят результаты примеров
+     */
+    private void applyProvisional(UUID submissionId, CodeExecutionService.CodeCheckResult samples) {
+        Submission.Status provisionalStatus = samples.testsPassed == samples.testsTotal
+                ? Submission.Status.PASSED
+                : failedStatus(samples.testResults);
+        String testResultsJson = buildTestResultsJson(samples);
+        transactionTemplate.executeWithoutResult(status -> submissionRepository.findById(submissionId)
+                .filter(submission -> submission.getStatus() == Submission.Status.PENDING)
+                .ifPresent(submission -> {
+                    submission.setProvisionalStatus(provisionalStatus);
+                    submission.setTestsPassed(samples.testsPassed);
+                    submission.setTestsTotal(samples.testsTotal);
+                    submission.setTestResults(testResultsJson);
+                    submissionRepository.save(submission);
+                }));
+        log.debug("Предварительный вердикт решения {}: {}, примеров пройдено {}/{}",
+                submissionId, provisionalStatus, samples.testsPassed, samples.testsTotal);
+    }
+    
+    private void applyTestResult(UUID submissionId, JudgeInput input, TestResult testResult) {
+        Submission submission = submissionRepository.findById(submissionId).orElse(null);
+        if (submission == null) {
+            return;
+        }
+        Task task = submission.getTask();
+        UUID userId = submission.getUser().getId();
         
+        submission.setCodeHash(input.codeHash);
+        submission.setTestCasesHash(input.testCasesHash);
+        submission.setReusableVerdict(testResult.reusable);
         submission.setStatus(testResult.status);
+        submission.setProvisionalStatus(null);
         submission.setTestsPassed(testResult.testsPassed);
         submission.setTestsTotal(testResult.testsTotal);
         submission.setTestResults(testResult.testResultsJson);
+        submission.setMaxCpuTimeMs(testResult.maxCpuTimeMs);
+        submission.setMaxWallTimeMs(testResult.maxWallTimeMs);
+        submission.setMaxMemoryKb(testResult.maxMemoryKb);
         
         if (testResult.errorMessage != null) {
             submission.setErrorMessage(testResult.errorMessage);
@@ -89,8 +437,7 @@ public class SubmissionService {
             }
         }
         
-        submission = submissionRepository.save(submission);
-        return toResponse(submission);
+        submissionRepository.save(submission);
     }
     
     public SubmissionResponse getSubmissionById(UUID id) {
@@ -126,7 +473,8 @@ public class SubmissionService {
                 .orElse(null);
     }
     
-    private TestResult checkCode(String code, String testCases) {
+    private TestResult checkCode(String code, String testCases, CodeExecutionService.Limits limits,
+                                 boolean failFast, Consumer<CodeExecutionService.CodeCheckResult> onSamples) {
         // Базовая валидация кода
         if (code == null || code.trim().isEmpty()) {
             return new TestResult(
@@ -139,8 +487,7 @@ public class SubmissionService {
         }
         
         // Проверяем наличие GCC компилятора
-        if (!isGccAvailable()) {
-            log.error("GCC не найден! Установите GCC для проверки кода.");
+        if (!codeExecutionService.isCompilerAvailable()) {
             return new TestResult(
                 Submission.Status.ERROR,
                 0,
@@ -154,21 +501,18 @@ public class SubmissionService {
         
         try {
             // Реальная проверка кода через компилятор
-            CodeExecutionService.CodeCheckResult result = 
-                codeExecutionService.checkCode(code, testCases);
+            CodeExecutionService.CodeCheckResult result = failFast
+                ? codeExecutionService.checkCode(code, testCases, limits, true, onSamples)
+                : codeExecutionService.checkCode(code, testCases, limits, onSamples);
             
             if (!result.compilationSuccess) {
                 // Fallback: показываем хотя бы один тест с ошибкой компиляции
                 try {
-                    List<FallbackTestCase> fallbackTests = parseTestCasesForFallback(testCases);
-                    if (!fallbackTests.isEmpty()) {
-                        FallbackTestCase firstTest = fallbackTests.get(0);
-                        String errorJson = String.format(
-                            "{\"tests\":[{\"testNumber\":1,\"passed\":false,\"input\":\"%s\",\"expected\":\"%s\",\"actual\":\"\",\"error\":\"Ошибка компиляции:\\n%s\"}]}",
-                            escapeJson(firstTest.input),
-                            escapeJson(firstTest.expectedOutput),
-                            escapeJson(result.compilationError)
-                        );
+                    FallbackTestCase firstTest = firstTestCase(testCases);
+                    if (firstTest != null) {
+                        String errorJson = TestResultsJson.write(TestResultsJson.TestEntry.failed(1,
+                            firstTest.input, firstTest.expectedOutput,
+                            "Ошибка компиляции:\n" + Objects.toString(result.compilationError, "")));
                         
                         return new TestResult(
                             Submission.Status.ERROR,
@@ -194,14 +538,11 @@ public class SubmissionService {
             if (result.testsTotal == 0) {
                 // Fallback: показываем хотя бы один тест
                 try {
-                    List<FallbackTestCase> fallbackTests = parseTestCasesForFallback(testCases);
-                    if (!fallbackTests.isEmpty()) {
-                        FallbackTestCase firstTest = fallbackTests.get(0);
-                        String errorJson = String.format(
-                            "{\"tests\":[{\"testNumber\":1,\"passed\":false,\"input\":\"%s\",\"expected\":\"%s\",\"actual\":\"\",\"error\":\"Тестовые случаи не найдены или не удалось их распарсить\"}]}",
-                            escapeJson(firstTest.input),
-                            escapeJson(firstTest.expectedOutput)
-                        );
+                    FallbackTestCase firstTest = firstTestCase(testCases);
+                    if (firstTest != null) {
+                        String errorJson = TestResultsJson.write(TestResultsJson.TestEntry.failed(1,
+                            firstTest.input, firstTest.expectedOutput,
+                            "Тестовые случаи не найдены или не удалось их распарсить"));
                         
                         return new TestResult(
                             Submission.Status.ERROR,
@@ -225,22 +566,35 @@ public class SubmissionService {
             }
             
             // Формируем JSON с результатами тестов
-            String testResultsJson = buildTestResultsJson(result.testResults);
+            String testResultsJson = buildTestResultsJson(result);
             
             Submission.Status status = result.testsPassed == result.testsTotal 
                 ? Submission.Status.PASSED 
-                : Submission.Status.FAILED;
+                : failedStatus(result.testResults);
+            
+            String errorMessage = null;
+            if (status == Submission.Status.FAILED) {
+                errorMessage = String.format("Пройдено %d из %d тестов", result.testsPassed, result.testsTotal);
+            } else if (status != Submission.Status.PASSED) {
+                errorMessage = String.format("%s. Пройдено %d из %d тестов",
+                    status.getDescription(), result.testsPassed, result.testsTotal);
+            }
             
-            String errorMessage = status == Submission.Status.FAILED
-                ? String.format("Пройдено %d из %d тестов", result.testsPassed, result.testsTotal)
-                : null;
+            // Вердикт с таймаутом зависит от загрузки машины, его не переиспользуем.
+            // Не переиспользуем и неполный счет пройденных тестов упрощенной проверки
+            boolean reusable = result.testResults.stream().noneMatch(t -> t.timedOut)
+                && (!failFast || result.testsPassed == result.testsTotal);
             
             return new TestResult(
                 status,
                 result.testsPassed,
                 result.testsTotal,
                 errorMessage,
-                testResultsJson
+                testResultsJson,
+                reusable,
+                maxUsage(result.testResults, usage -> usage.cpuTimeMs),
+                maxUsage(result.testResults, usage -> usage.wallTimeMs),
+                maxUsage(result.testResults, usage -> usage.memoryKb)
             );
             
         } catch (Exception e) {
@@ -248,15 +602,11 @@ public class SubmissionService {
             
             // Fallback: показываем хотя бы один тест с информацией об ошибке
             try {
-                List<FallbackTestCase> fallbackTests = parseTestCasesForFallback(testCases);
-                if (!fallbackTests.isEmpty()) {
-                    FallbackTestCase firstTest = fallbackTests.get(0);
-                    String errorJson = String.format(
-                        "{\"tests\":[{\"testNumber\":1,\"passed\":false,\"input\":\"%s\",\"expected\":\"%s\",\"actual\":\"\",\"error\":\"Ошибка системы: %s\"}]}",
-                        escapeJson(firstTest.input),
-                        escapeJson(firstTest.expectedOutput),
-                        escapeJson(e.getMessage())
-                    );
+                FallbackTestCase firstTest = firstTestCase(testCases);
+                if (firstTest != null) {
+                    String errorJson = TestResultsJson.write(TestResultsJson.TestEntry.failed(1,
+                        firstTest.input, firstTest.expectedOutput,
+                        "Ошибка системы: " + Objects.toString(e.getMessage(), "")));
                     
                     return new TestResult(
                         Submission.Status.ERROR,
@@ -281,43 +631,52 @@ public class SubmissionService {
     }
     
     /**
-     * Проверяет доступность GCC компилятора
+     * Вердикт по первому непройденному тесту
      */
-    private boolean isGccAvailable() {
-        try {
-            Process process = new ProcessBuilder("gcc", "--version").start();
-            boolean finished = process.waitFor(2, java.util.concurrent.TimeUnit.SECONDS);
-            if (finished && process.exitValue() == 0) {
-                return true;
+    private Submission.Status failedStatus(List<CodeExecutionService.TestExecutionResult> testResults) {
+        for (CodeExecutionService.TestExecutionResult tr : testResults) {
+            if (tr.passed) {
+                continue;
             }
-        } catch (Exception e) {
-            // GCC не найден
+            if (tr.memoryLimitExceeded) {
+                return Submission.Status.MEMORY_LIMIT;
+            }
+            if (tr.timedOut) {
+                return Submission.Status.TIME_LIMIT;
+            }
+            return Submission.Status.FAILED;
         }
-        return false;
+        return Submission.Status.FAILED;
     }
     
     /**
-     * Парсит тестовые случаи для fallback (простая версия)
+     * Наибольшее значение ресурса по тестам, null - если ни для одного теста он не известен
      */
-    private List<FallbackTestCase> parseTestCasesForFallback(String testCasesJson) {
-        List<FallbackTestCase> testCases = new ArrayList<>();
-        
+    private Long maxUsage(List<CodeExecutionService.TestExecutionResult> testResults,
+                          ToLongFunction<ResourceRunner.Usage> metric) {
+        return testResults.stream()
+                .filter(tr -> tr.usage != null)
+                .mapToLong(tr -> metric.applyAsLong(tr.usage))
+                .filter(value -> value >= 0)
+                .boxed()
+                .max(Long::compare)
+                .orElse(null);
+    }
+    
+    /**
+     * Первый тестовый случай для fallback, null - если тестов нет
+     */
+    private FallbackTestCase firstTestCase(String testCasesJson) {
+        TestSuiteCache.TestSuite suite = testSuiteCache.acquire(testCasesJson);
         try {
-            com.fasterxml.jackson.databind.JsonNode root = objectMapper.readTree(testCasesJson);
-            com.fasterxml.jackson.databind.JsonNode tests = root.get("tests");
-            
-            if (tests != null && tests.isArray()) {
-                for (com.fasterxml.jackson.databind.JsonNode test : tests) {
-                    String input = test.has("input") ? test.get("input").asText() : "";
-                    String output = test.has("output") ? test.get("output").asText() : "";
-                    testCases.add(new FallbackTestCase(input, output));
-                }
+            if (suite.testCases.isEmpty()) {
+                return null;
             }
-        } catch (Exception e) {
-            log.warn("Не удалось распарсить тестовые случаи для fallback", e);
+            TestSuiteCache.TestCase testCase = suite.testCases.get(0);
+            return new FallbackTestCase(testCase.inputPreview(), testCase.expectedOutput);
+        } finally {
+            testSuiteCache.release(suite);
         }
-        
-        return testCases;
     }
     
     private static class FallbackTestCase {
@@ -331,69 +690,79 @@ public class SubmissionService {
     }
     
     /**
-     * Формирует JSON с результатами тестов
+     * Формирует JSON с результатами тестов для сохранения
      */
-    private String buildTestResultsJson(List<CodeExecutionService.TestExecutionResult> testResults) {
+    private String buildTestResultsJson(CodeExecutionService.CodeCheckResult result) {
         try {
-            StringBuilder json = new StringBuilder("{\"tests\":[");
-            for (int i = 0; i < testResults.size(); i++) {
-                CodeExecutionService.TestExecutionResult tr = testResults.get(i);
-                if (i > 0) json.append(",");
-                json.append("{")
-                    .append("\"testNumber\":").append(i + 1).append(",")
-                    .append("\"passed\":").append(tr.passed).append(",")
-                    .append("\"input\":\"").append(escapeJson(tr.input)).append("\",")
-                    .append("\"expected\":\"").append(escapeJson(tr.expectedOutput)).append("\",")
-                    .append("\"actual\":\"").append(escapeJson(tr.actualOutput)).append("\"");
-                if (tr.errorMessage != null) {
-                    json.append(",\"error\":\"").append(escapeJson(tr.errorMessage)).append("\"");
-                }
-                json.append("}");
-            }
-            json.append("]}");
-            return json.toString();
+            return testResultsStorage.store(result);
         } catch (Exception e) {
             log.error("Ошибка формирования JSON результатов", e);
             return "{\"error\":\"Ошибка формирования результатов\"}";
         }
     }
     
-    private String escapeJson(String str) {
-        if (str == null) return "";
-        return str.replace("\\", "\\\\")
-                  .replace("\"", "\\\"")
-                  .replace("\n", "\\n")
-                  .replace("\r", "\\r")
-                  .replace("\t", "\\t");
+    private static class JudgeInput {
+        final String code;
+        final String codeHash;
+        final String testCases;
+        final CodeExecutionService.Limits limits;
+        final String testCasesHash;
+        
+        JudgeInput(String code, String codeHash, String testCases, CodeExecutionService.Limits limits) {
+            this.code = code;
+            this.codeHash = codeHash != null ? codeHash : VerdictCache.hashOf(code);
+            this.testCases = testCases;
+            this.limits = limits;
+            this.testCasesHash = VerdictCache.testsHashOf(testCases, limits);
+        }
     }
     
     // Вспомогательный класс для результатов тестирования
-    private static class TestResult {
+    static class TestResult {
         final Submission.Status status;
         final int testsPassed;
         final int testsTotal;
         final String errorMessage;
         final String testResultsJson;
+        final boolean reusable; // Можно ли выдать этот вердикт такому же коду на тех же тестах
+        final Long maxCpuTimeMs;
+        final Long maxWallTimeMs;
+        final Long maxMemoryKb;
         
         TestResult(Submission.Status status, int testsPassed, int testsTotal, 
                   String errorMessage, String testResultsJson) {
+            this(status, testsPassed, testsTotal, errorMessage, testResultsJson, false, null, null, null);
+        }
+        
+        TestResult(Submission.Status status, int testsPassed, int testsTotal, 
+                  String errorMessage, String testResultsJson, boolean reusable,
+                  Long maxCpuTimeMs, Long maxWallTimeMs, Long maxMemoryKb) {
             this.status = status;
             this.testsPassed = testsPassed;
             this.testsTotal = testsTotal;
             this.errorMessage = errorMessage;
             this.testResultsJson = testResultsJson;
+            this.reusable = reusable;
+            this.maxCpuTimeMs = maxCpuTimeMs;
+            this.maxWallTimeMs = maxWallTimeMs;
+            this.maxMemoryKb = maxMemoryKb;
         }
     }
     
     private SubmissionResponse toResponse(Submission submission) {
         SubmissionResponse response = new SubmissionResponse();
         response.setId(submission.getId());
-        response.setCode(submission.getCode());
+        response.setCode(codeBlobStore.codeOf(submission));
         response.setStatus(submission.getStatus());
-        response.setTestResults(submission.getTestResults());
+        response.setProvisionalStatus(submission.getProvisionalStatus());
+        response.setTestResults(testResultsStorage.expand(submission.getTestResults(),
+                submission.getTask() != null ? submission.getTask().getTestCases() : null));
         response.setErrorMessage(submission.getErrorMessage());
         response.setTestsPassed(submission.getTestsPassed());
         response.setTestsTotal(submission.getTestsTotal());
+        response.setMaxCpuTimeMs(submission.getMaxCpuTimeMs());
+        response.setMaxWallTimeMs(submission.getMaxWallTimeMs());
+        response.setMaxMemoryKb(submission.getMaxMemoryKb());
         response.setXpAwarded(submission.getXpAwarded());
         response.setCreatedAt(submission.getCreatedAt());
         response.setUpdatedAt(submission.getUpdatedAt());
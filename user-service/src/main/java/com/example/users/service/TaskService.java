@@ -10,10 +10,19 @@ import com.example.users.repository.LessonRepository;
 import com.example.users.repository.SkillRepository;
 import com.example.users.repository.TaskRepository;
 import com.example.users.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -21,20 +30,54 @@ import java.util.stream.Collectors;
 @Transactional
 public class TaskService {
     
+    private static final Logger log = LoggerFactory.getLogger(TaskService.class);
+    
     private final TaskRepository taskRepository;
     private final UserRepository userRepository;
     private final LessonRepository lessonRepository;
     private final SkillRepository skillRepository;
+    private final VerdictCache verdictCache;
+    private final SubmissionService submissionService;
+    private final CodeExecutionService codeExecutionService;
+    private final JudgeCalibration judgeCalibration;
+    private final TestFailureStats testFailureStats;
+    private final int referenceRuns;
+    private final TransactionTemplate transactionTemplate;
     
     public TaskService(TaskRepository taskRepository, UserRepository userRepository,
-                      LessonRepository lessonRepository, SkillRepository skillRepository) {
+                      LessonRepository lessonRepository, SkillRepository skillRepository,
+                      VerdictCache verdictCache, SubmissionService submissionService,
+                      CodeExecutionService codeExecutionService, JudgeCalibration judgeCalibration,
+                      TestFailureStats testFailureStats, PlatformTransactionManager transactionManager,
+                      @Value("${app.judge.reference.runs:3}") int referenceRuns) {
         this.taskRepository = taskRepository;
         this.userRepository = userRepository;
         this.lessonRepository = lessonRepository;
         this.skillRepository = skillRepository;
+        this.verdictCache = verdictCache;
+        this.submissionService = submissionService;
+        this.codeExecutionService = codeExecutionService;
+        this.judgeCalibration = judgeCalibration;
+        this.testFailureStats = testFailureStats;
+        this.referenceRuns = Math.max(referenceRuns, 1);
+        // Эталон измеряется вне транзакции, задача сохраняется в собственной короткой транзакции
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
     
+    /**
+     * Создает задачу. Эталонное решение измеряется до транзакции: компиляция и запуски занимают секунды,
+     * и все это время транзакция держала бы соединение с БД
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public TaskResponse createTask(TaskRequest request, UUID createdById) {
+        Long referenceTimeMs = measureReference(new ReferenceInput(request.getTitle(),
+                blankToNull(request.getReferenceSolution()), request.getTestCases(),
+                request.getMemoryLimitKb(), checkerOf(request.getChecker())));
+        return transactionTemplate.execute(status -> saveNewTask(request, createdById, referenceTimeMs));
+    }
+    
+    private TaskResponse saveNewTask(TaskRequest request, UUID createdById, Long referenceTimeMs) {
         User createdBy = userRepository.findById(createdById)
                 .orElseThrow(() -> new IllegalArgumentException("User not found with id: " + createdById));
         
@@ -44,6 +87,11 @@ public class TaskService {
         task.setCodeTemplate(request.getCodeTemplate());
         task.setTestCases(request.getTestCases());
         task.setXpReward(request.getXpReward() != null ? request.getXpReward() : 10);
+        task.setTimeLimitMs(request.getTimeLimitMs());
+        task.setReferenceSolution(blankToNull(request.getReferenceSolution()));
+        task.setMemoryLimitKb(request.getMemoryLimitKb());
+        task.setOptimizedOnly(request.getOptimizedOnly() != null ? request.getOptimizedOnly() : false);
+        task.setChecker(checkerOf(request.getChecker()));
         task.setDifficulty(request.getDifficulty());
         task.setPublished(request.getPublished() != null ? request.getPublished() : false);
         task.setCreatedBy(createdBy);
@@ -60,6 +108,9 @@ public class TaskService {
             task.setSkill(skill);
         }
         
+        if (referenceTimeMs != null) {
+            applyReference(task, referenceTimeMs, request.getTimeLimitMs() == null);
+        }
         task = taskRepository.save(task);
         return toResponse(task);
     }
@@ -90,7 +141,24 @@ public class TaskService {
                 .collect(Collectors.toList());
     }
     
+    /**
+     * Обновляет задачу. Если изменились эталон, тесты или лимиты, эталон измеряется между двумя
+     * короткими транзакциями: первая читает задачу, вторая применяет изменения и результат измерения
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public TaskResponse updateTask(UUID id, TaskRequest request, UUID currentUserId) {
+        ReferenceInput input = transactionTemplate.execute(status ->
+                referenceInputOf(editableTask(id, currentUserId), request));
+        Long referenceTimeMs = input != null ? measureReference(input) : null;
+        return transactionTemplate.execute(status ->
+                applyUpdate(editableTask(id, currentUserId), request, referenceTimeMs));
+    }
+    
+    /**
+     * Задача, которую пользователь может редактировать
+     * @throws SecurityException если пользователь не автор задачи и не может редактировать чужие
+     */
+    private Task editableTask(UUID id, UUID currentUserId) {
         Task task = taskRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Task not found with id: " + id));
         
@@ -102,6 +170,37 @@ public class TaskService {
                 throw new SecurityException("You don't have permission to edit this task");
             }
         }
+        return task;
+    }
+    
+    /**
+     * Эталон и тесты задачи после применения запроса
+     * @return null, если запрос не меняет ничего, от чего зависит время эталона
+     */
+    private ReferenceInput referenceInputOf(Task task, TaskRequest request) {
+        if (!referenceChanged(request)) {
+            return null;
+        }
+        return new ReferenceInput(
+                request.getTitle() != null ? request.getTitle() : task.getTitle(),
+                request.getReferenceSolution() != null ? blankToNull(request.getReferenceSolution()) : task.getReferenceSolution(),
+                request.getTestCases() != null ? request.getTestCases() : task.getTestCases(),
+                request.getMemoryLimitKb() != null ? request.getMemoryLimitKb() : task.getMemoryLimitKb(),
+                request.getChecker() != null ? checkerOf(request.getChecker()) : task.getChecker());
+    }
+    
+    private static boolean referenceChanged(TaskRequest request) {
+        return request.getReferenceSolution() != null || request.getTestCases() != null
+                || request.getMemoryLimitKb() != null || request.getChecker() != null;
+    }
+    
+    /**
+     * @param referenceTimeMs время эталона, измеренное по запросу, или null
+     */
+    private TaskResponse applyUpdate(Task task, TaskRequest request, Long referenceTimeMs) {
+        // Лимит выводится из эталона, если не задан вручную ни сейчас, ни раньше
+        boolean deriveTimeLimit = request.getTimeLimitMs() == null
+                && (task.getTimeLimitMs() == null || task.getCalibrationMs() != null);
         
         if (request.getTitle() != null) {
             task.setTitle(request.getTitle());
@@ -113,11 +212,36 @@ public class TaskService {
             task.setCodeTemplate(request.getCodeTemplate());
         }
         if (request.getTestCases() != null) {
+            if (task.getTestCases() != null && !task.getTestCases().equals(request.getTestCases())) {
+                // Вердикты, полученные на старых тестах, больше не актуальны
+                verdictCache.invalidateTestCases(VerdictCache.testsHashOf(task.getTestCases(),
+                        submissionService.limitsOf(task)));
+                testFailureStats.forget(Sha256.hex(task.getTestCases()));
+            }
             task.setTestCases(request.getTestCases());
         }
         if (request.getXpReward() != null) {
             task.setXpReward(request.getXpReward());
         }
+        if (request.getTimeLimitMs() != null) {
+            task.setTimeLimitMs(request.getTimeLimitMs());
+            task.setCalibrationMs(null);
+        }
+        if (request.getReferenceSolution() != null) {
+            task.setReferenceSolution(blankToNull(request.getReferenceSolution()));
+            if (task.getReferenceSolution() == null) {
+                task.setReferenceTimeMs(null);
+            }
+        }
+        if (request.getMemoryLimitKb() != null) {
+            task.setMemoryLimitKb(request.getMemoryLimitKb());
+        }
+        if (request.getOptimizedOnly() != null) {
+            task.setOptimizedOnly(request.getOptimizedOnly());
+        }
+        if (request.getChecker() != null) {
+            task.setChecker(checkerOf(request.getChecker()));
+        }
         if (request.getDifficulty() != null) {
             task.setDifficulty(request.getDifficulty());
         }
@@ -137,6 +261,9 @@ public class TaskService {
             task.setSkill(skill);
         }
         
+        if (referenceTimeMs != null && task.getReferenceSolution() != null) {
+            applyReference(task, referenceTimeMs, deriveTimeLimit);
+        }
         task = taskRepository.save(task);
         return toResponse(task);
     }
@@ -157,6 +284,93 @@ public class TaskService {
         taskRepository.delete(task);
     }
     
+    /**
+     * Эталонное решение и то, от чего зависит его время
+     */
+    private static class ReferenceInput {
+        final String title;
+        final String referenceSolution;
+        final String testCases;
+        final Integer memoryLimitKb;
+        final String checker;
+        
+        ReferenceInput(String title, String referenceSolution, String testCases, Integer memoryLimitKb, String checker) {
+            this.title = title;
+            this.referenceSolution = referenceSolution;
+            this.testCases = testCases;
+            this.memoryLimitKb = memoryLimitKb;
+            this.checker = checker;
+        }
+    }
+    
+    /**
+     * Запускает эталонное решение на тестах задачи и возвращает время самого долгого теста.
+     * Каждый тест запускается reference.runs раз, берется лучшее время: эталон измеряется на
+     * ненагруженной машине, а запас на нагрузку дает множитель лимита.
+     * Вызывается вне транзакции
+     * @return время в миллисекундах или null, если эталона нет или компилятор недоступен
+     * @throws IllegalArgumentException если эталон не компилируется или не проходит тест
+     */
+    private Long measureReference(ReferenceInput input) {
+        if (input.referenceSolution == null || input.testCases == null) {
+            return null;
+        }
+        if (!codeExecutionService.isCompilerAvailable()) {
+            log.warn("Компилятор недоступен, время эталона задачи {} не измерено", input.title);
+            return null;
+        }
+        // Без лимита времени и оптимизированной сборкой, как проверяются задачи с лимитом;
+        // тесты идут по одному на одном слоте, чтобы соседние тесты не искажали время
+        CodeExecutionService.Limits limits = new CodeExecutionService.Limits(null, input.memoryLimitKb,
+                true, input.checker);
+        // По номеру теста: у разных тестов могут совпадать входные данные
+        Map<Integer, Long> bestTimes = new HashMap<>();
+        for (int run = 0; run < referenceRuns; run++) {
+            CodeExecutionService.CodeCheckResult result = codeExecutionService.measureReference(
+                    input.referenceSolution, input.testCases, limits);
+            if (!result.compilationSuccess) {
+                throw new IllegalArgumentException("Reference solution does not compile: " + result.compilationError);
+            }
+            for (int i = 0; i < result.testResults.size(); i++) {
+                CodeExecutionService.TestExecutionResult test = result.testResults.get(i);
+                if (!test.passed) {
+                    throw new IllegalArgumentException("Reference solution fails test " + (i + 1)
+                            + (test.errorMessage != null ? ": " + test.errorMessage : ""));
+                }
+                if (test.usage != null) {
+                    long timeMs = test.usage.cpuTimeMs >= 0 ? test.usage.cpuTimeMs : test.usage.wallTimeMs;
+                    bestTimes.merge(i, timeMs, Math::min);
+                }
+            }
+        }
+        return bestTimes.values().stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+    
+    /**
+     * Записывает время эталона в задачу
+     * @param deriveTimeLimit вывести лимит времени задачи из времени эталона
+     */
+    private void applyReference(Task task, long referenceTimeMs, boolean deriveTimeLimit) {
+        task.setReferenceTimeMs((int) referenceTimeMs);
+        if (deriveTimeLimit) {
+            task.setTimeLimitMs(judgeCalibration.deriveTimeLimitMs(referenceTimeMs));
+            task.setCalibrationMs(judgeCalibration.getCalibrationMs());
+        }
+        log.info("Время эталона задачи {}: {} мс, лимит {} мс", task.getTitle(), referenceTimeMs, task.getTimeLimitMs());
+    }
+    
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+    
+    /**
+     * Проверяет название проверки вывода; exact хранится как null
+     */
+    private String checkerOf(String checker) {
+        OutputChecker.of(checker);
+        return checker == null || checker.isBlank() || "exact".equals(checker) ? null : checker;
+    }
+    
     private TaskResponse toResponse(Task task) {
         TaskResponse response = new TaskResponse();
         response.setId(task.getId());
@@ -164,6 +378,11 @@ public class TaskService {
         response.setDescription(task.getDescription());
         response.setCodeTemplate(task.getCodeTemplate());
         response.setXpReward(task.getXpReward());
+        response.setTimeLimitMs(judgeCalibration.timeLimitOf(task));
+        response.setReferenceTimeMs(task.getReferenceTimeMs());
+        response.setMemoryLimitKb(task.getMemoryLimitKb());
+        response.setOptimizedOnly(task.getOptimizedOnly());
+        response.setChecker(task.getChecker() != null ? task.getChecker() : "exact");
         response.setDifficulty(task.getDifficulty());
         response.setPublished(task.getPublished());
         response.setCreatedAt(task.getCreatedAt());
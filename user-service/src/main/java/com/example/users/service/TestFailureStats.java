@@ -0,0 +1,224 @@
+package com.example.users.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Частота падений тестов задач по прошлым проверкам (таблица task_test_stats).
+ * Неверные решения обычно падают на одних и тех же тестах, поэтому при проверке до первого
+ * непройденного теста тесты запускаются в порядке убывания доли падений: неверное решение
+ * останавливается раньше и тратит меньше процессорного времени.
+ * Счетчики ведутся в памяти по версии тестов (SHA-256 JSON) и дописываются в БД в фоне,
+ * раз в refresh-ms перечитываются из БД, чтобы учесть проверки других процессов
+ */
+@Component
+public class TestFailureStats {
+    
+    private static final Logger log = LoggerFactory.getLogger(TestFailureStats.class);
+    private static final String LOAD_SQL = "SELECT test_index, runs, failures FROM task_test_stats "
+            + "WHERE test_suite_hash = ?";
+    // Без ON CONFLICT, которого нет в H2 профиля dev: сначала UPDATE, строки новых тестов вставляются
+    private static final String UPDATE_SQL = "UPDATE task_test_stats SET runs = runs + ?, failures = failures + ? "
+            + "WHERE test_suite_hash = ? AND test_index = ?";
+    private static final String INSERT_SQL = "INSERT INTO task_test_stats (test_suite_hash, test_index, runs, failures) "
+            + "VALUES (?, ?, ?, ?)";
+    private static final String FORGET_SQL = "DELETE FROM task_test_stats WHERE test_suite_hash = ?";
+    // Априорные запуски без падений: тест, упавший 1 раз из 1, не обгоняет упавший 50 раз из 100
+    private static final double PRIOR_RUNS = 2;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final JudgeExecutors executors;
+    private final boolean enabled;
+    private final int maxSuites;
+    private final long refreshMs;
+    private final AtomicLong reordered = new AtomicLong();
+    private final AtomicLong recorded = new AtomicLong();
+    
+    // Порядок доступа: первый элемент - давно не использованный
+    private final LinkedHashMap<String, SuiteStats> suites = new LinkedHashMap<>(16, 0.75f, true);
+    
+    public TestFailureStats(JdbcTemplate jdbcTemplate, JudgeExecutors executors,
+                            @Value("${app.judge.failure-order.enabled:true}") boolean enabled,
+                            @Value("${app.judge.failure-order.max-suites:256}") int maxSuites,
+                            @Value("${app.judge.failure-order.refresh-ms:300000}") long refreshMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.executors = executors;
+        this.enabled = enabled;
+        this.maxSuites = Math.max(maxSuites, 1);
+        this.refreshMs = refreshMs;
+    }
+    
+    /**
+     * Счетчики тестов одной версии
+     */
+    private static class SuiteStats {
+        final AtomicLongArray runs;
+        final AtomicLongArray failures;
+        final long loadedAt;
+        
+        SuiteStats(int tests, long loadedAt) {
+            this.runs = new AtomicLongArray(tests);
+            this.failures = new AtomicLongArray(tests);
+            this.loadedAt = loadedAt;
+        }
+    }
+    
+    /**
+     * Порядок запуска тестов: сначала с большей долей падений failures / (runs + PRIOR_RUNS),
+     * при равенстве - в исходном порядке. Доля, а не число падений: тесты после первого непройденного
+     * не запускаются, поэтому у первых тестов набора падений больше просто из-за большего числа запусков
+     * @param indexes номера тестов в исходном порядке
+     * @return те же номера в порядке запуска или indexes, если статистики нет
+     */
+    public List<Integer> order(String suiteHash, List<Integer> indexes, int testCount) {
+        if (!enabled || indexes.size() < 2) {
+            return indexes;
+        }
+        SuiteStats stats = statsOf(suiteHash, testCount);
+        if (stats == null) {
+            return indexes;
+        }
+        List<Integer> order = new ArrayList<>(indexes);
+        order.sort(Comparator.comparingDouble((Integer index) -> -failureRate(stats, index)));
+        if (!order.equals(indexes)) {
+            reordered.incrementAndGet();
+        }
+        return order;
+    }
+    
+    private static double failureRate(SuiteStats stats, int index) {
+        return stats.failures.get(index) / (stats.runs.get(index) + PRIOR_RUNS);
+    }
+    
+    /**
+     * Учитывает результаты проверки; тесты, которые не запускались, не считаются
+     * @param results результаты всех тестов в исходном порядке
+     */
+    public void record(String suiteHash, List<CodeExecutionService.TestExecutionResult> results) {
+        if (!enabled || suiteHash == null || results.isEmpty()) {
+            return;
+        }
+        SuiteStats stats = statsOf(suiteHash, results.size());
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            CodeExecutionService.TestExecutionResult result = results.get(i);
+            if (result.usage == null) {
+                continue;
+            }
+            int failed = result.passed ? 0 : 1;
+            if (stats != null) {
+                stats.runs.incrementAndGet(i);
+                stats.failures.addAndGet(i, failed);
+            }
+            batch.add(new Object[]{1, failed, suiteHash, i});
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        recorded.incrementAndGet();
+        // Запись в БД не задерживает вердикт
+        executors.ioExecutor().submit(() -> {
+            try {
+                save(batch);
+            } catch (RuntimeException e) {
+                log.warn("Не удалось сохранить статистику падений тестов: {}", e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * Добавляет счетчики к строкам task_test_stats, создавая недостающие.
+     * Выполняется вне транзакции, поэтому одновременная вставка той же строки другим процессом
+     * просто повторяется как UPDATE
+     * @param batch строки {runs, failures, test_suite_hash, test_index}
+     */
+    private void save(List<Object[]> batch) {
+        int[] updated = jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] != 0) {
+                continue;
+            }
+            Object[] row = batch.get(i);
+            try {
+                jdbcTemplate.update(INSERT_SQL, row[2], row[3], row[0], row[1]);
+            } catch (DuplicateKeyException e) {
+                jdbcTemplate.update(UPDATE_SQL, row);
+            }
+        }
+    }
+    
+    /**
+     * Удаляет статистику версии тестов, которая больше не используется
+     */
+    public void forget(String suiteHash) {
+        synchronized (this) {
+            suites.remove(suiteHash);
+        }
+        jdbcTemplate.update(FORGET_SQL, suiteHash);
+    }
+    
+    /**
+     * Статистика порядка запуска
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (this) {
+            stats.put("suites", suites.size());
+        }
+        stats.put("reorderedRuns", reordered.get());
+        stats.put("recordedChecks", recorded.get());
+        return stats;
+    }
+    
+    /**
+     * Счетчики версии тестов; при первом обращении и по истечении refresh-ms читаются из БД
+     * @return null, если статистику не удалось прочитать
+     */
+    private SuiteStats statsOf(String suiteHash, int testCount) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            SuiteStats stats = suites.get(suiteHash);
+            if (stats != null && stats.runs.length() == testCount && now - stats.loadedAt < refreshMs) {
+                return stats;
+            }
+        }
+        
+        // Читаем вне блокировки; параллельная загрузка той же версии дает те же счетчики
+        SuiteStats loaded = new SuiteStats(testCount, now);
+        try {
+            jdbcTemplate.query(LOAD_SQL, rs -> {
+                int index = rs.getInt("test_index");
+                if (index < testCount) {
+                    loaded.runs.set(index, rs.getLong("runs"));
+                    loaded.failures.set(index, rs.getLong("failures"));
+                }
+            }, suiteHash);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось прочитать статистику падений тестов: {}", e.getMessage());
+            return null;
+        }
+        synchronized (this) {
+            suites.put(suiteHash, loaded);
+            Iterator<SuiteStats> iterator = suites.values().iterator();
+            while (suites.size() > maxSuites && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return loaded;
+    }
+}
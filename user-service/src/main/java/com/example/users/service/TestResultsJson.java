@@ -0,0 +1,361 @@
+package com.example.users.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * JSON с результатами тестов попытки, который показывает веб-клиент.
+ * Пишется потоковым JsonGenerator в переиспользуемый буфер, без промежуточных строк на каждое поле.
+ * Порядок и набор полей те же, что у прежнего формирования через StringBuilder.
+ * Для хранения есть компактный формат (см. {@link #writeCompact}), который разворачивается в полный при чтении
+ */
+public final class TestResultsJson {
+    
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final int POOL_SIZE = 16;
+    private static final int MAX_POOLED_BUFFER = 1 << 20; // Буферы больше 1 МБ не держим в пуле
+    private static final BlockingQueue<Buffer> buffers = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final int COMPACT_FORMAT = 2;
+    
+    private TestResultsJson() {
+    }
+    
+    /**
+     * Результат одного теста в том виде, в каком он попадает в JSON
+     */
+    public static class TestEntry {
+        public final int testNumber;
+        public final boolean passed;
+        public final String input;
+        public final String expected;
+        public final String actual;
+        public final String error; // null - поле не пишется
+        public final long cpuTimeMs; // Отрицательное значение - поле не пишется
+        public final long wallTimeMs;
+        public final long memoryKb;
+        
+        public TestEntry(int testNumber, boolean passed, String input, String expected, String actual,
+                         String error, long cpuTimeMs, long wallTimeMs, long memoryKb) {
+            this.testNumber = testNumber;
+            this.passed = passed;
+            this.input = input;
+            this.expected = expected;
+            this.actual = actual;
+            this.error = error;
+            this.cpuTimeMs = cpuTimeMs;
+            this.wallTimeMs = wallTimeMs;
+            this.memoryKb = memoryKb;
+        }
+        
+        /**
+         * Результат запуска теста с номером testNumber (с единицы)
+         */
+        public static TestEntry of(int testNumber, CodeExecutionService.TestExecutionResult result) {
+            ResourceRunner.Usage usage = result.usage;
+            return new TestEntry(testNumber, result.passed, result.input, result.expectedOutput,
+                    result.actualOutput, result.errorMessage,
+                    usage != null ? usage.cpuTimeMs : -1,
+                    usage != null ? usage.wallTimeMs : -1,
+                    usage != null ? usage.memoryKb : -1);
+        }
+        
+        /**
+         * Непройденный тест без запуска программы: ошибка компиляции или системы
+         */
+        public static TestEntry failed(int testNumber, String input, String expected, String error) {
+            return new TestEntry(testNumber, false, input, expected, "", error, -1, -1, -1);
+        }
+    }
+    
+    /**
+     * JSON со всеми результатами проверки
+     */
+    public static String write(List<CodeExecutionService.TestExecutionResult> results) {
+        List<TestEntry> entries = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            entries.add(TestEntry.of(i + 1, results.get(i)));
+        }
+        return writeEntries(entries);
+    }
+    
+    /**
+     * JSON с одним результатом, например для ошибки компиляции
+     */
+    public static String write(TestEntry entry) {
+        return writeEntries(List.of(entry));
+    }
+    
+    /**
+     * JSON с готовыми результатами, например развернутыми из компактного формата
+     */
+    public static String writeEntries(List<TestEntry> entries) {
+        Buffer buffer = borrow();
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("tests");
+            for (TestEntry entry : entries) {
+                writeEntry(generator, entry);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+            return buffer.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(buffer);
+        }
+    }
+    
+    /**
+     * Результат теста в компактном формате: без входных данных и ожидаемого вывода,
+     * которые есть в тестах задачи, и с началом полученного вывода вместо всего вывода
+     */
+    public static class CompactTest {
+        public final boolean passed;
+        public final String actual; // Начало полученного вывода; null - совпал с ожидаемым
+        public final boolean actualTruncated;
+        public final String error; // Сообщение, кроме неверного ответа
+        public final String wrongAnswerDetail; // Неверный ответ: сообщение собирается заново
+        public final long cpuTimeMs;
+        public final long wallTimeMs;
+        public final long memoryKb;
+        
+        public CompactTest(boolean passed, String actual, boolean actualTruncated, String error,
+                           String wrongAnswerDetail, long cpuTimeMs, long wallTimeMs, long memoryKb) {
+            this.passed = passed;
+            this.actual = actual;
+            this.actualTruncated = actualTruncated;
+            this.error = error;
+            this.wrongAnswerDetail = wrongAnswerDetail;
+            this.cpuTimeMs = cpuTimeMs;
+            this.wallTimeMs = wallTimeMs;
+            this.memoryKb = memoryKb;
+        }
+    }
+    
+    /**
+     * Результаты в компактном формате и версия тестов, на которую они ссылаются
+     */
+    public static class CompactResults {
+        public final String testSuiteHash;
+        public final List<CompactTest> tests;
+        
+        CompactResults(String testSuiteHash, List<CompactTest> tests) {
+            this.testSuiteHash = testSuiteHash;
+            this.tests = tests;
+        }
+    }
+    
+    /**
+     * Компактный JSON для хранения: {"format":2,"suite":"...","tests":[...]}.
+     * i-й результат относится к i-му тесту версии testSuiteHash; пройденный тест хранит только время и память,
+     * непройденный - сообщение и не больше maxActualChars символов полученного вывода
+     */
+    public static String writeCompact(List<CodeExecutionService.TestExecutionResult> results, String testSuiteHash,
+                                      int maxActualChars) {
+        Buffer buffer = borrow();
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            generator.writeStartObject();
+            generator.writeNumberField("format", COMPACT_FORMAT);
+            generator.writeStringField("suite", testSuiteHash);
+            generator.writeArrayFieldStart("tests");
+            for (CodeExecutionService.TestExecutionResult result : results) {
+                generator.writeStartObject();
+                generator.writeBooleanField("passed", result.passed);
+                String actual = nullToEmpty(result.actualOutput);
+                // У пройденного теста вывод обычно совпадает с ожидаемым, кроме проверок с погрешностью
+                if (!result.passed || !actual.equals(result.expectedOutput)) {
+                    int length = prefixLength(actual, maxActualChars);
+                    generator.writeStringField("actual", actual.substring(0, length));
+                    if (length < actual.length()) {
+                        generator.writeBooleanField("truncated", true);
+                    }
+                }
+                if (!result.passed) {
+                    if (result.wrongAnswerDetail != null) {
+                        generator.writeStringField("wrongAnswer", result.wrongAnswerDetail);
+                    } else if (result.errorMessage != null) {
+                        generator.writeStringField("error", result.errorMessage);
+                    }
+                }
+                if (result.usage != null) {
+                    writeUsage(generator, "cpuTimeMs", result.usage.cpuTimeMs);
+                    writeUsage(generator, "wallTimeMs", result.usage.wallTimeMs);
+                    writeUsage(generator, "memoryKb", result.usage.memoryKb);
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+            return buffer.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(buffer);
+        }
+    }
+    
+    /**
+     * Разбирает компактный формат
+     * @return null, если json в полном формате
+     */
+    public static CompactResults readCompact(String json) {
+        if (json == null || !json.startsWith("{\"format\":" + COMPACT_FORMAT + ",")) {
+            return null;
+        }
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            String testSuiteHash = null;
+            List<CompactTest> tests = new ArrayList<>();
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("suite".equals(field)) {
+                    testSuiteHash = parser.getValueAsString();
+                } else if ("tests".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        tests.add(readCompactTest(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new CompactResults(testSuiteHash, tests);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static CompactTest readCompactTest(JsonParser parser) throws IOException {
+        boolean passed = false;
+        String actual = null;
+        boolean truncated = false;
+        String error = null;
+        String wrongAnswer = null;
+        long cpuTimeMs = -1;
+        long wallTimeMs = -1;
+        long memoryKb = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("passed".equals(field)) {
+                passed = parser.getBooleanValue();
+            } else if ("actual".equals(field)) {
+                actual = parser.getText();
+            } else if ("truncated".equals(field)) {
+                truncated = parser.getBooleanValue();
+            } else if ("error".equals(field)) {
+                error = parser.getText();
+            } else if ("wrongAnswer".equals(field)) {
+                wrongAnswer = parser.getText();
+            } else if ("cpuTimeMs".equals(field)) {
+                cpuTimeMs = parser.getLongValue();
+            } else if ("wallTimeMs".equals(field)) {
+                wallTimeMs = parser.getLongValue();
+            } else if ("memoryKb".equals(field)) {
+                memoryKb = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new CompactTest(passed, actual, truncated, error, wrongAnswer, cpuTimeMs, wallTimeMs, memoryKb);
+    }
+    
+    // Не разрезаем суррогатную пару на границе
+    private static int prefixLength(String text, int maxChars) {
+        if (text.length() <= maxChars) {
+            return text.length();
+        }
+        int length = Math.max(maxChars, 0);
+        if (length > 0 && Character.isHighSurrogate(text.charAt(length - 1))) {
+            length--;
+        }
+        return length;
+    }
+    
+    private static void writeEntry(JsonGenerator generator, TestEntry entry) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("testNumber", entry.testNumber);
+        generator.writeBooleanField("passed", entry.passed);
+        generator.writeStringField("input", nullToEmpty(entry.input));
+        generator.writeStringField("expected", nullToEmpty(entry.expected));
+        generator.writeStringField("actual", nullToEmpty(entry.actual));
+        if (entry.error != null) {
+            generator.writeStringField("error", entry.error);
+        }
+        writeUsage(generator, "cpuTimeMs", entry.cpuTimeMs);
+        writeUsage(generator, "wallTimeMs", entry.wallTimeMs);
+        writeUsage(generator, "memoryKb", entry.memoryKb);
+        generator.writeEndObject();
+    }
+    
+    private static void writeUsage(JsonGenerator generator, String name, long value) throws IOException {
+        if (value >= 0) {
+            generator.writeNumberField(name, value);
+        }
+    }
+    
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+    
+    // Проверки идут на виртуальных потоках, поэтому буферы держим в общем пуле, а не в ThreadLocal
+    private static Buffer borrow() {
+        Buffer buffer = buffers.poll();
+        return buffer != null ? buffer : new Buffer();
+    }
+    
+    private static void release(Buffer buffer) {
+        if (buffer.text.capacity() <= MAX_POOLED_BUFFER) {
+            buffer.text.setLength(0);
+            buffers.offer(buffer);
+        }
+    }
+    
+    /**
+     * Writer поверх StringBuilder: в отличие от StringWriter без синхронизации на каждую запись
+     */
+    private static class Buffer extends Writer {
+        private final StringBuilder text = new StringBuilder(1024);
+        
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            text.append(chars, offset, length);
+        }
+        
+        @Override
+        public void write(String string, int offset, int length) {
+            text.append(string, offset, offset + length);
+        }
+        
+        @Override
+        public void write(int c) {
+            text.append((char) c);
+        }
+        
+        @Override
+        public void flush() {
+        }
+        
+        @Override
+        public void close() {
+        }
+        
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.users.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Хранение результатов тестов попыток.
+ * Входные данные и ожидаемый вывод уже есть в тестах задачи, поэтому в submissions.test_results
+ * сохраняются ссылки на тесты по номеру и начало полученного вывода для непройденных тестов.
+ * При чтении результаты разворачиваются в прежний формат API по тестам задачи.
+ * Результаты, сохраненные в полном формате, возвращаются как есть
+ */
+@Component
+public class TestResultsStorage {
+    
+    private static final Logger log = LoggerFactory.getLogger(TestResultsStorage.class);
+    private static final String CHANGED_TEST = "(тест изменен после проверки)";
+    private static final String TRUNCATED = "... (обрезано)";
+    
+    private final TestSuiteCache testSuiteCache;
+    private final boolean compact;
+    private final int maxActualChars;
+    
+    public TestResultsStorage(TestSuiteCache testSuiteCache,
+                              @Value("${app.judge.results.compact:true}") boolean compact,
+                              @Value("${app.judge.results.actual-prefix-chars:1000}") int maxActualChars) {
+        this.testSuiteCache = testSuiteCache;
+        this.compact = compact;
+        this.maxActualChars = maxActualChars;
+    }
+    
+    /**
+     * JSON результатов для сохранения в попытке
+     */
+    public String store(CodeExecutionService.CodeCheckResult result) {
+        if (!compact || result.testSuiteHash == null) {
+            return TestResultsJson.write(result.testResults);
+        }
+        return TestResultsJson.writeCompact(result.testResults, result.testSuiteHash, maxActualChars);
+    }
+    
+    /**
+     * Результаты в формате API.
+     * Если тесты задачи изменились после проверки, входные данные и ожидаемый вывод не восстанавливаются
+     * @param testCasesJson текущие тесты задачи
+     */
+    public String expand(String stored, String testCasesJson) {
+        TestResultsJson.CompactResults results;
+        try {
+            results = TestResultsJson.readCompact(stored);
+        } catch (UncheckedIOException e) {
+            log.warn("Не удалось разобрать сохраненные результаты тестов: {}", e.getMessage());
+            return stored;
+        }
+        if (results == null) {
+            return stored;
+        }
+        
+        TestSuiteCache.TestSuite suite = testSuiteCache.acquire(testCasesJson != null ? testCasesJson : "");
+        try {
+            boolean sameTests = suite.hash.equals(results.testSuiteHash);
+            List<TestResultsJson.TestEntry> entries = new ArrayList<>(results.tests.size());
+            for (int i = 0; i < results.tests.size(); i++) {
+                TestSuiteCache.TestCase testCase = sameTests && i < suite.testCases.size()
+                        ? suite.testCases.get(i)
+                        : null;
+                entries.add(entryOf(i + 1, results.tests.get(i), testCase));
+            }
+            return TestResultsJson.writeEntries(entries);
+        } finally {
+            testSuiteCache.release(suite);
+        }
+    }
+    
+    /**
+     * Восстанавливает результат так же, как его формирует CodeExecutionService:
+     * у пройденного теста и неверного ответа ожидаемый вывод приведен, у остальных ошибок - как в тесте
+     */
+    private TestResultsJson.TestEntry entryOf(int testNumber, TestResultsJson.CompactTest test,
+                                              TestSuiteCache.TestCase testCase) {
+        String input = testCase != null ? testCase.inputPreview() : CHANGED_TEST;
+        String expected = testCase != null ? testCase.expectedOutput : CHANGED_TEST;
+        if (test.passed || test.wrongAnswerDetail != null) {
+            expected = ExactOutputChecker.normalize(expected);
+        }
+        String actual;
+        if (test.actual == null) {
+            actual = expected;
+        } else {
+            actual = test.actualTruncated ? test.actual + TRUNCATED : test.actual;
+        }
+        String error = test.wrongAnswerDetail != null
+                ? CodeExecutionService.wrongAnswerMessage(expected, actual, test.wrongAnswerDetail)
+                : test.error;
+        return new TestResultsJson.TestEntry(testNumber, test.passed, input, expected, actual, error,
+                test.cpuTimeMs, test.wallTimeMs, test.memoryKb);
+    }
+}
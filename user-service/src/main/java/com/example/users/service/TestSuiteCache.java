@@ -0,0 +1,320 @@
+package com.example.users.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Разобранные тесты задач.
+ * JSON с тестами разбирается потоковым парсером один раз на версию тестов (ключ - SHA-256 JSON).
+ * Небольшие входные данные хранятся в памяти в UTF-8, большие записываются в файлы
+ * и передаются программе потоком, без копий в куче
+ */
+@Component
+public class TestSuiteCache {
+    
+    private static final Logger log = LoggerFactory.getLogger(TestSuiteCache.class);
+    private static final int INPUT_PREVIEW_CHARS = 1000;
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    
+    private final int maxSuites;
+    private final int inlineInputBytes;
+    private Path storageDir;
+    private final AtomicLong suiteCounter = new AtomicLong();
+    
+    // Порядок доступа: первый элемент - давно не использованный
+    private final LinkedHashMap<String, TestSuite> suites = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    
+    public TestSuiteCache(@Value("${app.judge.test-cache.max-suites:64}") int maxSuites,
+                          @Value("${app.judge.test-cache.inline-input-bytes:65536}") int inlineInputBytes,
+                          @Value("${app.judge.test-cache.dir:}") String dir) {
+        this.maxSuites = Math.max(maxSuites, 1);
+        this.inlineInputBytes = inlineInputBytes;
+        this.storageDir = dir.isBlank()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "code_exec_tests")
+                : Paths.get(dir);
+        prepareStorageDir();
+    }
+    
+    /**
+     * Тесты одной версии задачи
+     */
+    public static class TestSuite {
+        public final String hash;
+        public final List<TestCase> testCases;
+        public final List<Integer> sampleIndexes; // Номера тестов-примеров в testCases
+        private final Path dir; // null, если все входные данные в памяти
+        private int users;
+        private boolean evicted;
+        
+        TestSuite(String hash, List<TestCase> testCases, Path dir) {
+            this.hash = hash;
+            this.testCases = Collections.unmodifiableList(testCases);
+            List<Integer> samples = new ArrayList<>();
+            for (int i = 0; i < testCases.size(); i++) {
+                if (testCases.get(i).sample) {
+                    samples.add(i);
+                }
+            }
+            this.sampleIndexes = Collections.unmodifiableList(samples);
+            this.dir = dir;
+        }
+    }
+    
+    /**
+     * Тестовый случай.
+     * Входные данные хранятся либо в памяти, либо в файле
+     */
+    public static class TestCase {
+        public final String expectedOutput;
+        public final long inputSize;
+        public final boolean sample; // Тест-пример: запускается первым и дает предварительный вердикт
+        private final byte[] input;
+        private final Path inputFile;
+        
+        TestCase(byte[] input, Path inputFile, long inputSize, String expectedOutput, boolean sample) {
+            this.input = input;
+            this.inputFile = inputFile;
+            this.inputSize = inputSize;
+            this.expectedOutput = expectedOutput;
+            this.sample = sample;
+        }
+        
+        /**
+         * Поток входных данных для stdin программы
+         */
+        public InputStream openInput() throws IOException {
+            return input != null ? new ByteArrayInputStream(input) : Files.newInputStream(inputFile);
+        }
+        
+        /**
+         * Файл с входными данными; данные из памяти записываются в scratch
+         */
+        public Path inputFile(Path scratch) throws IOException {
+            if (input == null) {
+                return inputFile;
+            }
+            Files.write(scratch, input);
+            return scratch;
+        }
+
+        /**
+         * Входные данные для отчета: большие входные данные обрезаются
+         */
+        public String inputPreview() {
+            if (input != null) {
+                return new String(input, StandardCharsets.UTF_8);
+            }
+            char[] buffer = new char[INPUT_PREVIEW_CHARS];
+            try (Reader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8)) {
+                int read = reader.read(buffer);
+                return new String(buffer, 0, Math.max(read, 0)) + "... (обрезано, всего " + inputSize + " байт)";
+            } catch (IOException e) {
+                return "(входные данные " + inputSize + " байт)";
+            }
+        }
+    }
+    
+    /**
+     * Возвращает разобранные тесты и помечает их используемыми до вызова {@link #release}
+     */
+    public TestSuite acquire(String testCasesJson) {
+        String hash = Sha256.hex(testCasesJson);
+        synchronized (this) {
+            TestSuite suite = suites.get(hash);
+            if (suite != null) {
+                hits++;
+                suite.users++;
+                return suite;
+            }
+            misses++;
+        }
+        
+        // Разбираем вне блокировки; параллельный разбор тех же тестов пишет в свою директорию
+        TestSuite parsed = parse(hash, testCasesJson);
+        synchronized (this) {
+            TestSuite existing = suites.get(hash);
+            if (existing != null) {
+                deleteFiles(parsed);
+                existing.users++;
+                return existing;
+            }
+            parsed.users++;
+            suites.put(hash, parsed);
+            evictIfNeeded();
+            return parsed;
+        }
+    }
+    
+    /**
+     * Освобождает тесты; файлы вытесненных тестов удаляются после последнего использования
+     */
+    public void release(TestSuite suite) {
+        boolean delete;
+        synchronized (this) {
+            suite.users--;
+            delete = suite.evicted && suite.users == 0;
+        }
+        if (delete) {
+            deleteFiles(suite);
+        }
+    }
+    
+    /**
+     * Статистика кэша
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("suites", suites.size());
+        stats.put("maxSuites", maxSuites);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        return stats;
+    }
+    
+    /**
+     * Потоковый разбор {"tests":[{"input":"...","output":"...","sample":true}, ...]}, sample необязателен.
+     * Ошибка разбора дает пустой набор тестов
+     */
+    private TestSuite parse(String hash, String testCasesJson) {
+        List<TestCase> testCases = new ArrayList<>();
+        if (testCasesJson == null || testCasesJson.trim().isEmpty()) {
+            log.warn("JSON с тестовыми случаями пуст");
+            return new TestSuite(hash, testCases, null);
+        }
+        
+        Path dir = storageDir.resolve(hash + "_" + suiteCounter.incrementAndGet());
+        boolean hasFiles = false;
+        try (JsonParser parser = jsonFactory.createParser(testCasesJson)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                log.warn("Тестовые случаи не найдены в JSON или не являются массивом");
+                return new TestSuite(hash, testCases, null);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (!"tests".equals(field) || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    TestCase testCase = parseTestCase(parser, dir, testCases.size());
+                    hasFiles |= testCase.inputFile != null;
+                    testCases.add(testCase);
+                }
+            }
+            log.debug("Распарсено {} тестовых случаев", testCases.size());
+        } catch (Exception e) {
+            log.error("Ошибка парсинга тестовых случаев: " + e.getMessage(), e);
+            deleteRecursively(dir);
+            return new TestSuite(hash, new ArrayList<>(), null);
+        }
+        return new TestSuite(hash, testCases, hasFiles ? dir : null);
+    }
+    
+    private TestCase parseTestCase(JsonParser parser, Path dir, int index) throws IOException {
+        byte[] input = new byte[0];
+        Path inputFile = null;
+        long inputSize = 0;
+        String output = "";
+        boolean sample = false;
+        
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("input".equals(field) && value.isScalarValue()) {
+                if (parser.getTextLength() > inlineInputBytes) {
+                    // Большие входные данные пишем в файл прямо из буфера парсера
+                    Files.createDirectories(dir);
+                    inputFile = dir.resolve("input_" + index);
+                    try (Writer writer = Files.newBufferedWriter(inputFile, StandardCharsets.UTF_8)) {
+                        parser.getText(writer);
+                    }
+                    input = null;
+                    inputSize = Files.size(inputFile);
+                } else {
+                    input = parser.getText().getBytes(StandardCharsets.UTF_8);
+                    inputSize = input.length;
+                }
+            } else if ("output".equals(field) && value.isScalarValue()) {
+                output = parser.getText();
+            } else if ("sample".equals(field) && value.isBoolean()) {
+                sample = parser.getBooleanValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new TestCase(input, inputFile, inputSize, output, sample);
+    }
+    
+    private void evictIfNeeded() {
+        Iterator<TestSuite> iterator = suites.values().iterator();
+        while (suites.size() > maxSuites && iterator.hasNext()) {
+            TestSuite eldest = iterator.next();
+            iterator.remove();
+            eldest.evicted = true;
+            if (eldest.users == 0) {
+                deleteFiles(eldest);
+            }
+        }
+    }
+    
+    private void deleteFiles(TestSuite suite) {
+        if (suite.dir != null) {
+            deleteRecursively(suite.dir);
+        }
+    }
+    
+    private void deleteRecursively(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить файл тестов: {}", file, e);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Ошибка при удалении файлов тестов", e);
+        }
+    }
+    
+    /**
+     * Входные данные пишутся в поддиректорию этого процесса; данные завершившихся процессов удаляются
+     */
+    private void prepareStorageDir() {
+        try {
+            storageDir = ProcessDirectories.of(storageDir);
+        } catch (IOException e) {
+            log.warn("Не удалось подготовить директорию тестов {}", storageDir, e);
+        }
+    }
+}
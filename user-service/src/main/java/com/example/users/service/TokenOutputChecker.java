@@ -0,0 +1,146 @@
+package com.example.users.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Сравнение вывода по токенам: любые последовательности пробельных символов равнозначны.
+ * С ненулевой точностью числа сравниваются с абсолютной или относительной погрешностью
+ */
+class TokenOutputChecker implements OutputChecker {
+    
+    static final double DEFAULT_EPSILON = 1e-6;
+    private static final int MAX_NUMBER_LENGTH = 64; // Более длинный токен не считается числом
+    private static final Pattern NUMBER = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+    
+    private final double epsilon; // 0 - числа сравниваются как текст
+    
+    TokenOutputChecker(double epsilon) {
+        this.epsilon = epsilon;
+    }
+    
+    @Override
+    public Comparison start(String expectedOutput) {
+        return new TokenComparison(expectedOutput.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private class TokenComparison implements Comparison {
+        private final byte[] expected;
+        private int position; // Позиция в ожидаемом выводе
+        private boolean inToken;
+        private int tokenStart; // Начало текущего ожидаемого токена
+        private int tokenEnd;
+        private boolean numeric; // Текущий ожидаемый токен - число, сравниваем с погрешностью
+        private final byte[] number = new byte[MAX_NUMBER_LENGTH];
+        private int numberLength;
+        private int tokenIndex;
+        private String mismatch;
+        
+        TokenComparison(byte[] expected) {
+            this.expected = expected;
+        }
+        
+        @Override
+        public boolean accept(byte[] buffer, int length) {
+            for (int i = 0; i < length && mismatch == null; i++) {
+                int c = buffer[i] & 0xFF;
+                if (ExactOutputChecker.isWhitespace(c)) {
+                    if (inToken) {
+                        endToken();
+                    }
+                } else {
+                    if (!inToken) {
+                        startToken();
+                    }
+                    if (mismatch == null) {
+                        acceptByte(c);
+                    }
+                }
+            }
+            return mismatch == null;
+        }
+        
+        @Override
+        public boolean finish() {
+            if (mismatch == null && inToken) {
+                endToken();
+            }
+            if (mismatch == null && nextTokenStart() < expected.length) {
+                mismatch = String.format("Вывод закончился на токене %d, ожидались еще токены", tokenIndex + 1);
+            }
+            return mismatch == null;
+        }
+        
+        @Override
+        public String mismatch() {
+            return mismatch;
+        }
+        
+        private void startToken() {
+            tokenIndex++;
+            tokenStart = nextTokenStart();
+            if (tokenStart == expected.length) {
+                mismatch = String.format("Лишний токен %d в выводе", tokenIndex);
+                return;
+            }
+            tokenEnd = tokenStart;
+            while (tokenEnd < expected.length && !ExactOutputChecker.isWhitespace(expected[tokenEnd] & 0xFF)) {
+                tokenEnd++;
+            }
+            numeric = epsilon > 0 && tokenEnd - tokenStart <= MAX_NUMBER_LENGTH
+                    && NUMBER.matcher(new String(expected, tokenStart, tokenEnd - tokenStart,
+                            StandardCharsets.US_ASCII)).matches();
+            position = tokenStart;
+            numberLength = 0;
+            inToken = true;
+        }
+        
+        private void acceptByte(int c) {
+            if (numeric) {
+                if (numberLength == MAX_NUMBER_LENGTH) {
+                    mismatch = tokenMismatch();
+                    return;
+                }
+                number[numberLength++] = (byte) c;
+            } else if (position < tokenEnd && (expected[position] & 0xFF) == c) {
+                position++;
+            } else {
+                mismatch = tokenMismatch();
+            }
+        }
+        
+        private void endToken() {
+            inToken = false;
+            boolean equal = numeric ? numbersEqual() : position == tokenEnd;
+            if (!equal) {
+                mismatch = tokenMismatch();
+            }
+            position = tokenEnd;
+        }
+        
+        private boolean numbersEqual() {
+            String actualText = new String(number, 0, numberLength, StandardCharsets.US_ASCII);
+            if (!NUMBER.matcher(actualText).matches()) {
+                return false;
+            }
+            double actual = Double.parseDouble(actualText);
+            double expectedValue = Double.parseDouble(
+                    new String(expected, tokenStart, tokenEnd - tokenStart, StandardCharsets.US_ASCII));
+            double difference = Math.abs(actual - expectedValue);
+            return difference <= epsilon || difference <= epsilon * Math.abs(expectedValue);
+        }
+        
+        private int nextTokenStart() {
+            int next = position;
+            while (next < expected.length && ExactOutputChecker.isWhitespace(expected[next] & 0xFF)) {
+                next++;
+            }
+            return next;
+        }
+        
+        private String tokenMismatch() {
+            return String.format("Токен %d: ожидалось '%s'", tokenIndex,
+                    new String(expected, tokenStart, Math.min(tokenEnd - tokenStart, 100), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.users.service;
+
+import com.example.users.model.Submission;
+import com.example.users.repository.SubmissionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш вердиктов для пар (код, тесты).
+ * Решение с тем же кодом и теми же тестами получает сохраненный ранее вердикт без запуска процессов.
+ * В памяти хранится ограниченное число последних вердиктов, остальные находятся по хэшам в таблице submissions
+ */
+@Component
+public class VerdictCache {
+    
+    private static final Logger log = LoggerFactory.getLogger(VerdictCache.class);
+    
+    private final SubmissionRepository submissionRepository;
+    private final boolean enabled;
+    private final Map<String, Verdict> entries;
+    private long memoryHits;
+    private long databaseHits;
+    private long misses;
+    
+    public VerdictCache(SubmissionRepository submissionRepository,
+                        @Value("${app.judge.verdict-cache.enabled:true}") boolean enabled,
+                        @Value("${app.judge.verdict-cache.max-entries:10000}") int maxEntries) {
+        this.submissionRepository = submissionRepository;
+        this.enabled = enabled;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+    
+    /**
+     * Сохраненный вердикт проверки
+     */
+    public static class Verdict {
+        public final String testCasesHash;
+        public final Submission.Status status;
+        public final int testsPassed;
+        public final int testsTotal;
+        public final String errorMessage;
+        public final String testResultsJson;
+        public final Long maxCpuTimeMs;
+        public final Long maxWallTimeMs;
+        public final Long maxMemoryKb;
+        
+        public Verdict(String testCasesHash, Submission.Status status, int testsPassed, int testsTotal,
+                       String errorMessage, String testResultsJson,
+                       Long maxCpuTimeMs, Long maxWallTimeMs, Long maxMemoryKb) {
+            this.testCasesHash = testCasesHash;
+            this.status = status;
+            this.testsPassed = testsPassed;
+            this.testsTotal = testsTotal;
+            this.errorMessage = errorMessage;
+            this.testResultsJson = testResultsJson;
+            this.maxCpuTimeMs = maxCpuTimeMs;
+            this.maxWallTimeMs = maxWallTimeMs;
+            this.maxMemoryKb = maxMemoryKb;
+        }
+    }
+    
+    /**
+     * Хэш кода решения или JSON с тестами
+     */
+    public static String hashOf(String text) {
+        return Sha256.hex(text);
+    }
+    
+    /**
+     * Хэш условий проверки: тестов, ограничений задачи и проверки вывода.
+     * Без ограничений и с точным сравнением совпадает с хэшем тестов
+     */
+    public static String testsHashOf(String testCases, CodeExecutionService.Limits limits) {
+        boolean exact = limits.checker == null || limits.checker.isBlank() || "exact".equals(limits.checker);
+        if (limits.timeLimitMs == null && limits.memoryLimitKb == null && exact) {
+            return hashOf(testCases);
+        }
+        if (exact) {
+            return Sha256.hex(testCases, "time=" + limits.timeLimitMs, "memory=" + limits.memoryLimitKb);
+        }
+        return Sha256.hex(testCases, "time=" + limits.timeLimitMs, "memory=" + limits.memoryLimitKb,
+                "checker=" + limits.checker);
+    }
+    
+    /**
+     * Ищет вердикт сначала в памяти, затем среди сохраненных решений
+     * @return null, если такой код на этих тестах еще не проверялся
+     */
+    public Verdict lookup(String codeHash, String testCasesHash) {
+        if (!enabled) {
+            return null;
+        }
+        String key = keyOf(codeHash, testCasesHash);
+        synchronized (this) {
+            Verdict verdict = entries.get(key);
+            if (verdict != null) {
+                memoryHits++;
+                return verdict;
+            }
+        }
+        
+        Verdict stored = submissionRepository
+                .findFirstByCodeHashAndTestCasesHashAndReusableVerdictTrueOrderByCreatedAtDesc(codeHash, testCasesHash)
+                .map(submission -> new Verdict(testCasesHash, submission.getStatus(),
+                        submission.getTestsPassed(), submission.getTestsTotal(),
+                        submission.getErrorMessage(), submission.getTestResults(),
+                        submission.getMaxCpuTimeMs(), submission.getMaxWallTimeMs(), submission.getMaxMemoryKb()))
+                .orElse(null);
+        synchronized (this) {
+            if (stored == null) {
+                misses++;
+                return null;
+            }
+            databaseHits++;
+            entries.put(key, stored);
+        }
+        return stored;
+    }
+    
+    /**
+     * Запоминает вердикт
+     */
+    public synchronized void put(String codeHash, Verdict verdict) {
+        if (enabled) {
+            entries.put(keyOf(codeHash, verdict.testCasesHash), verdict);
+        }
+    }
+    
+    /**
+     * Забывает вердикты, полученные на старой версии тестов задачи
+     */
+    public synchronized void invalidateTestCases(String testCasesHash) {
+        int before = entries.size();
+        entries.values().removeIf(verdict -> verdict.testCasesHash.equals(testCasesHash));
+        log.debug("Удалено {} вердиктов для устаревших тестов", before - entries.size());
+    }
+    
+    /**
+     * Статистика кэша
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("memoryHits", memoryHits);
+        stats.put("databaseHits", databaseHits);
+        stats.put("misses", misses);
+        return stats;
+    }
+    
+    private String keyOf(String codeHash, String testCasesHash) {
+        return codeHash + ":" + testCasesHash;
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.users.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Пул рабочих директорий для компиляции и запуска решений.
+ * Директории создаются один раз при старте (по возможности в памяти, в /dev/shm) в поддиректории этого процесса,
+ * см. {@link ProcessDirectories}, и после проверки очищаются от файлов вместо удаления и повторного создания
+ */
+@Component
+public class WorkspacePool {
+    
+    private static final Logger log = LoggerFactory.getLogger(WorkspacePool.class);
+    private static final Path SHARED_MEMORY = Paths.get("/dev/shm");
+    
+    private Path root;
+    private final int poolSize;
+    private final BlockingQueue<Path> free;
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong overflowLeases = new AtomicLong();
+    
+    public WorkspacePool(@Value("${app.judge.workspace.root:}") String root,
+                         @Value("${app.judge.workspace.pool-size:8}") int poolSize) {
+        this.root = root.isBlank() ? defaultRoot() : Paths.get(root);
+        this.poolSize = poolSize;
+        this.free = new ArrayBlockingQueue<>(Math.max(poolSize, 1));
+        prepare();
+    }
+    
+    /**
+     * Выдает свободную рабочую директорию.
+     * Если пул исчерпан, создается временная директория, которая удаляется при возврате
+     */
+    public Path lease() throws IOException {
+        leases.incrementAndGet();
+        Path workspace = free.poll();
+        if (workspace != null) {
+            return workspace;
+        }
+        overflowLeases.incrementAndGet();
+        return Files.createDirectories(root.resolve("overflow_" + UUID.randomUUID()));
+    }
+    
+    /**
+     * Возвращает директорию в пул
+     */
+    public void release(Path workspace) {
+        if (!workspace.getFileName().toString().startsWith("ws_")) {
+            deleteRecursively(workspace);
+            return;
+        }
+        try {
+            reset(workspace);
+            free.offer(workspace);
+        } catch (IOException e) {
+            // Не удалось очистить быстро - пересоздаем директорию
+            log.warn("Не удалось очистить рабочую директорию {}: {}", workspace, e.getMessage());
+            deleteRecursively(workspace);
+            try {
+                free.offer(Files.createDirectories(workspace));
+            } catch (IOException createError) {
+                log.error("Не удалось пересоздать рабочую директорию {}", workspace, createError);
+            }
+        }
+    }
+    
+    /**
+     * Статистика пула
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("root", root.toString());
+        stats.put("size", poolSize);
+        stats.put("free", free.size());
+        stats.put("leases", leases.get());
+        stats.put("overflowLeases", overflowLeases.get());
+        return stats;
+    }
+    
+    /**
+     * Удаляет файлы верхнего уровня: решения пишут в директорию только плоские файлы
+     */
+    private void reset(Path workspace) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(workspace)) {
+            for (Path entry : entries) {
+                Files.delete(entry);
+            }
+        }
+    }
+    
+    private void prepare() {
+        try {
+            // Директории завершившихся процессов удаляются, директории других работающих процессов не трогаются
+            root = ProcessDirectories.of(root);
+            for (int i = 0; i < poolSize; i++) {
+                free.offer(Files.createDirectories(root.resolve("ws_" + i)));
+            }
+            log.info("Пул рабочих директорий: {}, размер {}", root, poolSize);
+        } catch (IOException e) {
+            log.error("Не удалось подготовить пул рабочих директорий в {}", root, e);
+        }
+    }
+    
+    private void deleteRecursively(Path path) {
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить файл: " + file, e);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Ошибка при очистке временных файлов", e);
+        }
+    }
+    
+    /**
+     * Директория в памяти, если она доступна и из нее можно запускать программы, иначе во временной директории системы
+     */
+    private static Path defaultRoot() {
+        if (Files.isDirectory(SHARED_MEMORY) && Files.isWritable(SHARED_MEMORY)) {
+            Path root = SHARED_MEMORY.resolve("code_exec");
+            if (canExecuteIn(root)) {
+                return root;
+            }
+            log.warn("Из {} нельзя запускать программы (noexec), рабочие директории создаются во временной директории",
+                    SHARED_MEMORY);
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"), "code_exec");
+    }
+    
+    /**
+     * Проверяет, что исполняемый файл в директории запускается: /dev/shm часто смонтирован с noexec
+     */
+    private static boolean canExecuteIn(Path dir) {
+        Path probe = null;
+        try {
+            Files.createDirectories(dir);
+            probe = Files.createTempFile(dir, "exec_probe", ".sh");
+            Files.writeString(probe, "#!/bin/sh\nexit 0\n");
+            Files.setPosixFilePermissions(probe, PosixFilePermissions.fromString("rwx------"));
+            Process process = new ProcessBuilder(probe.toString()).redirectErrorStream(true).start();
+            process.getInputStream().readAllBytes();
+            if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return false;
+            }
+            return process.exitValue() == 0;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            if (probe != null) {
+                try {
+                    Files.deleteIfExists(probe);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+-- Таблицы для профиля dev (H2, Flyway выключен): сущности создает Hibernate, а эти таблицы
+-- используются через JdbcTemplate и повторяют миграции V8, V10, V13 и V15 без частичных индексов PostgreSQL
+
+CREATE TABLE IF NOT EXISTS code_blobs (
+    hash VARCHAR(64) PRIMARY KEY,
+    content BYTEA NOT NULL,
+    compression VARCHAR(16) NOT NULL,
+    original_size INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS judge_jobs (
+    submission_id UUID PRIMARY KEY REFERENCES submissions(id) ON DELETE CASCADE,
+    degraded BOOLEAN NOT NULL DEFAULT false,
+    status VARCHAR(16) NOT NULL DEFAULT 'QUEUED',
+    worker_id VARCHAR(128),
+    attempts INTEGER NOT NULL DEFAULT 0,
+    claimed_at TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_judge_jobs_queued ON judge_jobs(status, created_at);
+CREATE INDEX IF NOT EXISTS idx_judge_jobs_worker ON judge_jobs(worker_id);
+
+CREATE TABLE IF NOT EXISTS judge_workers (
+    worker_id VARCHAR(128) PRIMARY KEY,
+    host VARCHAR(255),
+    slots INTEGER NOT NULL,
+    average_job_ms INTEGER,
+    started_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    heartbeat_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS task_test_stats (
+    test_suite_hash VARCHAR(64) NOT NULL,
+    test_index INTEGER NOT NULL,
+    runs BIGINT NOT NULL DEFAULT 0,
+    failures BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (test_suite_hash, test_index)
+);
@@ -0,0 +1,24 @@
+-- Очередь проверки в БД для отдельных процессов judge-worker
+
+-- Задания проверки: воркеры забирают их через FOR UPDATE SKIP LOCKED
+CREATE TABLE IF NOT EXISTS judge_jobs (
+    submission_id UUID PRIMARY KEY REFERENCES submissions(id) ON DELETE CASCADE,
+    degraded BOOLEAN NOT NULL DEFAULT false,
+    status VARCHAR(16) NOT NULL DEFAULT 'QUEUED',
+    worker_id VARCHAR(128),
+    attempts INTEGER NOT NULL DEFAULT 0,
+    claimed_at TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_judge_jobs_queued ON judge_jobs(created_at) WHERE status = 'QUEUED';
+CREATE INDEX IF NOT EXISTS idx_judge_jobs_worker ON judge_jobs(worker_id);
+
+-- Живые воркеры: задания воркера без свежего heartbeat возвращаются в очередь
+CREATE TABLE IF NOT EXISTS judge_workers (
+    worker_id VARCHAR(128) PRIMARY KEY,
+    host VARCHAR(255),
+    slots INTEGER NOT NULL,
+    started_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    heartbeat_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,5 @@
+-- Эталонное решение задачи и лимит времени, выведенный из его времени на машине с оценкой calibration_ms
+
+ALTER TABLE tasks ADD COLUMN IF NOT EXISTS reference_solution TEXT;
+ALTER TABLE tasks ADD COLUMN IF NOT EXISTS reference_time_ms INTEGER;
+ALTER TABLE tasks ADD COLUMN IF NOT EXISTS calibration_ms INTEGER;
@@ -0,0 +1,3 @@
+-- Предварительный вердикт по тестам-примерам, пока решение проверяется на полном наборе тестов
+
+ALTER TABLE submissions ADD COLUMN IF NOT EXISTS provisional_status VARCHAR(20);
@@ -0,0 +1,10 @@
+-- Число запусков и падений каждого теста по версии тестов задачи (SHA-256 JSON тестов).
+-- По нему тесты запускаются в порядке убывания частоты падений, когда нужен только вердикт
+
+CREATE TABLE IF NOT EXISTS task_test_stats (
+    test_suite_hash VARCHAR(64) NOT NULL,
+    test_index INTEGER NOT NULL,
+    runs BIGINT NOT NULL DEFAULT 0,
+    failures BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (test_suite_hash, test_index)
+);
@@ -0,0 +1,36 @@
+-- Удаление submissions.code после переноса кода в code_blobs (V8).
+-- Сначала копия сверяется с исходным кодом: у каждого решения с кодом должен быть code_hash, равный SHA-256 кода,
+-- и строка code_blobs с этим хэшем; число уникальных исходников должно совпасть с числом найденных строк.
+-- Перенесенный код хранится без сжатия, поэтому SHA-256 содержимого должен совпасть с хэшем.
+-- При любом расхождении миграция падает, столбец остается
+
+DO $$
+DECLARE
+    sources BIGINT;
+    copied BIGINT;
+    mismatched BIGINT;
+BEGIN
+    SELECT count(DISTINCT s.code_hash), count(DISTINCT b.hash)
+    INTO sources, copied
+    FROM submissions s
+    LEFT JOIN code_blobs b ON b.hash = s.code_hash
+    WHERE s.code IS NOT NULL;
+
+    SELECT count(*)
+    INTO mismatched
+    FROM submissions s
+    LEFT JOIN code_blobs b ON b.hash = s.code_hash
+    WHERE s.code IS NOT NULL
+      AND (s.code_hash IS NULL
+           OR b.hash IS NULL
+           OR s.code_hash <> encode(sha256(convert_to(s.code, 'UTF8')), 'hex')
+           OR (b.compression = 'NONE' AND encode(sha256(b.content), 'hex') <> b.hash)
+           OR (b.compression = 'NONE' AND b.original_size <> octet_length(s.code)));
+
+    IF sources <> copied OR mismatched > 0 THEN
+        RAISE EXCEPTION 'code_blobs copy check failed: % sources, % copied, % mismatched rows',
+            sources, copied, mismatched;
+    END IF;
+END $$;
+
+ALTER TABLE submissions DROP COLUMN code;
@@ -0,0 +1,3 @@
+-- Среднее время проверки решения на воркере: по нему и очереди judge_jobs оценивается ожидание при допуске
+
+ALTER TABLE judge_workers ADD COLUMN IF NOT EXISTS average_job_ms INTEGER;
@@ -0,0 +1,7 @@
+-- Хэши кода и тестов для переиспользования вердиктов одинаковых решений
+
+ALTER TABLE submissions ADD COLUMN IF NOT EXISTS code_hash VARCHAR(64);
+ALTER TABLE submissions ADD COLUMN IF NOT EXISTS test_cases_hash VARCHAR(64);
+ALTER TABLE submissions ADD COLUMN IF NOT EXISTS reusable_verdict BOOLEAN DEFAULT false;
+
+CREATE INDEX IF NOT EXISTS idx_submissions_verdict ON submissions(code_hash, test_cases_hash);
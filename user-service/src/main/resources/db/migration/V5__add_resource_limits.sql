@@ -0,0 +1,8 @@
+-- Ограничения времени и памяти задач и затраченные решениями ресурсы
+
+ALTER TABLE tasks ADD COLUMN IF NOT EXISTS time_limit_ms INTEGER;
+ALTER TABLE tasks ADD COLUMN IF NOT EXISTS memory_limit_kb INTEGER;
+
+ALTER TABLE submissions ADD COLUMN IF NOT EXISTS max_cpu_time_ms BIGINT;
+ALTER TABLE submissions ADD COLUMN IF NOT EXISTS max_wall_time_ms BIGINT;
+ALTER TABLE submissions ADD COLUMN IF NOT EXISTS max_memory_kb BIGINT;
@@ -0,0 +1,3 @@
+-- Задачи, которые проверяются только оптимизированной сборкой, без быстрой сборки -O0
+
+ALTER TABLE tasks ADD COLUMN IF NOT EXISTS optimized_only BOOLEAN NOT NULL DEFAULT FALSE;
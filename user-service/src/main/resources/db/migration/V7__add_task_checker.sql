@@ -0,0 +1,3 @@
+-- Проверка вывода решений задачи: exact (NULL), tokens, float[:точность]
+
+ALTER TABLE tasks ADD COLUMN IF NOT EXISTS checker VARCHAR(32);
@@ -0,0 +1,23 @@
+-- Исходный код решений: один раз на каждый уникальный текст, решения ссылаются на него по code_hash (SHA-256)
+
+CREATE TABLE IF NOT EXISTS code_blobs (
+    hash VARCHAR(64) PRIMARY KEY,
+    content BYTEA NOT NULL,
+    compression VARCHAR(16) NOT NULL,
+    original_size INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+UPDATE submissions SET code_hash = encode(sha256(convert_to(code, 'UTF8')), 'hex')
+WHERE code_hash IS NULL AND code IS NOT NULL;
+
+-- Существующий код переносится без сжатия: deflate недоступен в SQL, большие значения сожмет TOAST
+INSERT INTO code_blobs (hash, content, compression, original_size)
+SELECT DISTINCT ON (code_hash) code_hash, convert_to(code, 'UTF8'), 'NONE', octet_length(code)
+FROM submissions
+WHERE code IS NOT NULL
+ON CONFLICT (hash) DO NOTHING;
+
+-- Новые решения пишут только code_hash. Старый код остается в submissions.code,
+-- пока V14 не сверит копию с code_blobs
+ALTER TABLE submissions ALTER COLUMN code DROP NOT NULL;
@@ -0,0 +1,6 @@
+-- Ключ идемпотентности отправки решения: повтор запроса с тем же ключом возвращает уже созданное решение
+
+ALTER TABLE submissions ADD COLUMN IF NOT EXISTS idempotency_key VARCHAR(255);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_submissions_idempotency
+    ON submissions(user_id, idempotency_key) WHERE idempotency_key IS NOT NULL;
@@ -0,0 +1,67 @@
+/*
+ * Калибровочная программа проверяющей машины.
+ * Смесь того, на что обычно тратят время решения: целочисленная арифметика с ветвлениями,
+ * случайный доступ к памяти больше кэша L2, сортировка. Работа фиксирована, поэтому
+ * процессорное время программы показывает скорость машины для решений.
+ * Выводит контрольную сумму, чтобы компилятор не выбросил вычисления
+ */
+#include <stdio.h>
+#include <stdlib.h>
+
+#define MEMORY_WORDS (1 << 21) /* 8 МБ */
+#define SORT_SIZE 200000
+
+static unsigned int state = 12345;
+
+static unsigned int next_random(void) {
+    state ^= state << 13;
+    state ^= state >> 17;
+    state ^= state << 5;
+    return state;
+}
+
+static int compare(const void *a, const void *b) {
+    unsigned int x = *(const unsigned int *) a;
+    unsigned int y = *(const unsigned int *) b;
+    return x < y ? -1 : x > y;
+}
+
+int main(void) {
+    unsigned long long checksum = 0;
+
+    /* Ветвления: шаги гипотезы Коллатца */
+    for (unsigned long long start = 1; start < 100000; start++) {
+        unsigned long long n = start;
+        while (n != 1) {
+            n = (n & 1) ? 3 * n + 1 : n / 2;
+            checksum++;
+        }
+    }
+
+    /* Случайный доступ к памяти */
+    unsigned int *memory = malloc(MEMORY_WORDS * sizeof(unsigned int));
+    if (memory == NULL) {
+        return 1;
+    }
+    for (unsigned int i = 0; i < MEMORY_WORDS; i++) {
+        memory[i] = next_random();
+    }
+    unsigned int index = 0;
+    for (int i = 0; i < 3000000; i++) {
+        index = (memory[index] ^ i) & (MEMORY_WORDS - 1);
+        checksum += index;
+    }
+
+    /* Сортировка */
+    for (int round = 0; round < 3; round++) {
+        for (int i = 0; i < SORT_SIZE; i++) {
+            memory[i] = next_random();
+        }
+        qsort(memory, SORT_SIZE, sizeof(unsigned int), compare);
+        checksum += memory[SORT_SIZE / 2];
+    }
+    free(memory);
+
+    printf("%llu\n", checksum);
+    return 0;
+}
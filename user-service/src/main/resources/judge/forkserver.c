@@ -0,0 +1,197 @@
+/*
+ * Сервер запуска тестов.
+ * Решение компилируется с -Dmain=judge_solution_main и линкуется с этим файлом.
+ * Процесс запускается один раз на решение и для каждого теста делает fork() с новыми stdin/stdout/stderr:
+ * без execve и динамической линковки на каждый тест, глобальные переменные решения каждый раз исходные.
+ *
+ * Протокол: одна строка на тест через stdin/stdout сервера, поля разделены табуляцией.
+ * Запрос: "<файл ввода> <файл вывода> <файл ошибок> <таймаут, мс> <лимит CPU, мс> <лимит памяти, КБ>"
+ * Ответ:  "<код возврата> <таймаут 0/1> <cpu_ms> <wall_ms> <max_rss_kb>"
+ * Лимит 0 - без ограничения. При завершении сигналом код возврата 128 + номер сигнала, как у runner.c.
+ */
+#define _GNU_SOURCE
+#include <errno.h>
+#include <fcntl.h>
+#include <signal.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/resource.h>
+#include <sys/time.h>
+#include <sys/types.h>
+#include <sys/wait.h>
+#include <time.h>
+#include <unistd.h>
+#ifdef __linux__
+#include <sys/prctl.h>
+#endif
+
+#define REQUEST_MAX 8192
+#define OUTPUT_FILE_LIMIT (16 << 20) /* Запись сверх лимита завершается ошибкой, вывод обрезается */
+
+int judge_solution_main(int argc, char **argv);
+
+static long long now_ms(void) {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return ts.tv_sec * 1000LL + ts.tv_nsec / 1000000;
+}
+
+static long long to_ms(struct timeval tv) {
+    return tv.tv_sec * 1000LL + tv.tv_usec / 1000;
+}
+
+static void set_limit(int resource, rlim_t value) {
+    struct rlimit limit;
+    limit.rlim_cur = value;
+    limit.rlim_max = value;
+    setrlimit(resource, &limit);
+}
+
+/* Читает строку запроса без stdio, чтобы в буфере stdin не осталось данных для тестов */
+static int read_request(char *buffer, size_t size) {
+    size_t length = 0;
+    while (length + 1 < size) {
+        ssize_t n = read(STDIN_FILENO, buffer + length, 1);
+        if (n < 0 && errno == EINTR) {
+            continue;
+        }
+        if (n <= 0) {
+            return -1;
+        }
+        if (buffer[length] == '\n') {
+            break;
+        }
+        length++;
+    }
+    buffer[length] = '\0';
+    return 0;
+}
+
+static void write_response(const char *text) {
+    size_t length = strlen(text);
+    while (length > 0) {
+        ssize_t n = write(STDOUT_FILENO, text, length);
+        if (n < 0 && errno == EINTR) {
+            continue;
+        }
+        if (n <= 0) {
+            exit(1);
+        }
+        text += n;
+        length -= n;
+    }
+}
+
+static void redirect(const char *path, int flags, int target) {
+    int fd = open(path, flags, 0644);
+    if (fd < 0 || dup2(fd, target) < 0) {
+        _exit(127);
+    }
+    close(fd);
+}
+
+static void run_child(char **fields, const sigset_t *mask, pid_t server, char *program) {
+#ifdef __linux__
+    prctl(PR_SET_PDEATHSIG, SIGKILL);
+    if (getppid() != server) {
+        _exit(127);
+    }
+#else
+    (void) server;
+#endif
+    redirect(fields[0], O_RDONLY, STDIN_FILENO);
+    redirect(fields[1], O_WRONLY | O_CREAT | O_TRUNC, STDOUT_FILENO);
+    redirect(fields[2], O_WRONLY | O_CREAT | O_TRUNC, STDERR_FILENO);
+    signal(SIGXFSZ, SIG_IGN);
+    set_limit(RLIMIT_FSIZE, OUTPUT_FILE_LIMIT);
+
+    long long cpu_limit_ms = atoll(fields[4]);
+    long long memory_limit_kb = atoll(fields[5]);
+    if (cpu_limit_ms > 0) {
+        struct rlimit limit;
+        limit.rlim_cur = (rlim_t) (cpu_limit_ms / 1000 + 1);
+        limit.rlim_max = limit.rlim_cur + 1;
+        setrlimit(RLIMIT_CPU, &limit);
+    }
+    if (memory_limit_kb > 0) {
+        set_limit(RLIMIT_AS, (rlim_t) (memory_limit_kb * 2 + 65536) * 1024);
+    }
+    sigprocmask(SIG_SETMASK, mask, NULL);
+
+    char *argv[] = { program, NULL };
+    exit(judge_solution_main(1, argv));
+}
+
+/* Ждет завершения теста не дольше таймаута, по таймауту останавливает его */
+static int wait_child(pid_t child, long long timeout_ms, const sigset_t *sigchld, int *status, struct rusage *usage) {
+    long long deadline = now_ms() + timeout_ms;
+    for (;;) {
+        pid_t done = wait4(child, status, WNOHANG, usage);
+        if (done == child) {
+            return 0;
+        }
+        long long remaining = deadline - now_ms();
+        if (remaining <= 0) {
+            break;
+        }
+        struct timespec timeout = { remaining / 1000, (remaining % 1000) * 1000000 };
+        sigtimedwait(sigchld, NULL, &timeout);
+    }
+    kill(child, SIGKILL);
+    while (wait4(child, status, 0, usage) < 0 && errno == EINTR) {
+    }
+    return 1;
+}
+
+int main(int argc, char **argv) {
+    (void) argc;
+    sigset_t sigchld, original;
+    sigemptyset(&sigchld);
+    sigaddset(&sigchld, SIGCHLD);
+    sigprocmask(SIG_BLOCK, &sigchld, &original);
+
+    pid_t server = getpid();
+    char request[REQUEST_MAX];
+    while (read_request(request, sizeof(request)) == 0) {
+        char *fields[6];
+        int count = 0;
+        char *save = NULL;
+        for (char *field = strtok_r(request, "\t", &save); field != NULL && count < 6;
+             field = strtok_r(NULL, "\t", &save)) {
+            fields[count++] = field;
+        }
+        if (count < 6) {
+            write_response("127\t0\t0\t0\t0\n");
+            continue;
+        }
+
+        long long started = now_ms();
+        pid_t child = fork();
+        if (child < 0) {
+            write_response("127\t0\t0\t0\t0\n");
+            continue;
+        }
+        if (child == 0) {
+            run_child(fields, &original, server, argv[0]);
+        }
+
+        int status = 0;
+        struct rusage usage;
+        memset(&usage, 0, sizeof(usage));
+        int timed_out = wait_child(child, atoll(fields[3]), &sigchld, &status, &usage);
+        long long wall_ms = now_ms() - started;
+        long long cpu_ms = to_ms(usage.ru_utime) + to_ms(usage.ru_stime);
+        long long max_rss_kb = usage.ru_maxrss;
+#ifdef __APPLE__
+        max_rss_kb /= 1024; /* На macOS ru_maxrss в байтах */
+#endif
+        int exit_code = WIFSIGNALED(status) ? 128 + WTERMSIG(status) : WEXITSTATUS(status);
+
+        char response[128];
+        snprintf(response, sizeof(response), "%d\t%d\t%lld\t%lld\t%lld\n",
+                 exit_code, timed_out, cpu_ms, wall_ms, max_rss_kb);
+        write_response(response);
+    }
+    return 0;
+}
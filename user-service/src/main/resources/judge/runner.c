@@ -0,0 +1,297 @@
+/*
+ * Обертка для запуска решения.
+ * Устанавливает ограничения, ждет завершения программы и записывает затраченные ресурсы.
+ *
+ * Использование: runner [-n] [-g <cgroup>] [-m <память cgroup, КБ>] [-p <процессов>] [-a <ядро>]
+ *                       <файл метрик> <лимит CPU, мс> <лимит памяти, КБ> <программа> [аргументы]
+ * Лимит 0 - без ограничения.
+ *   -n  запустить в новых пространствах имен user, pid, mount, network, ipc и uts:
+ *       программа не видит чужих процессов и сети и не может их остановить
+ *   -g  каталог cgroup v2, в котором работает программа; -m и -p задают его memory.max и pids.max
+ *   -a  закрепить программу за ядром процессора
+ * Файл метрик: "<cpu_ms> <wall_ms> <max_rss_kb> <код возврата> <сигнал>"
+ * Код возврата обертки совпадает с кодом программы, при завершении сигналом - 128 + номер сигнала.
+ */
+#define _GNU_SOURCE
+#include <errno.h>
+#include <fcntl.h>
+#include <signal.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/resource.h>
+#include <sys/time.h>
+#include <sys/types.h>
+#include <sys/wait.h>
+#include <time.h>
+#include <unistd.h>
+#ifdef __linux__
+#include <sched.h>
+#include <sys/mount.h>
+#include <sys/prctl.h>
+#endif
+
+static volatile pid_t child = 0;
+
+static long long now_ms(void) {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return ts.tv_sec * 1000LL + ts.tv_nsec / 1000000;
+}
+
+static long long to_ms(struct timeval tv) {
+    return tv.tv_sec * 1000LL + tv.tv_usec / 1000;
+}
+
+/* Остановка обертки останавливает и программу */
+static void forward_signal(int sig) {
+    if (child > 0) {
+        kill(child, SIGKILL);
+    }
+    _exit(128 + sig);
+}
+
+static void set_limit(int resource, rlim_t value) {
+    struct rlimit limit;
+    limit.rlim_cur = value;
+    limit.rlim_max = value;
+    setrlimit(resource, &limit);
+}
+
+/* Записывает строку в файл /proc или cgroup, 0 - успешно */
+static int write_file(const char *dir, const char *name, const char *value) {
+    char path[4096];
+    if (dir != NULL) {
+        snprintf(path, sizeof(path), "%s/%s", dir, name);
+    } else {
+        snprintf(path, sizeof(path), "%s", name);
+    }
+    int fd = open(path, O_WRONLY | O_CLOEXEC);
+    if (fd < 0) {
+        return -1;
+    }
+    size_t length = strlen(value);
+    ssize_t written = write(fd, value, length);
+    close(fd);
+    return written == (ssize_t) length ? 0 : -1;
+}
+
+/* Число срабатываний OOM killer в cgroup, -1 - неизвестно */
+static long long oom_kills(const char *cgroup) {
+    char path[4096];
+    snprintf(path, sizeof(path), "%s/memory.events", cgroup);
+    FILE *events = fopen(path, "r");
+    if (events == NULL) {
+        return -1;
+    }
+    char key[64];
+    long long value;
+    long long result = -1;
+    while (fscanf(events, "%63s %lld", key, &value) == 2) {
+        if (strcmp(key, "oom_kill") == 0) {
+            result = value;
+            break;
+        }
+    }
+    fclose(events);
+    return result;
+}
+
+static void die(const char *what) {
+    perror(what);
+    _exit(127);
+}
+
+#ifdef __linux__
+/*
+ * Переводит процесс в новые пространства имен и порождает в них программу с pid 1.
+ * В процессе-посреднике не возвращается: ждет программу и завершается так же, как она
+ */
+static void enter_namespaces(void) {
+    uid_t uid = getuid();
+    gid_t gid = getgid();
+    if (unshare(CLONE_NEWUSER | CLONE_NEWPID | CLONE_NEWNS | CLONE_NEWNET | CLONE_NEWIPC | CLONE_NEWUTS) != 0) {
+        die("unshare");
+    }
+    /* Внутри пространства тот же пользователь, что и снаружи: прав на файлы не прибавляется */
+    char map[64];
+    write_file(NULL, "/proc/self/setgroups", "deny");
+    snprintf(map, sizeof(map), "%d %d 1\n", (int) uid, (int) uid);
+    if (write_file(NULL, "/proc/self/uid_map", map) != 0) {
+        die("uid_map");
+    }
+    snprintf(map, sizeof(map), "%d %d 1\n", (int) gid, (int) gid);
+    if (write_file(NULL, "/proc/self/gid_map", map) != 0) {
+        die("gid_map");
+    }
+
+    /* Новое пространство pid получают только потомки */
+    pid_t program = fork();
+    if (program < 0) {
+        die("fork");
+    }
+    if (program == 0) {
+        prctl(PR_SET_PDEATHSIG, SIGKILL);
+        /* Монтирования не уходят наружу; свой /proc показывает только процессы решения */
+        mount(NULL, "/", NULL, MS_REC | MS_PRIVATE, NULL);
+        mount("proc", "/proc", "proc", MS_NOSUID | MS_NODEV | MS_NOEXEC, NULL);
+        return;
+    }
+    int status = 0;
+    while (waitpid(program, &status, 0) < 0) {
+        if (errno != EINTR) {
+            die("waitpid");
+        }
+    }
+    if (WIFSIGNALED(status)) {
+        signal(WTERMSIG(status), SIG_DFL);
+        raise(WTERMSIG(status));
+    }
+    _exit(WIFEXITED(status) ? WEXITSTATUS(status) : 127);
+}
+#endif
+
+int main(int argc, char **argv) {
+    int namespaces = 0;
+    const char *cgroup = NULL;
+    long long cgroup_memory_kb = 0;
+    long long pids_max = 0;
+    int cpu = -1;
+    int option;
+    while ((option = getopt(argc, argv, "+ng:m:p:a:")) != -1) {
+        if (option == 'n') {
+            namespaces = 1;
+        } else if (option == 'g') {
+            cgroup = optarg;
+        } else if (option == 'm') {
+            cgroup_memory_kb = atoll(optarg);
+        } else if (option == 'p') {
+            pids_max = atoll(optarg);
+        } else if (option == 'a') {
+            cpu = atoi(optarg);
+        } else {
+            return 127;
+        }
+    }
+    if (argc - optind < 4) {
+        fprintf(stderr, "usage: runner [-n] [-g cgroup] [-m cgroup-memory-kb] [-p pids] [-a cpu] "
+                        "<metrics> <cpu-ms> <memory-kb> <program> [args]\n");
+        return 127;
+    }
+    char **args = argv + optind;
+    const char *metrics_path = args[0];
+    long long cpu_limit_ms = atoll(args[1]);
+    long long memory_limit_kb = atoll(args[2]);
+#ifndef __linux__
+    if (namespaces || cpu >= 0) {
+        fprintf(stderr, "runner: sandbox requires Linux\n");
+        return 127;
+    }
+#endif
+
+    /* cgroup занят одним запуском за раз, лимиты выставляются под текущий тест */
+    long long oom_before = -1;
+    if (cgroup != NULL) {
+        char value[32];
+        if (cgroup_memory_kb > 0) {
+            snprintf(value, sizeof(value), "%lld", cgroup_memory_kb * 1024);
+        } else {
+            snprintf(value, sizeof(value), "max");
+        }
+        if (write_file(cgroup, "memory.max", value) != 0) {
+            perror("memory.max");
+            return 127;
+        }
+        if (pids_max > 0) {
+            snprintf(value, sizeof(value), "%lld", pids_max);
+            write_file(cgroup, "pids.max", value);
+        }
+        oom_before = oom_kills(cgroup);
+    }
+
+    signal(SIGTERM, forward_signal);
+    signal(SIGINT, forward_signal);
+    signal(SIGHUP, forward_signal);
+
+    pid_t parent = getpid();
+    long long started = now_ms();
+    child = fork();
+    if (child < 0) {
+        perror("fork");
+        return 127;
+    }
+    if (child == 0) {
+#ifdef __linux__
+        /* Программа не переживет обертку, даже если ту убьют по SIGKILL */
+        prctl(PR_SET_PDEATHSIG, SIGKILL);
+        if (getppid() != parent) {
+            _exit(127);
+        }
+        /* Сама обертка остается вне cgroup: OOM killer выбирает только среди процессов решения */
+        if (cgroup != NULL && write_file(cgroup, "cgroup.procs", "0") != 0) {
+            die("cgroup.procs");
+        }
+        if (cpu >= 0) {
+            cpu_set_t cpus;
+            CPU_ZERO(&cpus);
+            CPU_SET(cpu, &cpus);
+            if (sched_setaffinity(0, sizeof(cpus), &cpus) != 0) {
+                die("sched_setaffinity");
+            }
+        }
+        if (namespaces) {
+            enter_namespaces();
+        }
+#endif
+        if (cpu_limit_ms > 0) {
+            /* Мягкий лимит с запасом меньше секунды: превышение определяется по фактическому времени,
+               а сигнал останавливает программу раньше таймаута по реальному времени */
+            struct rlimit limit;
+            limit.rlim_cur = (rlim_t) (cpu_limit_ms / 1000 + 1);
+            limit.rlim_max = limit.rlim_cur + 1;
+            setrlimit(RLIMIT_CPU, &limit);
+        }
+        if (memory_limit_kb > 0) {
+            /* Адресное пространство с запасом на загрузчик и библиотеки,
+               превышение лимита определяется по пиковому RSS */
+            set_limit(RLIMIT_AS, (rlim_t) (memory_limit_kb * 2 + 65536) * 1024);
+        }
+        execv(args[3], &args[3]);
+        perror("execv");
+        _exit(127);
+    }
+
+    int status = 0;
+    struct rusage usage;
+    while (wait4(child, &status, 0, &usage) < 0) {
+        if (errno != EINTR) {
+            perror("wait4");
+            return 127;
+        }
+    }
+    long long wall_ms = now_ms() - started;
+    if (cgroup != NULL) {
+        /* Процессы, оставленные программой вне пространства pid, не доживают до следующего теста */
+        write_file(cgroup, "cgroup.kill", "1");
+    }
+    long long cpu_ms = to_ms(usage.ru_utime) + to_ms(usage.ru_stime);
+    long long max_rss_kb = usage.ru_maxrss;
+#ifdef __APPLE__
+    max_rss_kb /= 1024; /* На macOS ru_maxrss в байтах */
+#endif
+    int exit_code = WIFEXITED(status) ? WEXITSTATUS(status) : -1;
+    int term_signal = WIFSIGNALED(status) ? WTERMSIG(status) : 0;
+    if (cgroup != NULL && oom_before >= 0 && oom_kills(cgroup) > oom_before && memory_limit_kb > 0
+            && max_rss_kb <= memory_limit_kb) {
+        /* cgroup учитывает и кэш страниц, поэтому RSS может не дойти до лимита:
+           остановка OOM killer засчитывается как превышение лимита памяти */
+        max_rss_kb = memory_limit_kb + 1;
+    }
+
+    FILE *metrics = fopen(metrics_path, "w");
+    if (metrics != NULL) {
+        fprintf(metrics, "%lld %lld %lld %d %d\n", cpu_ms, wall_ms, max_rss_kb, exit_code, term_signal);
+        fclose(metrics);
+    }
+    return term_signal != 0 ? 128 + term_signal : exit_code;
+}
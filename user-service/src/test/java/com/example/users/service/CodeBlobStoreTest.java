@@ -0,0 +1,73 @@
+package com.example.users.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Сохранение кода на H2 в режиме PostgreSQL, как в профиле dev
+ */
+class CodeBlobStoreTest {
+    
+    private JdbcTemplate jdbcTemplate;
+    
+    @BeforeEach
+    void createSchema() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+            "jdbc:h2:mem:blobs_" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL"));
+        // Таблица из db/dev/schema.sql
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS code_blobs ("
+            + "hash VARCHAR(64) PRIMARY KEY, "
+            + "content BYTEA NOT NULL, "
+            + "compression VARCHAR(16) NOT NULL, "
+            + "original_size INTEGER NOT NULL, "
+            + "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+    }
+    
+    @Test
+    void savesSameTextOnce() {
+        CodeBlobStore store = new CodeBlobStore(jdbcTemplate, 10);
+        String code = "int main() { return 0; }";
+        
+        String hash = store.save(code);
+        String again = store.save(code);
+        
+        assertEquals(hash, again);
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM code_blobs", Integer.class));
+        assertEquals(1L, store.getStats().get("stored"));
+        assertEquals(1L, store.getStats().get("deduplicated"));
+        assertEquals(code, new CodeBlobStore(jdbcTemplate, 10).load(hash));
+    }
+    
+    @Test
+    void compressesLongCode() {
+        CodeBlobStore store = new CodeBlobStore(jdbcTemplate, 10);
+        String code = "#include <stdio.h>\n" + "int x = 0; // Привет\n".repeat(200);
+        
+        String hash = store.save(code);
+        
+        assertEquals("DEFLATE", jdbcTemplate.queryForObject(
+            "SELECT compression FROM code_blobs WHERE hash = ?", String.class, hash));
+        assertEquals(code, new CodeBlobStore(jdbcTemplate, 10).load(hash));
+    }
+    
+    @Test
+    void countsRowInsertedByAnotherProcessAsDuplicate() {
+        CodeBlobStore other = new CodeBlobStore(jdbcTemplate, 10);
+        CodeBlobStore store = new CodeBlobStore(jdbcTemplate, 10);
+        
+        String hash = other.save("print(1)");
+        store.save("print(1)");
+        
+        assertEquals(1L, store.getStats().get("deduplicated"));
+        assertEquals(0L, store.getStats().get("stored"));
+        assertNull(store.load(VerdictCache.hashOf("print(2)")));
+        assertEquals("print(1)", store.load(hash));
+    }
+}
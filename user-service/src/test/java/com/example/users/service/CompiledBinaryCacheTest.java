@@ -0,0 +1,106 @@
+package com.example.users.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompiledBinaryCacheTest {
+    
+    @TempDir
+    Path temp;
+    
+    @Test
+    void copiesCachedBinaryIntoWorkspace() throws IOException {
+        CompiledBinaryCache cache = new CompiledBinaryCache(true, 1024, temp.resolve("cache").toString());
+        String key = cache.keyOf("int main() {}", List.of("-O2"));
+        
+        assertFalse(cache.copyTo(key, temp.resolve("miss")));
+        cache.put(key, binary("solution", 16));
+        Path target = temp.resolve("solution_copy");
+        
+        assertTrue(cache.copyTo(key, target));
+        assertArrayEquals(Files.readAllBytes(temp.resolve("solution")), Files.readAllBytes(target));
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+        assertEquals(16L, stats.get("bytes"));
+    }
+    
+    @Test
+    void keyDependsOnCompilerFlags() {
+        CompiledBinaryCache cache = new CompiledBinaryCache(false, 1024, temp.toString());
+        
+        assertEquals(cache.keyOf("code", List.of("-O2")), cache.keyOf("code", List.of("-O2")));
+        assertNotEquals(cache.keyOf("code", List.of("-O2")), cache.keyOf("code", List.of("-O0")));
+        assertNotEquals(cache.keyOf("code", List.of("-O2")), cache.keyOf("code2", List.of("-O2")));
+    }
+    
+    @Test
+    void evictsLeastRecentlyUsedWhenOverSize() throws IOException {
+        CompiledBinaryCache cache = new CompiledBinaryCache(true, 10, temp.resolve("cache").toString());
+        cache.put("a", binary("a", 4));
+        cache.put("b", binary("b", 4));
+        // Обращение к a делает давно не использованной b
+        assertTrue(cache.copyTo("a", temp.resolve("a_copy")));
+        
+        cache.put("c", binary("c", 4));
+        
+        assertFalse(cache.copyTo("b", temp.resolve("b_copy")));
+        assertTrue(cache.copyTo("a", temp.resolve("a_copy2")));
+        assertTrue(cache.copyTo("c", temp.resolve("c_copy")));
+        assertEquals(1L, cache.getStats().get("evictions"));
+        assertEquals(8L, cache.getStats().get("bytes"));
+    }
+    
+    @Test
+    void skipsBinaryLargerThanLimit() throws IOException {
+        CompiledBinaryCache cache = new CompiledBinaryCache(true, 10, temp.resolve("cache").toString());
+        
+        cache.put("big", binary("big", 11));
+        
+        assertFalse(cache.copyTo("big", temp.resolve("big_copy")));
+        assertEquals(0, cache.getStats().get("entries"));
+    }
+    
+    @Test
+    void issuedCopySurvivesEviction() throws IOException {
+        CompiledBinaryCache cache = new CompiledBinaryCache(true, 4, temp.resolve("cache").toString());
+        cache.put("a", binary("a", 4));
+        Path issued = temp.resolve("a_copy");
+        assertTrue(cache.copyTo("a", issued));
+        
+        cache.put("b", binary("b", 4));
+        
+        assertFalse(cache.copyTo("a", temp.resolve("a_copy2")));
+        assertEquals(4, Files.size(issued));
+    }
+    
+    @Test
+    void disabledCacheNeverHits() throws IOException {
+        CompiledBinaryCache cache = new CompiledBinaryCache(false, 1024, temp.resolve("cache").toString());
+        
+        cache.put("a", binary("a", 4));
+        
+        assertFalse(cache.copyTo("a", temp.resolve("a_copy")));
+        assertFalse(Files.exists(temp.resolve("cache")));
+    }
+    
+    private Path binary(String name, int size) throws IOException {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (name.hashCode() + i);
+        }
+        return Files.write(temp.resolve(name), content);
+    }
+}
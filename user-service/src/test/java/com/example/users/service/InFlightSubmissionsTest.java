@@ -0,0 +1,80 @@
+package com.example.users.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InFlightSubmissionsTest {
+    
+    private static final String KEY = InFlightSubmissions.keyOf(UUID.randomUUID(), UUID.randomUUID(), "hash");
+    
+    private final InFlightSubmissions flights = new InFlightSubmissions();
+    
+    @Test
+    void attachesRepeatToSavedSubmission() {
+        InFlightSubmissions.Flight first = flights.claim(KEY);
+        UUID submissionId = UUID.randomUUID();
+        
+        flights.started(first, submissionId);
+        InFlightSubmissions.Flight repeat = flights.claim(KEY);
+        
+        assertFalse(first.isAttached());
+        assertTrue(repeat.isAttached());
+        assertEquals(submissionId, repeat.attachedTo);
+        assertEquals(1L, flights.getStats().get("attached"));
+    }
+    
+    @Test
+    void rejectsRepeatWithoutWaitingWhileFirstIsSaved() {
+        flights.claim(KEY);
+        
+        long started = System.nanoTime();
+        assertThrows(IdempotencyConflictException.class, () -> flights.claim(KEY));
+        
+        assertTrue(System.nanoTime() - started < 1_000_000_000L);
+        assertEquals(1L, flights.getStats().get("conflicts"));
+    }
+    
+    @Test
+    void repeatClaimsKeyAfterAbandon() {
+        InFlightSubmissions.Flight first = flights.claim(KEY);
+        
+        flights.abandon(first);
+        InFlightSubmissions.Flight repeat = flights.claim(KEY);
+        
+        assertFalse(repeat.isAttached());
+        flights.started(repeat, UUID.randomUUID());
+        assertEquals(1L, flights.getStats().get("started"));
+    }
+    
+    @Test
+    void newSubmissionAfterFinished() {
+        InFlightSubmissions.Flight first = flights.claim(KEY);
+        UUID submissionId = UUID.randomUUID();
+        flights.started(first, submissionId);
+        
+        flights.finished(submissionId);
+        InFlightSubmissions.Flight next = flights.claim(KEY);
+        
+        assertNull(next.attachedTo);
+        assertEquals(1, flights.getStats().get("inFlight"));
+    }
+    
+    @Test
+    void keysDifferByUserTaskAndCode() {
+        UUID user = UUID.randomUUID();
+        UUID task = UUID.randomUUID();
+        flights.claim(InFlightSubmissions.keyOf(user, task, "a"));
+        
+        assertFalse(flights.claim(InFlightSubmissions.keyOf(user, task, "b")).isAttached());
+        assertFalse(flights.claim(InFlightSubmissions.keyOf(user, UUID.randomUUID(), "a")).isAttached());
+        assertFalse(flights.claim(InFlightSubmissions.keyOf(UUID.randomUUID(), task, "a")).isAttached());
+        assertEquals(4, flights.getStats().get("inFlight"));
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.users.service;
+
+import com.example.users.controller.GlobalExceptionHandler;
+import com.example.users.dto.AdmissionSettingsRequest;
+import com.example.users.model.Role;
+import com.example.users.model.User;
+import com.example.users.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JudgeAdmissionTest {
+    
+    private static final UUID USER = UUID.randomUUID();
+    
+    private final JudgeQueueService queue = mock(JudgeQueueService.class);
+    private final JudgeJobStore jobStore = mock(JudgeJobStore.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    
+    @Test
+    void decidesByEstimatedWait() {
+        JudgeAdmission admission = admission(true, false);
+        
+        assertEquals(JudgeAdmission.Decision.ACCEPT, admitWithWait(admission, 10_000));
+        assertEquals(JudgeAdmission.Decision.ACCEPT, admitWithWait(admission, 30_000));
+        assertEquals(JudgeAdmission.Decision.DEGRADE, admitWithWait(admission, 30_001));
+        assertEquals(JudgeAdmission.Decision.DEGRADE, admitWithWait(admission, 120_000));
+        assertThrows(JudgeOverloadedException.class, () -> admitWithWait(admission, 120_001));
+        
+        Map<String, Object> settings = admission.getSettings();
+        assertEquals(2L, settings.get("accepted"));
+        assertEquals(2L, settings.get("degraded"));
+        assertEquals(1L, settings.get("rejected"));
+    }
+    
+    @Test
+    void asksToRetryWhenWaitDropsToRejectThreshold() {
+        JudgeAdmission admission = admission(true, false);
+        
+        assertEquals(1, retryAfter(admission, 120_001));
+        assertEquals(1, retryAfter(admission, 121_000));
+        assertEquals(6, retryAfter(admission, 125_500));
+        
+        JudgeOverloadedException e = assertThrows(JudgeOverloadedException.class,
+            () -> admitWithWait(admission, 125_500));
+        ResponseEntity<Map<String, String>> response = new GlobalExceptionHandler().handleJudgeOverloadedException(e);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("6", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+    
+    @Test
+    void disabledAdmissionAcceptsWithoutEstimate() {
+        JudgeAdmission admission = admission(false, false);
+        
+        assertEquals(JudgeAdmission.Decision.ACCEPT, admission.admit(USER));
+        verify(queue, never()).estimateWaitMs(anyString(), eq(JudgeQueueService.Priority.SUBMISSION));
+    }
+    
+    @Test
+    void estimatesDistributedWaitFromJobsAndWorkers() {
+        JudgeAdmission admission = admission(true, true);
+        
+        // Все 2 слота заняты: 10 заданий в очереди и еще одна проверка - 6 проверок по 5 с
+        when(jobStore.backlog(anyLong())).thenReturn(new JudgeJobStore.Backlog(10, 2, 2, 5000L));
+        assertEquals(JudgeAdmission.Decision.ACCEPT, admission.admit(USER));
+        when(jobStore.backlog(anyLong())).thenReturn(new JudgeJobStore.Backlog(12, 2, 2, 5000L));
+        assertEquals(JudgeAdmission.Decision.DEGRADE, admission.admit(USER));
+        // Живых воркеров нет: один слот и среднее время локальной очереди
+        when(queue.getAverageJobMs()).thenReturn(1000L);
+        when(jobStore.backlog(anyLong())).thenReturn(new JudgeJobStore.Backlog(121, 0, 0, null));
+        assertEquals(1, assertThrows(JudgeOverloadedException.class, () -> admission.admit(USER))
+            .getRetryAfterSeconds());
+        // Без оценки решение принимается
+        when(jobStore.backlog(anyLong())).thenThrow(new QueryTimeoutException("timeout"));
+        assertEquals(JudgeAdmission.Decision.ACCEPT, admission.admit(USER));
+    }
+    
+    @Test
+    void appliesNewThresholdsWithoutRestart() {
+        JudgeAdmission admission = admission(true, false);
+        UUID adminId = UUID.randomUUID();
+        when(userRepository.findById(adminId)).thenReturn(Optional.of(user(Role.ADMIN)));
+        AdmissionSettingsRequest request = new AdmissionSettingsRequest();
+        request.setRejectWaitMs(60_000L);
+        
+        admission.updateSettings(request, adminId);
+        
+        assertEquals(30_000L, admission.getSettings().get("degradeWaitMs"));
+        assertEquals(60_000L, admission.getSettings().get("rejectWaitMs"));
+        assertThrows(JudgeOverloadedException.class, () -> admitWithWait(admission, 60_001));
+    }
+    
+    @Test
+    void onlyUserAdminsChangeThresholds() {
+        JudgeAdmission admission = admission(true, false);
+        UUID studentId = UUID.randomUUID();
+        UUID adminId = UUID.randomUUID();
+        when(userRepository.findById(studentId)).thenReturn(Optional.of(user(Role.STUDENT)));
+        when(userRepository.findById(adminId)).thenReturn(Optional.of(user(Role.ADMIN)));
+        AdmissionSettingsRequest negative = new AdmissionSettingsRequest();
+        negative.setDegradeWaitMs(-1L);
+        
+        assertThrows(SecurityException.class, () -> admission.updateSettings(new AdmissionSettingsRequest(), studentId));
+        assertThrows(IllegalArgumentException.class, () -> admission.updateSettings(negative, adminId));
+        assertEquals(30_000L, admission.getSettings().get("degradeWaitMs"));
+    }
+    
+    private JudgeAdmission admission(boolean enabled, boolean distributed) {
+        return new JudgeAdmission(queue, jobStore, userRepository, enabled, 30_000, 120_000, distributed, 30);
+    }
+    
+    private JudgeAdmission.Decision admitWithWait(JudgeAdmission admission, long waitMs) {
+        when(queue.estimateWaitMs(anyString(), eq(JudgeQueueService.Priority.SUBMISSION))).thenReturn(waitMs);
+        return admission.admit(USER);
+    }
+    
+    private long retryAfter(JudgeAdmission admission, long waitMs) {
+        return assertThrows(JudgeOverloadedException.class, () -> admitWithWait(admission, waitMs))
+            .getRetryAfterSeconds();
+    }
+    
+    private static User user(Role role) {
+        User user = new User("user@example.com", "password", "User");
+        user.setRole(role);
+        return user;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.users.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Порядок выдачи проверок единственному воркеру: пока он занят первой проверкой,
+ * остальные копятся в очереди и затем выдаются по одной
+ */
+class JudgeQueueServiceTest {
+    
+    private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch blocker = new CountDownLatch(1);
+    
+    @Test
+    void servesOwnersRoundRobin() throws InterruptedException {
+        JudgeQueueService queue = busyQueue(3, 1, 100);
+        CountDownLatch done = new CountDownLatch(5);
+        
+        enqueue(queue, "a", JudgeQueueService.Priority.SUBMISSION, "a1", done);
+        enqueue(queue, "a", JudgeQueueService.Priority.SUBMISSION, "a2", done);
+        enqueue(queue, "a", JudgeQueueService.Priority.SUBMISSION, "a3", done);
+        enqueue(queue, "b", JudgeQueueService.Priority.SUBMISSION, "b1", done);
+        enqueue(queue, "c", JudgeQueueService.Priority.SUBMISSION, "c1", done);
+        blocker.countDown();
+        
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("a1", "b1", "c1", "a2", "a3"), order);
+    }
+    
+    @Test
+    void sharesWorkersBetweenClassesByWeight() throws InterruptedException {
+        JudgeQueueService queue = busyQueue(3, 1, 100);
+        CountDownLatch done = new CountDownLatch(16);
+        
+        for (int i = 0; i < 8; i++) {
+            enqueue(queue, "student" + i, JudgeQueueService.Priority.SUBMISSION, "S", done);
+            enqueue(queue, "rejudge", JudgeQueueService.Priority.REJUDGE, "R", done);
+        }
+        blocker.countDown();
+        
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        // Веса 3:1 - на три решения студентов одна перепроверка, перепроверки не ждут конца очереди
+        assertEquals(6, Collections.frequency(order.subList(0, 8), "S"));
+        assertEquals(2, Collections.frequency(order.subList(0, 8), "R"));
+        assertEquals(List.of("S", "S", "R", "R", "R", "R", "R", "R"), sorted(order.subList(8, 16)));
+    }
+    
+    @Test
+    void idleClassGetsNoAccumulatedCredit() throws InterruptedException {
+        JudgeQueueService queue = busyQueue(1, 1, 100);
+        CountDownLatch first = new CountDownLatch(6);
+        for (int i = 0; i < 6; i++) {
+            enqueue(queue, "student" + i, JudgeQueueService.Priority.SUBMISSION, "S", first);
+        }
+        blocker.countDown();
+        assertTrue(first.await(10, TimeUnit.SECONDS));
+        awaitIdle(queue);
+        order.clear();
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        
+        // Перепроверки не было, пока шли решения: после ее появления классы чередуются
+        enqueue(queue, "student", JudgeQueueService.Priority.SUBMISSION, () -> await(busy));
+        for (int i = 0; i < 2; i++) {
+            enqueue(queue, "student" + i, JudgeQueueService.Priority.SUBMISSION, "S", done);
+            enqueue(queue, "rejudge", JudgeQueueService.Priority.REJUDGE, "R", done);
+        }
+        busy.countDown();
+        
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("R", "S", "R", "S"), order);
+    }
+    
+    @Test
+    void rejectsJobsBeyondCapacity() {
+        JudgeQueueService queue = busyQueue(3, 1, 2);
+        
+        assertTrue(queue.enqueue(UUID.randomUUID(), "a", JudgeQueueService.Priority.SUBMISSION, () -> { }));
+        assertFalse(queue.enqueue(UUID.randomUUID(), "b", JudgeQueueService.Priority.REJUDGE, () -> { }));
+        assertEquals(1, queue.getQueueDepth());
+        assertEquals(1, queue.getActiveCount());
+        blocker.countDown();
+    }
+    
+    @Test
+    void estimatesWaitByOwnersAhead() {
+        JudgeQueueService queue = busyQueue(3, 1, 100);
+        
+        enqueue(queue, "a", JudgeQueueService.Priority.SUBMISSION, () -> { });
+        enqueue(queue, "a", JudgeQueueService.Priority.SUBMISSION, () -> { });
+        enqueue(queue, "b", JudgeQueueService.Priority.SUBMISSION, () -> { });
+        
+        // Перед новой проверкой b: занятый воркер, две проверки a (не больше своих + 1) и своя
+        assertEquals(4000, queue.estimateWaitMs("b", JudgeQueueService.Priority.SUBMISSION));
+        // Перед новой проверкой c: занятый воркер, одна проверка a и одна b
+        assertEquals(3000, queue.estimateWaitMs("c", JudgeQueueService.Priority.SUBMISSION));
+        blocker.countDown();
+    }
+    
+    /**
+     * Очередь с одним воркером, занятым проверкой до blocker.countDown()
+     */
+    private JudgeQueueService busyQueue(int submissionWeight, int rejudgeWeight, int capacity) {
+        JudgeQueueService queue = new JudgeQueueService(new JudgeExecutors(1), 1, capacity,
+            submissionWeight, rejudgeWeight);
+        enqueue(queue, "blocker", JudgeQueueService.Priority.SUBMISSION, () -> await(blocker));
+        return queue;
+    }
+    
+    private void enqueue(JudgeQueueService queue, String owner, JudgeQueueService.Priority priority,
+                         String name, CountDownLatch done) {
+        enqueue(queue, owner, priority, () -> {
+            order.add(name);
+            done.countDown();
+        });
+    }
+    
+    private static void enqueue(JudgeQueueService queue, String owner, JudgeQueueService.Priority priority,
+                                Runnable job) {
+        assertTrue(queue.enqueue(UUID.randomUUID(), owner, priority, job));
+    }
+    
+    /**
+     * Ждет, пока воркер закончит последнюю проверку: счетчик уменьшается уже после ее задачи
+     */
+    private static void awaitIdle(JudgeQueueService queue) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (queue.getActiveCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, queue.getActiveCount());
+    }
+    
+    private static List<String> sorted(List<String> names) {
+        List<String> copy = new ArrayList<>(names);
+        Collections.sort(copy, Collections.reverseOrder());
+        return copy;
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
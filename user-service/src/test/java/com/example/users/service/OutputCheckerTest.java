@@ -0,0 +1,181 @@
+package com.example.users.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Потоковое точное сравнение должно давать тот же вердикт, что прежнее сравнение строк
+ * после trim и замены \r\n и \r на \n, при любом разбиении вывода на порции
+ */
+class OutputCheckerTest {
+    
+    // Ожидаемый вывод, вывод программы
+    private static final String[][] EXACT_CASES = {
+        {"3", "3"},
+        {"3", "3\n"},
+        {"3", "  3  \n\n"},
+        {"3", "\t\r\n3\r\n"},
+        {"3", "4"},
+        {"3", "33"},
+        {"3", ""},
+        {"", ""},
+        {"", "   \n"},
+        {"", "0"},
+        {"  ", ""},
+        {"1 2", "1 2 "},
+        {"1 2", "1  2"},
+        {"1 2", "1 2 3"},
+        {"1 2", "1"},
+        {"1\n2", "1\r\n2"},
+        {"1\n2", "1\r2"},
+        {"1\n2", "1\r\r\n2"},
+        {"1\n\n2", "1\r\r\n2"},
+        {"1\r\n2", "1\n2"},
+        {"1\r\n2\r\n", "1\n2"},
+        {"1\n2", "1\n\n2"},
+        {"1\n2", "1 \n2"},
+        {"a\u0000", "a"},
+        {"a", "a\u0000\u0001"},
+        {"a\u0000b", "a\u0000b"},
+        {"Привет", "Привет\n"},
+        {"Привет", "Привед"},
+        {"Привет мир", "Привет  мир"},
+    };
+    
+    @Test
+    void exactMatchesLegacyComparisonOnEdgeCases() {
+        for (String[] testCase : EXACT_CASES) {
+            assertExactMatchesLegacy(testCase[0], testCase[1]);
+        }
+    }
+    
+    @Test
+    void exactMatchesLegacyComparisonOnRandomOutputs() {
+        Random random = new Random(7);
+        String[] alphabet = {"a", "1", " ", "\t", "\n", "\r", "\r\n", "\u0000", "Ж"};
+        for (int round = 0; round < 5000; round++) {
+            String expected = text(random, alphabet);
+            // Половина выводов - ожидаемый вывод с другими пробельными символами по краям
+            String actual = random.nextBoolean() ? text(random, alphabet)
+                : text(random, new String[]{" ", "\n", "\r\n"}) + expected.strip() + text(random, new String[]{" ", "\n"});
+            assertExactMatchesLegacy(expected, actual);
+        }
+    }
+    
+    @Test
+    void exactStopsAtFirstMismatch() {
+        OutputChecker.Comparison comparison = OutputChecker.of(null).start("1 2 3");
+        
+        assertTrue(comparison.accept(bytes("1 2"), 3));
+        assertFalse(comparison.accept(bytes(" 4"), 2));
+        assertFalse(comparison.finish());
+    }
+    
+    @Test
+    void tokensIgnoreWhitespaceKind() {
+        assertTrue(matches("tokens", "1 2\n3", "1\t2  3\r\n"));
+        assertTrue(matches("tokens", "", "  \n"));
+        assertFalse(matches("tokens", "1 2", "12"));
+        assertFalse(matches("tokens", "1 2", "1 2 3"));
+        assertFalse(matches("tokens", "1 2 3", "1 2"));
+        assertFalse(matches("tokens", "1.0", "1"));
+    }
+    
+    @Test
+    void floatComparesNumbersWithTolerance() {
+        assertTrue(matches("float", "0.3333333", "0.33333331"));
+        assertTrue(matches("float", "1000000", "1000000.5"));
+        assertTrue(matches("float", "answer 1.5", "answer 1.5000000001"));
+        assertFalse(matches("float", "0.3333", "0.3334"));
+        assertFalse(matches("float", "1.5", "abc"));
+        assertFalse(matches("float", "word", "word2"));
+        assertTrue(matches("float:0.01", "0.5", "0.505"));
+        assertFalse(matches("float:0.01", "0.5", "0.52"));
+    }
+    
+    @Test
+    void tokenMismatchNamesToken() {
+        OutputChecker.Comparison comparison = OutputChecker.of("tokens").start("1 2 3");
+        
+        comparison.accept(bytes("1 5 3"), 5);
+        
+        assertFalse(comparison.finish());
+        assertNotNull(comparison.mismatch());
+        assertTrue(comparison.mismatch().startsWith("Токен 2"));
+    }
+    
+    @Test
+    void rejectsUnknownChecker() {
+        assertThrows(IllegalArgumentException.class, () -> OutputChecker.of("regex"));
+        assertThrows(IllegalArgumentException.class, () -> OutputChecker.of("float:2"));
+    }
+    
+    /**
+     * Вердикт совпадает с прежним при подаче вывода целиком, по байту и при разрезе в каждой позиции
+     */
+    private static void assertExactMatchesLegacy(String expected, String actual) {
+        boolean legacy = legacyEquals(expected, actual);
+        byte[] output = bytes(actual);
+        String description = "expected=" + escape(expected) + " actual=" + escape(actual);
+        assertEquals(legacy, feed(expected, output, Math.max(output.length, 1)), description);
+        assertEquals(legacy, feed(expected, output, 1), description + " по байту");
+        for (int cut = 1; cut < output.length; cut++) {
+            OutputChecker.Comparison comparison = OutputChecker.of("exact").start(expected);
+            boolean accepted = comparison.accept(output, cut)
+                && comparison.accept(Arrays.copyOfRange(output, cut, output.length), output.length - cut);
+            assertEquals(legacy, accepted && comparison.finish(), description + " разрез " + cut);
+        }
+    }
+    
+    /**
+     * Прежнее сравнение из CodeExecutionService
+     */
+    private static boolean legacyEquals(String expected, String actual) {
+        String normalizedActual = actual.trim().replaceAll("\\r\\n", "\n").replaceAll("\\r", "\n");
+        String normalizedExpected = expected.trim().replaceAll("\\r\\n", "\n").replaceAll("\\r", "\n");
+        return normalizedActual.equals(normalizedExpected);
+    }
+    
+    private static boolean feed(String expected, byte[] output, int chunk) {
+        OutputChecker.Comparison comparison = OutputChecker.of("exact").start(expected);
+        for (int offset = 0; offset < output.length; offset += chunk) {
+            int length = Math.min(chunk, output.length - offset);
+            if (!comparison.accept(Arrays.copyOfRange(output, offset, offset + length), length)) {
+                return false;
+            }
+        }
+        return comparison.finish();
+    }
+    
+    private static boolean matches(String checker, String expected, String actual) {
+        OutputChecker.Comparison comparison = OutputChecker.of(checker).start(expected);
+        byte[] output = bytes(actual);
+        return comparison.accept(output, output.length) && comparison.finish();
+    }
+    
+    private static String text(Random random, String[] alphabet) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet[random.nextInt(alphabet.length)]);
+        }
+        return text.toString();
+    }
+    
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static String escape(String text) {
+        return text.replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t").replace("\u0000", "\\0");
+    }
+}
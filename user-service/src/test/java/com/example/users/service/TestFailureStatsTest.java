@@ -0,0 +1,151 @@
+package com.example.users.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Статистика падений на H2 в режиме PostgreSQL, как в профиле dev
+ */
+class TestFailureStatsTest {
+    
+    private static final String SUITE = "suite";
+    
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+    private final JudgeExecutors executors = mock(JudgeExecutors.class);
+    private JdbcTemplate jdbcTemplate;
+    
+    @BeforeEach
+    void createSchema() {
+        when(executors.ioExecutor()).thenReturn(io);
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+            "jdbc:h2:mem:stats_" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL"));
+        // Таблица из db/dev/schema.sql
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS task_test_stats ("
+            + "test_suite_hash VARCHAR(64) NOT NULL, "
+            + "test_index INTEGER NOT NULL, "
+            + "runs BIGINT NOT NULL DEFAULT 0, "
+            + "failures BIGINT NOT NULL DEFAULT 0, "
+            + "PRIMARY KEY (test_suite_hash, test_index))");
+    }
+    
+    @AfterEach
+    void stopExecutor() {
+        io.shutdownNow();
+    }
+    
+    @Test
+    void rareFailureDoesNotOutrankFrequentOne() {
+        insert(0, 1, 1);
+        insert(1, 100, 50);
+        
+        assertEquals(List.of(1, 0), stats(true, 0).order(SUITE, List.of(0, 1), 2));
+    }
+    
+    @Test
+    void tiesKeepOriginalOrder() {
+        insert(1, 10, 5);
+        insert(2, 10, 5);
+        insert(4, 10, 9);
+        TestFailureStats stats = stats(true, 0);
+        
+        assertEquals(List.of(4, 1, 2, 0, 3), stats.order(SUITE, List.of(0, 1, 2, 3, 4), 5));
+        assertEquals(List.of(4, 2, 1, 3, 0), stats.order(SUITE, List.of(3, 2, 1, 0, 4), 5));
+        // Без статистики порядок исходный
+        assertEquals(List.of(2, 0, 1), stats.order("other", List.of(2, 0, 1), 3));
+        assertEquals(2L, stats.getStats().get("reorderedRuns"));
+    }
+    
+    @Test
+    void recordsRunsAndFailuresWithoutCountingSkippedTests() throws Exception {
+        TestFailureStats stats = stats(true, 60_000);
+        
+        stats.record(SUITE, List.of(passed(), failed(), skipped()));
+        flush();
+        stats.record(SUITE, List.of(failed(), failed(), skipped()));
+        flush();
+        
+        assertEquals(List.of("0:2:1", "1:2:2"), rows());
+        // Счетчики в памяти совпадают с БД: тест 1 падал всегда и идет первым
+        assertEquals(List.of(1, 0, 2), stats.order(SUITE, List.of(0, 1, 2), 3));
+        assertEquals(2L, stats.getStats().get("recordedChecks"));
+    }
+    
+    @Test
+    void addsToRowsWrittenByAnotherProcess() throws Exception {
+        insert(0, 5, 1);
+        TestFailureStats stats = stats(true, 60_000);
+        
+        stats.record(SUITE, List.of(failed(), passed()));
+        flush();
+        
+        assertEquals(List.of("0:6:2", "1:1:0"), rows());
+    }
+    
+    @Test
+    void disabledStatsKeepOrderAndRecordNothing() throws Exception {
+        insert(1, 10, 10);
+        TestFailureStats stats = stats(false, 0);
+        List<Integer> indexes = List.of(0, 1);
+        
+        stats.record(SUITE, List.of(failed(), failed()));
+        flush();
+        
+        assertSame(indexes, stats.order(SUITE, indexes, 2));
+        assertEquals(List.of("1:10:10"), rows());
+    }
+    
+    private TestFailureStats stats(boolean enabled, long refreshMs) {
+        return new TestFailureStats(jdbcTemplate, executors, enabled, 16, refreshMs);
+    }
+    
+    private void insert(int index, long runs, long failures) {
+        jdbcTemplate.update("INSERT INTO task_test_stats (test_suite_hash, test_index, runs, failures) "
+            + "VALUES (?, ?, ?, ?)", SUITE, index, runs, failures);
+    }
+    
+    /**
+     * Строки "номер:запуски:падения" по возрастанию номера теста
+     */
+    private List<String> rows() {
+        return new ArrayList<>(jdbcTemplate.query("SELECT test_index, runs, failures FROM task_test_stats "
+            + "WHERE test_suite_hash = ? ORDER BY test_index", (rs, rowNum) ->
+            rs.getInt("test_index") + ":" + rs.getLong("runs") + ":" + rs.getLong("failures"), SUITE));
+    }
+    
+    /**
+     * Ждет фоновой записи в БД
+     */
+    private void flush() throws InterruptedException, ExecutionException {
+        io.submit(() -> { }).get();
+    }
+    
+    private static CodeExecutionService.TestExecutionResult passed() {
+        return new CodeExecutionService.TestExecutionResult(true, "1", "1", "1", null, false, false,
+            new ResourceRunner.Usage(1, 1, 100));
+    }
+    
+    private static CodeExecutionService.TestExecutionResult failed() {
+        return new CodeExecutionService.TestExecutionResult(false, "1", "1", "2", "Ожидалось: '1', получено: '2'",
+            false, false, new ResourceRunner.Usage(1, 1, 100));
+    }
+    
+    private static CodeExecutionService.TestExecutionResult skipped() {
+        return new CodeExecutionService.TestExecutionResult(false, "1", "1", "",
+            "Тест не запускался: решение не прошло предыдущий тест");
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.users.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JSON результатов тестов должен совпадать побайтно с прежним формированием через StringBuilder,
+ * которое воспроизведено здесь в {@link #legacyJson}
+ */
+class TestResultsJsonTest {
+    
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Test
+    void matchesLegacyBuilderOnFixedResults() {
+        List<CodeExecutionService.TestExecutionResult> results = List.of(
+            result(true, "1 2\n", "3", "3", null, new ResourceRunner.Usage(4, 7, 1320)),
+            result(false, "5 5\n", "10", "11", "Неверный ответ", new ResourceRunner.Usage(0, 1, 980)),
+            result(false, "a \"quoted\" \\ path", "tab\there", "line\r\nbreak", "Ошибка выполнения", null),
+            result(false, null, null, null, null, null),
+            result(false, "x", "y", "", "Превышено ограничение времени", new ResourceRunner.Usage(1000, -1, 2048)),
+            result(true, "Привет, мир 😀", "ok", "ok", null, new ResourceRunner.Usage(0, 0, 0)));
+        
+        assertEquals(legacyJson(results), TestResultsJson.write(results));
+    }
+    
+    @Test
+    void matchesLegacyBuilderOnEmptyResults() {
+        assertEquals("{\"tests\":[]}", TestResultsJson.write(List.of()));
+        assertEquals(legacyJson(List.of()), TestResultsJson.write(List.of()));
+    }
+    
+    @Test
+    void matchesLegacyBuilderOnRandomResults() {
+        Random random = new Random(42);
+        String alphabet = "ab1 \"\\\n\r\tЖ😀";
+        for (int round = 0; round < 1000; round++) {
+            List<CodeExecutionService.TestExecutionResult> results = new ArrayList<>();
+            int count = random.nextInt(5);
+            for (int i = 0; i < count; i++) {
+                ResourceRunner.Usage usage = random.nextBoolean()
+                    ? new ResourceRunner.Usage(random.nextInt(3) - 1, random.nextInt(3) - 1, random.nextInt(3) - 1)
+                    : null;
+                results.add(result(random.nextBoolean(), text(random, alphabet), text(random, alphabet),
+                    text(random, alphabet), random.nextBoolean() ? text(random, alphabet) : null, usage));
+            }
+            assertEquals(legacyJson(results), TestResultsJson.write(results));
+        }
+    }
+    
+    @Test
+    void escapesControlCharactersThatLegacyBuilderEmittedRaw() throws Exception {
+        String output = "bell\u0007 nul\u0000 esc\u001b";
+        List<CodeExecutionService.TestExecutionResult> results = List.of(
+            result(false, "in", "out", output, "Неверный ответ", null));
+        
+        String json = TestResultsJson.write(results);
+        
+        // Прежний вывод отличается только экранированием управляющих символов
+        String legacy = legacyJson(results);
+        assertEquals(legacy.replace("\u0007", "\\u0007").replace("\u0000", "\\u0000").replace("\u001b", "\\u001B"), json);
+        for (char c : json.toCharArray()) {
+            assertTrue(c >= 0x20, "управляющий символ в JSON: " + (int) c);
+        }
+        JsonNode test = objectMapper.readTree(json).get("tests").get(0);
+        assertEquals(output, test.get("actual").asText());
+    }
+    
+    @Test
+    void writesSingleFailedEntry() {
+        String json = TestResultsJson.write(TestResultsJson.TestEntry.failed(1, "1 2", "3", "Ошибка компиляции:\nsolution.c:1: error"));
+        
+        assertEquals("{\"tests\":[{\"testNumber\":1,\"passed\":false,\"input\":\"1 2\",\"expected\":\"3\",\"actual\":\"\","
+            + "\"error\":\"Ошибка компиляции:\\nsolution.c:1: error\"}]}", json);
+    }
+    
+    @Test
+    void compactFormatKeepsFailureDetails() {
+        List<CodeExecutionService.TestExecutionResult> results = List.of(
+            result(true, "1", "2", "2", null, new ResourceRunner.Usage(1, 2, 3)),
+            new CodeExecutionService.TestExecutionResult(false, "1", "2", "22222", "Неверный ответ", false, false,
+                new ResourceRunner.Usage(4, 5, 6), "строка 1"));
+        
+        TestResultsJson.CompactResults compact = TestResultsJson.readCompact(
+            TestResultsJson.writeCompact(results, "hash", 3));
+        
+        assertEquals("hash", compact.testSuiteHash);
+        assertEquals(2, compact.tests.size());
+        assertTrue(compact.tests.get(0).passed);
+        assertNull(compact.tests.get(0).actual);
+        assertEquals(1, compact.tests.get(0).cpuTimeMs);
+        assertFalse(compact.tests.get(1).passed);
+        assertEquals("222", compact.tests.get(1).actual);
+        assertTrue(compact.tests.get(1).actualTruncated);
+        assertEquals("строка 1", compact.tests.get(1).wrongAnswerDetail);
+        assertEquals(6, compact.tests.get(1).memoryKb);
+    }
+    
+    @Test
+    void readCompactIgnoresFullFormat() {
+        assertNull(TestResultsJson.readCompact("{\"tests\":[]}"));
+        assertNull(TestResultsJson.readCompact(null));
+    }
+    
+    private static CodeExecutionService.TestExecutionResult result(boolean passed, String input, String expected,
+                                                                   String actual, String error,
+                                                                   ResourceRunner.Usage usage) {
+        return new CodeExecutionService.TestExecutionResult(passed, input, expected, actual, error, false, false, usage);
+    }
+    
+    private static String text(Random random, String alphabet) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            int index = random.nextInt(alphabet.length());
+            // Не разрезаем суррогатную пару
+            if (Character.isLowSurrogate(alphabet.charAt(index))) {
+                index--;
+            }
+            text.append(alphabet.charAt(index));
+            if (Character.isHighSurrogate(alphabet.charAt(index))) {
+                text.append(alphabet.charAt(index + 1));
+            }
+        }
+        return text.toString();
+    }
+    
+    /**
+     * Прежний SubmissionService.buildTestResultsJson
+     */
+    private static String legacyJson(List<CodeExecutionService.TestExecutionResult> testResults) {
+        StringBuilder json = new StringBuilder("{\"tests\":[");
+        for (int i = 0; i < testResults.size(); i++) {
+            CodeExecutionService.TestExecutionResult tr = testResults.get(i);
+            if (i > 0) json.append(",");
+            json.append("{")
+                .append("\"testNumber\":").append(i + 1).append(",")
+                .append("\"passed\":").append(tr.passed).append(",")
+                .append("\"input\":\"").append(escapeJson(tr.input)).append("\",")
+                .append("\"expected\":\"").append(escapeJson(tr.expectedOutput)).append("\",")
+                .append("\"actual\":\"").append(escapeJson(tr.actualOutput)).append("\"");
+            if (tr.errorMessage != null) {
+                json.append(",\"error\":\"").append(escapeJson(tr.errorMessage)).append("\"");
+            }
+            if (tr.usage != null) {
+                appendUsage(json, "cpuTimeMs", tr.usage.cpuTimeMs);
+                appendUsage(json, "wallTimeMs", tr.usage.wallTimeMs);
+                appendUsage(json, "memoryKb", tr.usage.memoryKb);
+            }
+            json.append("}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+    
+    private static void appendUsage(StringBuilder json, String name, long value) {
+        if (value >= 0) {
+            json.append(",\"").append(name).append("\":").append(value);
+        }
+    }
+    
+    private static String escapeJson(String str) {
+        if (str == null) return "";
+        return str.replace("\\", "\\\\")
+                  .replace("\"", "\\\"")
+                  .replace("\n", "\\n")
+                  .replace("\r", "\\r")
+                  .replace("\t", "\\t");
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.users.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Компактно сохраненные результаты после разворачивания совпадают с полным форматом,
+ * который сохранялся раньше
+ */
+class TestResultsStorageTest {
+    
+    private static final String TESTS = "{\"tests\":["
+        + "{\"input\":\"1 2\\n\",\"output\":\"3\\n\",\"sample\":true},"
+        + "{\"input\":\"2 2\",\"output\":\"4\"},"
+        + "{\"input\":\"0.1 0.2\",\"output\":\"0.3\"},"
+        + "{\"input\":\"5 5\",\"output\":\"10\\r\\n\"},"
+        + "{\"input\":\"-1\",\"output\":\"error \"},"
+        + "{\"input\":\"9\",\"output\":\"81\"},"
+        + "{\"input\":\"7\",\"output\":\"49\"}]}";
+    
+    @TempDir
+    Path temp;
+    
+    @Test
+    void expandsCompactResultsToFullFormat() {
+        TestSuiteCache cache = new TestSuiteCache(4, 1024, temp.toString());
+        TestResultsStorage storage = new TestResultsStorage(cache, true, 1000);
+        CodeExecutionService.CodeCheckResult result = judged(cache, "x");
+        
+        String stored = storage.store(result);
+        
+        assertTrue(stored.startsWith("{\"format\":2,"));
+        assertTrue(stored.length() < TestResultsJson.write(result.testResults).length());
+        assertEquals(TestResultsJson.write(result.testResults), storage.expand(stored, TESTS));
+    }
+    
+    @Test
+    void marksTruncatedActualOutput() {
+        TestSuiteCache cache = new TestSuiteCache(4, 1024, temp.toString());
+        TestResultsStorage storage = new TestResultsStorage(cache, true, 5);
+        CodeExecutionService.CodeCheckResult result = judged(cache, "1234567890");
+        
+        String expanded = storage.expand(storage.store(result), TESTS);
+        
+        assertTrue(expanded.contains("\"actual\":\"12345... (обрезано)\""));
+    }
+    
+    @Test
+    void keepsNumbersWhenTestsChanged() {
+        TestSuiteCache cache = new TestSuiteCache(4, 1024, temp.toString());
+        TestResultsStorage storage = new TestResultsStorage(cache, true, 1000);
+        CodeExecutionService.CodeCheckResult result = judged(cache, "x");
+        
+        String expanded = storage.expand(storage.store(result), TESTS.replace("\"81\"", "\"82\""));
+        
+        assertTrue(expanded.contains("\"input\":\"(тест изменен после проверки)\""));
+        assertTrue(expanded.contains("\"cpuTimeMs\":12"));
+        assertTrue(expanded.contains("\"testNumber\":7"));
+    }
+    
+    @Test
+    void returnsFullFormatAsIs() {
+        TestSuiteCache cache = new TestSuiteCache(4, 1024, temp.toString());
+        TestResultsStorage full = new TestResultsStorage(cache, false, 1000);
+        CodeExecutionService.CodeCheckResult result = judged(cache, "x");
+        
+        String stored = full.store(result);
+        
+        assertEquals(TestResultsJson.write(result.testResults), stored);
+        assertEquals(stored, new TestResultsStorage(cache, true, 1000).expand(stored, TESTS));
+        assertNull(full.expand(null, TESTS));
+    }
+    
+    /**
+     * Результаты в том виде, в каком их формирует CodeExecutionService
+     * @param wrongOutput вывод решения на тесте с неверным ответом
+     */
+    private static CodeExecutionService.CodeCheckResult judged(TestSuiteCache cache, String wrongOutput) {
+        TestSuiteCache.TestSuite suite = cache.acquire(TESTS);
+        List<TestSuiteCache.TestCase> tests = suite.testCases;
+        List<CodeExecutionService.TestExecutionResult> results = new ArrayList<>();
+        results.add(passed(tests.get(0), "3"));
+        results.add(passed(tests.get(1), "4"));
+        // Проверка с погрешностью: вывод отличается от ожидаемого
+        results.add(passed(tests.get(2), "0.30000000000000004"));
+        String expected = ExactOutputChecker.normalize(tests.get(3).expectedOutput);
+        String detail = "\nПрограмма остановлена на первом расхождении с ожидаемым выводом";
+        results.add(new CodeExecutionService.TestExecutionResult(false, tests.get(3).inputPreview(), expected,
+            wrongOutput, CodeExecutionService.wrongAnswerMessage(expected, wrongOutput, detail), false, false,
+            new ResourceRunner.Usage(1, 2, 900), detail));
+        results.add(new CodeExecutionService.TestExecutionResult(false, tests.get(4).inputPreview(),
+            tests.get(4).expectedOutput, "partial", "Программа завершилась с кодом 1\nОшибка: boom", false, false,
+            new ResourceRunner.Usage(3, 4, 1000)));
+        results.add(new CodeExecutionService.TestExecutionResult(false, tests.get(5).inputPreview(),
+            tests.get(5).expectedOutput, "", "Превышено ограничение времени: 1200 мс при лимите 1000 мс", true, false,
+            new ResourceRunner.Usage(1200, -1, 1000)));
+        results.add(new CodeExecutionService.TestExecutionResult(false, tests.get(6).inputPreview(),
+            tests.get(6).expectedOutput, "", "Тест не запускался: решение не прошло предыдущий тест"));
+        cache.release(suite);
+        return new CodeExecutionService.CodeCheckResult(true, null, results, suite.hash);
+    }
+    
+    private static CodeExecutionService.TestExecutionResult passed(TestSuiteCache.TestCase testCase, String actual) {
+        return new CodeExecutionService.TestExecutionResult(true, testCase.inputPreview(),
+            ExactOutputChecker.normalize(testCase.expectedOutput), actual, null, false, false,
+            new ResourceRunner.Usage(12, 15, 1480));
+    }
+}
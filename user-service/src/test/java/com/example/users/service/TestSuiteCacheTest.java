@@ -0,0 +1,123 @@
+package com.example.users.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestSuiteCacheTest {
+    
+    @TempDir
+    Path temp;
+    
+    @Test
+    void parsesTestsAndSamples() throws IOException {
+        TestSuiteCache cache = new TestSuiteCache(4, 1024, temp.toString());
+        
+        TestSuiteCache.TestSuite suite = cache.acquire("{\"title\":\"x\",\"tests\":["
+            + "{\"input\":\"1 2\\n\",\"output\":\"3\",\"sample\":true},"
+            + "{\"input\":\"Жж\",\"extra\":{\"a\":[1]},\"output\":\"4\"}]}");
+        
+        assertEquals(2, suite.testCases.size());
+        assertEquals(List.of(0), suite.sampleIndexes);
+        assertEquals("3", suite.testCases.get(0).expectedOutput);
+        assertEquals("1 2\n", read(suite.testCases.get(0)));
+        assertEquals("Жж", suite.testCases.get(1).inputPreview());
+        assertEquals(4, suite.testCases.get(1).inputSize);
+        assertEquals(Sha256.hex(json("1")), cache.acquire(json("1")).hash);
+    }
+    
+    @Test
+    void parsesEachVersionOnce() {
+        TestSuiteCache cache = new TestSuiteCache(4, 1024, temp.toString());
+        
+        TestSuiteCache.TestSuite first = cache.acquire(json("1"));
+        TestSuiteCache.TestSuite second = cache.acquire(json("1"));
+        TestSuiteCache.TestSuite other = cache.acquire(json("2"));
+        
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2L, cache.getStats().get("misses"));
+        assertEquals(1L, cache.getStats().get("hits"));
+    }
+    
+    @Test
+    void streamsLargeInputFromFile() throws IOException {
+        TestSuiteCache cache = new TestSuiteCache(4, 8, temp.toString());
+        String input = "x".repeat(1500);
+        
+        TestSuiteCache.TestCase testCase = cache.acquire(json(input)).testCases.get(0);
+        
+        assertEquals(input, read(testCase));
+        assertEquals(1500, testCase.inputSize);
+        assertTrue(testCase.inputPreview().startsWith("x".repeat(1000) + "... (обрезано, всего 1500 байт)"));
+        assertEquals(1, countFiles());
+    }
+    
+    @Test
+    void deletesFilesOfEvictedSuiteAfterLastRelease() throws IOException {
+        TestSuiteCache cache = new TestSuiteCache(1, 8, temp.toString());
+        TestSuiteCache.TestSuite inUse = cache.acquire(json("a".repeat(100)));
+        
+        TestSuiteCache.TestSuite next = cache.acquire(json("b".repeat(100)));
+        
+        // Вытесненные тесты еще используются - файлы на месте
+        assertEquals("a".repeat(100), read(inUse.testCases.get(0)));
+        assertEquals(2, countFiles());
+        cache.release(inUse);
+        assertEquals(1, countFiles());
+        cache.release(next);
+        assertEquals(1, countFiles());
+    }
+    
+    @Test
+    void malformedJsonGivesEmptySuite() throws IOException {
+        TestSuiteCache cache = new TestSuiteCache(4, 8, temp.toString());
+        
+        assertTrue(cache.acquire("{\"tests\":[{\"input\":\"" + "y".repeat(100) + "\"").testCases.isEmpty());
+        assertTrue(cache.acquire("[]").testCases.isEmpty());
+        assertTrue(cache.acquire("").testCases.isEmpty());
+        assertEquals(0, countFiles());
+    }
+    
+    @Test
+    void missingOutputIsEmpty() {
+        TestSuiteCache cache = new TestSuiteCache(4, 1024, temp.toString());
+        
+        TestSuiteCache.TestCase testCase = cache.acquire("{\"tests\":[{\"input\":\"1\"}]}").testCases.get(0);
+        
+        assertEquals("", testCase.expectedOutput);
+        assertFalse(testCase.sample);
+    }
+    
+    private static String json(String input) {
+        return "{\"tests\":[{\"input\":\"" + input + "\",\"output\":\"ok\"}]}";
+    }
+    
+    private static String read(TestSuiteCache.TestCase testCase) throws IOException {
+        try (InputStream in = testCase.openInput()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+    
+    /**
+     * Файлы входных данных в директории тестов
+     */
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(temp)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("input_")).count();
+        }
+    }
+}
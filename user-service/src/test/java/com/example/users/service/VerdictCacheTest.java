@@ -0,0 +1,128 @@
+package com.example.users.service;
+
+import com.example.users.model.Submission;
+import com.example.users.repository.SubmissionRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VerdictCacheTest {
+    
+    private final SubmissionRepository repository = mock(SubmissionRepository.class);
+    
+    @Test
+    void returnsVerdictFromMemoryWithoutDatabase() {
+        VerdictCache cache = new VerdictCache(repository, true, 10);
+        VerdictCache.Verdict verdict = verdict("tests", Submission.Status.PASSED);
+        
+        cache.put("code", verdict);
+        
+        assertSame(verdict, cache.lookup("code", "tests"));
+        verify(repository, never()).findFirstByCodeHashAndTestCasesHashAndReusableVerdictTrueOrderByCreatedAtDesc(
+            anyString(), anyString());
+        assertEquals(1L, cache.getStats().get("memoryHits"));
+    }
+    
+    @Test
+    void fallsBackToStoredSubmissionAndKeepsItInMemory() {
+        Submission stored = new Submission();
+        stored.setStatus(Submission.Status.FAILED);
+        stored.setTestsPassed(2);
+        stored.setTestsTotal(5);
+        stored.setTestResults("{\"tests\":[]}");
+        when(repository.findFirstByCodeHashAndTestCasesHashAndReusableVerdictTrueOrderByCreatedAtDesc("code", "tests"))
+            .thenReturn(Optional.of(stored));
+        VerdictCache cache = new VerdictCache(repository, true, 10);
+        
+        VerdictCache.Verdict verdict = cache.lookup("code", "tests");
+        VerdictCache.Verdict again = cache.lookup("code", "tests");
+        
+        assertEquals(Submission.Status.FAILED, verdict.status);
+        assertEquals(2, verdict.testsPassed);
+        assertEquals(5, verdict.testsTotal);
+        assertEquals("tests", verdict.testCasesHash);
+        assertSame(verdict, again);
+        verify(repository, times(1)).findFirstByCodeHashAndTestCasesHashAndReusableVerdictTrueOrderByCreatedAtDesc(
+            "code", "tests");
+        assertEquals(1L, cache.getStats().get("databaseHits"));
+        assertEquals(1L, cache.getStats().get("memoryHits"));
+    }
+    
+    @Test
+    void countsMissWhenNothingStored() {
+        when(repository.findFirstByCodeHashAndTestCasesHashAndReusableVerdictTrueOrderByCreatedAtDesc(anyString(), anyString()))
+            .thenReturn(Optional.empty());
+        VerdictCache cache = new VerdictCache(repository, true, 10);
+        
+        assertNull(cache.lookup("code", "tests"));
+        assertEquals(1L, cache.getStats().get("misses"));
+    }
+    
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxEntries() {
+        when(repository.findFirstByCodeHashAndTestCasesHashAndReusableVerdictTrueOrderByCreatedAtDesc(anyString(), anyString()))
+            .thenReturn(Optional.empty());
+        VerdictCache cache = new VerdictCache(repository, true, 2);
+        cache.put("a", verdict("tests", Submission.Status.PASSED));
+        cache.put("b", verdict("tests", Submission.Status.PASSED));
+        cache.lookup("a", "tests");
+        
+        cache.put("c", verdict("tests", Submission.Status.PASSED));
+        
+        assertNull(cache.lookup("b", "tests"));
+        assertEquals(Submission.Status.PASSED, cache.lookup("a", "tests").status);
+        assertEquals(Submission.Status.PASSED, cache.lookup("c", "tests").status);
+    }
+    
+    @Test
+    void invalidatesOnlyVerdictsOfOldTests() {
+        when(repository.findFirstByCodeHashAndTestCasesHashAndReusableVerdictTrueOrderByCreatedAtDesc(anyString(), anyString()))
+            .thenReturn(Optional.empty());
+        VerdictCache cache = new VerdictCache(repository, true, 10);
+        cache.put("code", verdict("old", Submission.Status.PASSED));
+        cache.put("code", verdict("other", Submission.Status.FAILED));
+        
+        cache.invalidateTestCases("old");
+        
+        assertNull(cache.lookup("code", "old"));
+        assertEquals(Submission.Status.FAILED, cache.lookup("code", "other").status);
+    }
+    
+    @Test
+    void disabledCacheDoesNotQueryDatabase() {
+        VerdictCache cache = new VerdictCache(repository, false, 10);
+        cache.put("code", verdict("tests", Submission.Status.PASSED));
+        
+        assertNull(cache.lookup("code", "tests"));
+        verify(repository, never()).findFirstByCodeHashAndTestCasesHashAndReusableVerdictTrueOrderByCreatedAtDesc(
+            anyString(), anyString());
+    }
+    
+    @Test
+    void testsHashDependsOnLimitsAndChecker() {
+        String tests = "[{\"input\":\"1\",\"expectedOutput\":\"1\"}]";
+        String plain = VerdictCache.testsHashOf(tests, CodeExecutionService.Limits.NONE);
+        
+        assertEquals(VerdictCache.hashOf(tests), plain);
+        assertEquals(plain, VerdictCache.testsHashOf(tests, new CodeExecutionService.Limits(null, null, false, "exact")));
+        assertEquals(plain, VerdictCache.testsHashOf(tests, new CodeExecutionService.Limits(null, null, true, null)));
+        assertNotEquals(plain, VerdictCache.testsHashOf(tests, new CodeExecutionService.Limits(1000, null)));
+        assertNotEquals(plain, VerdictCache.testsHashOf(tests, new CodeExecutionService.Limits(null, 65536)));
+        assertNotEquals(plain, VerdictCache.testsHashOf(tests, new CodeExecutionService.Limits(null, null, false, "tokens")));
+    }
+    
+    private static VerdictCache.Verdict verdict(String testCasesHash, Submission.Status status) {
+        return new VerdictCache.Verdict(testCasesHash, status, 1, 1, null, null, 5L, 6L, 1024L);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.users.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkspacePoolTest {
+    
+    @TempDir
+    Path temp;
+    
+    @Test
+    void reusesReleasedWorkspaceAfterCleaningIt() throws IOException {
+        WorkspacePool pool = new WorkspacePool(temp.toString(), 1);
+        
+        Path workspace = pool.lease();
+        Files.writeString(workspace.resolve("solution.c"), "int main() {}");
+        Files.writeString(workspace.resolve("solution"), "binary");
+        pool.release(workspace);
+        Path again = pool.lease();
+        
+        assertEquals(workspace, again);
+        try (Stream<Path> files = Files.list(again)) {
+            assertEquals(0, files.count());
+        }
+    }
+    
+    @Test
+    void keepsWorkspacesInProcessDirectory() throws IOException {
+        WorkspacePool pool = new WorkspacePool(temp.toString(), 2);
+        
+        Path workspace = pool.lease();
+        
+        assertEquals(temp.toAbsolutePath().normalize(), workspace.getParent().getParent());
+        assertTrue(workspace.getFileName().toString().startsWith("ws_"));
+        assertEquals(1, pool.getStats().get("free"));
+    }
+    
+    @Test
+    void createsAndDeletesOverflowWorkspaceWhenPoolIsEmpty() throws IOException {
+        WorkspacePool pool = new WorkspacePool(temp.toString(), 1);
+        Path pooled = pool.lease();
+        
+        Path overflow = pool.lease();
+        Files.writeString(overflow.resolve("input.txt"), "1 2");
+        pool.release(overflow);
+        
+        assertTrue(overflow.getFileName().toString().startsWith("overflow_"));
+        assertFalse(Files.exists(overflow));
+        assertEquals(2L, pool.getStats().get("leases"));
+        assertEquals(1L, pool.getStats().get("overflowLeases"));
+        assertEquals(0, pool.getStats().get("free"));
+        pool.release(pooled);
+        assertEquals(1, pool.getStats().get("free"));
+    }
+}
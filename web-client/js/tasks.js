@@ -15,9 +15,32 @@ const submissionApi = {
 
     async getLatest(userId, taskId) {
         return api.get(`/submissions/user/${userId}/task/${taskId}/latest`);
+    },
+
+    async getById(id) {
+        return api.get(`/submissions/${id}`);
     }
 };
 
+const SUBMISSION_POLL_INTERVAL_MS = 1000;
+const SUBMISSION_POLL_MAX_ATTEMPTS = 120;
+
+// Ожидание результата проверки: решение проверяется в очереди на сервере.
+// onProgress получает решение после каждого опроса, пока оно на проверке:
+// предварительный вердикт по примерам появляется раньше итогового
+async function waitForVerdict(submission, onProgress) {
+    let attempts = 0;
+    while (submission.status === 'PENDING' && attempts < SUBMISSION_POLL_MAX_ATTEMPTS) {
+        await new Promise(resolve => setTimeout(resolve, SUBMISSION_POLL_INTERVAL_MS));
+        submission = await submissionApi.getById(submission.id);
+        attempts++;
+        if (submission.status === 'PENDING' && onProgress) {
+            onProgress(submission);
+        }
+    }
+    return submission;
+}
+
 let currentTask = null;
 let currentTaskId = null;
 
@@ -181,7 +204,10 @@ async function submitSolution() {
         showMessage('Отправка решения...', 'success');
         
         // TODO: Исправить API - нужно передавать userId как параметр запроса
-        const submission = await submissionApi.submit(currentTaskId, code, userId);
+        let submission = await submissionApi.submit(currentTaskId, code, userId);
+        
+        displayTestResults(submission);
+        submission = await waitForVerdict(submission, displayTestResults);
         
         displayTestResults(submission);
         await loadSubmissions(currentTaskId);
@@ -242,6 +268,21 @@ function displayTestResults(submission) {
                 </div>
             </div>
         `;
+    } else if (submission.status === 'TIME_LIMIT' || submission.status === 'MEMORY_LIMIT') {
+        const title = submission.status === 'TIME_LIMIT'
+            ? '⏱️ Превышено ограничение времени'
+            : '💾 Превышено ограничение памяти';
+        html = `
+            <div class="test-summary failed">
+                <div class="test-result-header">
+                    <span class="test-result-name">${title}</span>
+                    <span class="test-result-status failed">НЕ ПРОЙДЕНО</span>
+                </div>
+                <div class="test-result-message">
+                    Пройдено тестов: ${submission.testsPassed || 0} / ${submission.testsTotal || 0}
+                </div>
+            </div>
+        `;
     } else if (submission.status === 'ERROR') {
         html = `
             <div class="test-summary error">
@@ -254,6 +295,21 @@ function displayTestResults(submission) {
                 </div>
             </div>
         `;
+    } else if (submission.provisionalStatus) {
+        // Примеры уже проверены, остальные тесты еще идут
+        const samplesPassed = submission.provisionalStatus === 'PASSED';
+        html = `
+            <div class="test-summary">
+                <div class="test-result-header">
+                    <span class="test-result-name">⏳ На проверке: ${samplesPassed ? 'примеры пройдены' : 'примеры не пройдены'}</span>
+                    <span class="test-result-status pending">ОЖИДАНИЕ</span>
+                </div>
+                <div class="test-result-message">
+                    Пройдено примеров: ${submission.testsPassed || 0} / ${submission.testsTotal || 0}.
+                    Итоговый вердикт будет после проверки на всех тестах
+                </div>
+            </div>
+        `;
     } else {
         html = `
             <div class="test-summary">
@@ -294,6 +350,11 @@ function displayTestResults(submission) {
                             <strong>Полученный вывод:</strong>
                             <pre>${escapeHtml(test.actual || '(пусто)')}</pre>
                         </div>
+                        ${formatUsage(test) ? `
+                        <div class="test-io">
+                            <strong>Ресурсы:</strong> ${formatUsage(test)}
+                        </div>
+                        ` : ''}
                         ${test.error ? `
                         <div class="test-error">
                             <strong>Ошибка:</strong>
@@ -322,6 +383,15 @@ function escapeHtml(text) {
     return div.innerHTML;
 }
 
+// Затраченные на тест время и память
+function formatUsage(test) {
+    const parts = [];
+    if (test.cpuTimeMs !== undefined) parts.push(`процессор ${test.cpuTimeMs} мс`);
+    if (test.wallTimeMs !== undefined) parts.push(`всего ${test.wallTimeMs} мс`);
+    if (test.memoryKb !== undefined) parts.push(`память ${test.memoryKb} КБ`);
+    return parts.join(', ');
+}
+
 // Загрузка истории решений
 async function loadSubmissions(taskId) {
     const userId = getCurrentUserId();
@@ -348,13 +418,17 @@ function displaySubmissions(submissions) {
     
     submissionsList.innerHTML = submissions.slice(0, 5).map(submission => {
         const date = new Date(submission.createdAt);
-        const statusClass = submission.status.toLowerCase();
+        const statusKey = submission.status.toLowerCase();
+        // Превышение лимитов оформляется как непройденное решение
+        const statusClass = (statusKey === 'time_limit' || statusKey === 'memory_limit') ? 'failed' : statusKey;
         const statusLabel = {
             'passed': 'ПРОЙДЕНО',
             'failed': 'НЕ ПРОЙДЕНО',
+            'time_limit': 'ЛИМИТ ВРЕМЕНИ',
+            'memory_limit': 'ЛИМИТ ПАМЯТИ',
             'error': 'ОШИБКА',
             'pending': 'ОЖИДАНИЕ'
-        }[statusClass] || submission.status;
+        }[statusKey] || submission.status;
         
         return `
             <div class="submission-item ${statusClass}">